@@ -0,0 +1,54 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.benchmarks;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * Log dropping debug and info messages, which would otherwise be part of the measurements.
+ *
+ * @version $Id$
+ */
+public class QuietLog extends SystemStreamLog
+{
+    public void debug(CharSequence content)
+    {
+    }
+
+    public void debug(CharSequence content, Throwable error)
+    {
+    }
+
+    public void debug(Throwable error)
+    {
+    }
+
+    public void info(CharSequence content)
+    {
+    }
+
+    public void info(CharSequence content, Throwable error)
+    {
+    }
+
+    public void info(Throwable error)
+    {
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates the archives and descriptors the benchmarks work on. The content is random but
+ * seeded, so that every run of a benchmark sees the same bytes.
+ *
+ * @version $Id$
+ */
+public final class SyntheticWars
+{
+    /**
+     * The XSLT stylesheet used by the XSLT merge benchmarks: it concatenates the beans of both
+     * documents.
+     */
+    public static final String STYLESHEET = "<xsl:stylesheet version=\"1.0\" "
+        + "xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+        + "<xsl:template match=\"/merge\"><beans>"
+        + "<xsl:copy-of select=\"left/beans/*\"/><xsl:copy-of select=\"right/beans/*\"/>"
+        + "</beans></xsl:template></xsl:stylesheet>";
+
+    private static final String DOCTYPE = "<!DOCTYPE web-app PUBLIC "
+        + "\"-//Sun Microsystems, Inc.//DTD Web Application 2.3//EN\" "
+        + "\"http://java.sun.com/dtd/web-app_2_3.dtd\">";
+
+    private SyntheticWars()
+    {
+        // Utility class
+    }
+
+    /**
+     * @param file where to write the WAR
+     * @param name the name of the web application, used to prefix everything it declares
+     * @param entries the number of resources and classes in the WAR
+     * @param jars the number of JARs in <code>WEB-INF/lib</code>
+     * @param servlets the number of servlets in its web.xml
+     * @param filters the number of filters in its web.xml
+     * @return <code>file</code>
+     */
+    public static File createWar(File file, String name, int entries, int jars, int servlets,
+        int filters) throws IOException
+    {
+        Random random = new Random(name.hashCode());
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+        try
+        {
+            put(zip, "WEB-INF/web.xml", createWebXml(name, servlets, filters).getBytes("UTF-8"));
+            put(zip, "WEB-INF/beans.xml", createBeans(name, servlets).getBytes("UTF-8"));
+            for (int i = 0; i < entries; i++)
+            {
+                String path = i % 2 == 0 ? "WEB-INF/classes/" + name + "/Class" + i + ".class"
+                    : name + "/page" + i + ".jsp";
+                put(zip, path, randomBytes(random, 256 + random.nextInt(4096)));
+            }
+            for (int i = 0; i < jars; i++)
+            {
+                put(zip, "WEB-INF/lib/" + name + "-lib" + i + ".jar",
+                    createJar(random, name + "/lib" + i, 50));
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+        return file;
+    }
+
+    /**
+     * @param file where to write the JAR
+     * @param name the name of the JAR, used as its package
+     * @param classes the number of classes in the JAR
+     * @return <code>file</code>
+     */
+    public static File createJar(File file, String name, int classes) throws IOException
+    {
+        OutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(createJar(new Random(name.hashCode()), name, classes));
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * @return a web.xml 2.3 declaring <code>servlets</code> servlets and their mappings and
+     *         <code>filters</code> filters and their mappings. Every web application also
+     *         declares a <code>shared</code> servlet, which merges have to reconcile.
+     */
+    public static String createWebXml(String name, int servlets, int filters)
+    {
+        StringBuffer xml = new StringBuffer();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n").append(DOCTYPE);
+        xml.append("\n<web-app>\n");
+        xml.append("  <display-name>").append(name).append("</display-name>\n");
+        for (int i = 0; i < filters; i++)
+        {
+            xml.append("  <filter><filter-name>").append(name).append("-filter").append(i)
+                .append("</filter-name><filter-class>").append(name).append(".Filter")
+                .append(i).append("</filter-class><init-param><param-name>order")
+                .append("</param-name><param-value>").append(i)
+                .append("</param-value></init-param></filter>\n");
+        }
+        for (int i = 0; i < filters; i++)
+        {
+            xml.append("  <filter-mapping><filter-name>").append(name).append("-filter")
+                .append(i).append("</filter-name><url-pattern>/").append(name).append("/f")
+                .append(i).append("/*</url-pattern></filter-mapping>\n");
+        }
+        xml.append("  <servlet><servlet-name>shared</servlet-name><servlet-class>").append(name)
+            .append(".Shared</servlet-class></servlet>\n");
+        for (int i = 0; i < servlets; i++)
+        {
+            xml.append("  <servlet><servlet-name>").append(name).append("-servlet").append(i)
+                .append("</servlet-name><servlet-class>").append(name).append(".Servlet")
+                .append(i).append("</servlet-class><load-on-startup>").append(i)
+                .append("</load-on-startup></servlet>\n");
+        }
+        for (int i = 0; i < servlets; i++)
+        {
+            xml.append("  <servlet-mapping><servlet-name>").append(name).append("-servlet")
+                .append(i).append("</servlet-name><url-pattern>/").append(name).append("/s")
+                .append(i).append("</url-pattern></servlet-mapping>\n");
+        }
+        xml.append("</web-app>\n");
+        return xml.toString();
+    }
+
+    /**
+     * @return a bean definition file, the kind of document usually merged with XSLT
+     */
+    public static String createBeans(String name, int beans)
+    {
+        StringBuffer xml = new StringBuffer("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<beans>\n");
+        for (int i = 0; i < beans; i++)
+        {
+            xml.append("  <bean id=\"").append(name).append("-bean").append(i)
+                .append("\" class=\"").append(name).append(".Bean").append(i)
+                .append("\"><property name=\"index\" value=\"").append(i)
+                .append("\"/></bean>\n");
+        }
+        xml.append("</beans>\n");
+        return xml.toString();
+    }
+
+    /**
+     * @return a new empty directory, to {@link #delete(File)} once the benchmark is done
+     */
+    public static File createDirectory(String prefix) throws IOException
+    {
+        File directory = File.createTempFile(prefix, "");
+        if (!directory.delete() || !directory.mkdir())
+        {
+            throw new IOException("Cannot create [" + directory + "]");
+        }
+        return directory;
+    }
+
+    /**
+     * Delete a file, or a directory with all its content.
+     *
+     * @param file the file or directory to delete, ignored when <code>null</code>
+     */
+    public static void delete(File file) throws IOException
+    {
+        if (file == null)
+        {
+            return;
+        }
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (int i = 0; i < children.length; i++)
+            {
+                delete(children[i]);
+            }
+        }
+        if (file.exists() && !file.delete())
+        {
+            throw new IOException("Cannot delete [" + file + "]");
+        }
+    }
+
+    private static byte[] createJar(Random random, String name, int classes) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        for (int i = 0; i < classes; i++)
+        {
+            put(zip, name + "/Class" + i + ".class",
+                randomBytes(random, 512 + random.nextInt(2048)));
+        }
+        zip.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return bytes compressing roughly as well as class files do
+     */
+    private static byte[] randomBytes(Random random, int size)
+    {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++)
+        {
+            bytes[i] = (byte) ('a' + random.nextInt(random.nextBoolean() ? 4 : 26));
+        }
+        return bytes;
+    }
+
+    private static void put(ZipOutputStream zip, String name, byte[] content)
+        throws IOException
+    {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.cargo.maven2.merge.StreamingWebXmlMerger;
+import org.codehaus.cargo.maven2.uberwar.StreamingWarAssembler;
+import org.codehaus.cargo.module.opt.TZArchiveImplementation;
+import org.codehaus.cargo.module.webapp.DefaultWarArchive;
+import org.codehaus.cargo.module.webapp.WarArchive;
+import org.codehaus.cargo.module.webapp.merge.WarArchiveMerger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the whole uberwar pipeline on generated WARs and JARs: archive ingestion and
+ * WAR store with the {@link WarArchiveMerger}, as done by the default mode of the uberwar goal,
+ * and single pass assembly with the {@link StreamingWarAssembler}.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UberWarBenchmark
+{
+    /**
+     * The number of WARs merged.
+     */
+    @Param({"3"})
+    public int wars;
+
+    /**
+     * The number of classes and resources in each WAR.
+     */
+    @Param({"2000"})
+    public int entries;
+
+    /**
+     * The number of JARs in each WAR, and of JARs added to the uberwar.
+     */
+    @Param({"20"})
+    public int jars;
+
+    /**
+     * The number of servlets declared by each WAR.
+     */
+    @Param({"50"})
+    public int servlets;
+
+    /**
+     * The number of filters declared by each WAR.
+     */
+    @Param({"20"})
+    public int filters;
+
+    private List warFiles = new ArrayList();
+
+    private List jarFiles = new ArrayList();
+
+    private File directory;
+
+    private File output;
+
+    /**
+     * The result of the ingestion, for the store benchmark.
+     */
+    @State(Scope.Benchmark)
+    public static class Ingested
+    {
+        WarArchive merged;
+
+        @Setup(Level.Iteration)
+        public void ingest(UberWarBenchmark benchmark) throws Exception
+        {
+            TZArchiveImplementation.getInstance().setEnabled(true);
+            this.merged = benchmark.classicIngestion();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception
+    {
+        // Like the uberwar goal, ingest the WARs with the TrueZip archives
+        TZArchiveImplementation.getInstance().setEnabled(true);
+
+        this.directory = SyntheticWars.createDirectory("uberwar-benchmark");
+        for (int i = 0; i < this.wars; i++)
+        {
+            this.warFiles.add(SyntheticWars.createWar(new File(this.directory,
+                "war" + i + ".war"), "war" + i, this.entries, this.jars, this.servlets,
+                this.filters));
+        }
+        for (int i = 0; i < this.jars; i++)
+        {
+            this.jarFiles.add(SyntheticWars.createJar(new File(this.directory,
+                "dep" + i + ".jar"), "dep" + i, 100));
+        }
+        this.output = new File(this.directory, "uberwar.war");
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws Exception
+    {
+        SyntheticWars.delete(this.directory);
+    }
+
+    /**
+     * Expand and merge the WARs and JARs with a {@link WarArchiveMerger}.
+     */
+    @Benchmark
+    public WarArchive classicIngestion() throws Exception
+    {
+        WarArchiveMerger merger = new WarArchiveMerger();
+        for (Iterator i = this.warFiles.iterator(); i.hasNext();)
+        {
+            merger.addMergeItem(new DefaultWarArchive(((File) i.next()).getPath()));
+        }
+        for (Iterator i = this.jarFiles.iterator(); i.hasNext();)
+        {
+            merger.addMergeItem(i.next());
+        }
+        return (WarArchive) merger.performMerge();
+    }
+
+    /**
+     * Store the result of {@link #classicIngestion()}.
+     */
+    @Benchmark
+    public File classicStore(Ingested ingested) throws Exception
+    {
+        ingested.merged.store(this.output);
+        return this.output;
+    }
+
+    /**
+     * Build the uberwar in a single pass on one thread.
+     */
+    @Benchmark
+    public File streamingAssembly() throws Exception
+    {
+        return assemble(1);
+    }
+
+    /**
+     * Build the uberwar in a single pass, reading the archives on all the processors.
+     */
+    @Benchmark
+    public File parallelStreamingAssembly() throws Exception
+    {
+        return assemble(Runtime.getRuntime().availableProcessors());
+    }
+
+    private File assemble(int threads) throws Exception
+    {
+        StreamingWarAssembler assembler = new StreamingWarAssembler(new QuietLog());
+        assembler.setThreads(threads);
+        for (Iterator i = this.warFiles.iterator(); i.hasNext();)
+        {
+            assembler.addWar((File) i.next());
+        }
+        for (Iterator i = this.jarFiles.iterator(); i.hasNext();)
+        {
+            assembler.addJar((File) i.next());
+        }
+        assembler.addMergeProcessor("WEB-INF/web.xml", new StreamingWebXmlMerger());
+        assembler.assemble(this.output);
+        return this.output;
+    }
+}
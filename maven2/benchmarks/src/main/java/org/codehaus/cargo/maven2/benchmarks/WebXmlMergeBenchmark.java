@@ -0,0 +1,107 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.cargo.maven2.merge.StreamingWebXmlMerger;
+import org.codehaus.cargo.maven2.merge.WebXmlStreamAdapter;
+import org.codehaus.cargo.module.merge.MergeProcessor;
+import org.codehaus.cargo.module.webapp.merge.WarArchiveMerger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the web.xml merge: the JDOM based merger of Cargo, used by the
+ * <code>MergeWebXml</code> processor, and the streaming engine.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WebXmlMergeBenchmark
+{
+    /**
+     * The number of descriptors merged.
+     */
+    @Param({"3"})
+    public int wars;
+
+    /**
+     * The number of servlets declared by each descriptor.
+     */
+    @Param({"50", "500"})
+    public int servlets;
+
+    /**
+     * The number of filters declared by each descriptor.
+     */
+    @Param({"20"})
+    public int filters;
+
+    private byte[][] descriptors;
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception
+    {
+        this.descriptors = new byte[this.wars][];
+        for (int i = 0; i < this.wars; i++)
+        {
+            this.descriptors[i] = SyntheticWars.createWebXml("war" + i, this.servlets,
+                this.filters).getBytes("UTF-8");
+        }
+    }
+
+    @Benchmark
+    public Object classicMerge() throws Exception
+    {
+        return merge(new WebXmlStreamAdapter(new WarArchiveMerger().getWebXmlMerger()));
+    }
+
+    @Benchmark
+    public Object streamingMerge() throws Exception
+    {
+        return merge(new StreamingWebXmlMerger());
+    }
+
+    private Object merge(MergeProcessor processor) throws Exception
+    {
+        for (int i = 0; i < this.descriptors.length; i++)
+        {
+            processor.addMergeItem(new ByteArrayInputStream(this.descriptors[i]));
+        }
+        return processor.performMerge();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.cargo.maven2.merge.XsltMergeProcessor;
+import org.codehaus.cargo.maven2.merge.XsltTemplatesCache;
+import org.codehaus.cargo.module.merge.DocumentMergerByXslt;
+import org.codehaus.cargo.module.merge.DocumentStreamAdapter;
+import org.codehaus.cargo.module.merge.MergeProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the XSLT merge: Cargo's {@link DocumentMergerByXslt}, which compiles the
+ * stylesheet for every merge and works on JDOM documents, and the {@link XsltMergeProcessor}
+ * used by the <code>MergeXslt</code> processor, with a cached compiled stylesheet.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class XsltMergeBenchmark
+{
+    /**
+     * The number of documents merged.
+     */
+    @Param({"3"})
+    public int wars;
+
+    /**
+     * The number of beans in each document.
+     */
+    @Param({"100", "1000"})
+    public int beans;
+
+    private File directory;
+
+    private File stylesheet;
+
+    private byte[][] documents;
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception
+    {
+        this.directory = SyntheticWars.createDirectory("xslt-benchmark");
+        this.stylesheet = new File(this.directory, "merge.xsl");
+        OutputStream out = new FileOutputStream(this.stylesheet);
+        try
+        {
+            out.write(SyntheticWars.STYLESHEET.getBytes("UTF-8"));
+        }
+        finally
+        {
+            out.close();
+        }
+
+        this.documents = new byte[this.wars][];
+        for (int i = 0; i < this.wars; i++)
+        {
+            this.documents[i] = SyntheticWars.createBeans("war" + i, this.beans)
+                .getBytes("UTF-8");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws Exception
+    {
+        SyntheticWars.delete(this.directory);
+    }
+
+    @Benchmark
+    public Object classicMerge() throws Exception
+    {
+        InputStream in = new FileInputStream(this.stylesheet);
+        try
+        {
+            return merge(new DocumentStreamAdapter(new DocumentMergerByXslt(in)));
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public Object cachedMerge() throws Exception
+    {
+        return merge(new XsltMergeProcessor(XsltTemplatesCache.getTemplates(this.stylesheet)));
+    }
+
+    private Object merge(MergeProcessor processor) throws Exception
+    {
+        for (int i = 0; i < this.documents.length; i++)
+        {
+            processor.addMergeItem(new ByteArrayInputStream(this.documents[i]));
+        }
+        return processor.performMerge();
+    }
+}
@@ -23,6 +23,9 @@ package org.apache.maven.plugin.dependency.utils;
  *
  */
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.SortedSet;
@@ -31,45 +34,62 @@ import java.util.TreeSet;
 import org.apache.maven.artifact.Artifact;
 
 /**
+ * The resolved, unresolved and skipped dependencies. The sets are kept as given; the sorted views
+ * returned by the getters are only built when first asked for.
+ *
  * @author <a href="mailto:brianf@apache.org">Brian Fox</a>
  * @version $Id$
  */
 public class DependencyStatusSets
 {
 
-    TreeSet resolvedDependencies = null;
+    Set resolvedDependencies = null;
+
+    Set unResolvedDependencies = null;
+
+    Set skippedDependencies = null;
+
+    private SortedSet sortedResolvedDependencies;
 
-    TreeSet unResolvedDependencies = null;
+    private SortedSet sortedUnResolvedDependencies;
 
-    TreeSet skippedDependencies = null;
+    private SortedSet sortedSkippedDependencies;
 
     public DependencyStatusSets()
     {
 
     }
 
+    /**
+     * The sets are not copied, so they should not be changed afterwards.
+     */
     public DependencyStatusSets( Set resolved, Set unResolved, Set skipped )
     {
-        if ( resolved != null )
-        {
-            this.resolvedDependencies = new TreeSet( resolved );
-        }
-        if ( unResolved != null )
-        {
-            this.unResolvedDependencies = new TreeSet( unResolved );
-        }
-        if ( skipped != null )
+        this.resolvedDependencies = resolved;
+        this.unResolvedDependencies = unResolved;
+        this.skippedDependencies = skipped;
+    }
+
+    /**
+     * @return Returns the resolvedDependencies, sorted.
+     */
+    public Set getResolvedDependencies()
+    {
+        if ( this.sortedResolvedDependencies == null && this.resolvedDependencies != null )
         {
-            this.skippedDependencies = new TreeSet( skipped );
+            this.sortedResolvedDependencies = new TreeSet( this.resolvedDependencies );
         }
+        return this.sortedResolvedDependencies;
     }
 
     /**
+     * @param sorted
+     *            false when the order does not matter, to save sorting the dependencies
      * @return Returns the resolvedDependencies.
      */
-    public Set getResolvedDependencies()
+    public Set getResolvedDependencies( boolean sorted )
     {
-        return this.resolvedDependencies;
+        return sorted ? getResolvedDependencies() : this.resolvedDependencies;
     }
 
     /**
@@ -78,22 +98,30 @@ public class DependencyStatusSets
      */
     public void setResolvedDependencies( Set resolvedDependencies )
     {
-        if ( resolvedDependencies != null )
-        {
-            this.resolvedDependencies = new TreeSet( resolvedDependencies );
-        }
-        else
+        this.resolvedDependencies = resolvedDependencies;
+        this.sortedResolvedDependencies = null;
+    }
+
+    /**
+     * @return Returns the skippedDependencies, sorted.
+     */
+    public Set getSkippedDependencies()
+    {
+        if ( this.sortedSkippedDependencies == null && this.skippedDependencies != null )
         {
-            this.resolvedDependencies = null;
+            this.sortedSkippedDependencies = new TreeSet( this.skippedDependencies );
         }
+        return this.sortedSkippedDependencies;
     }
 
     /**
+     * @param sorted
+     *            false when the order does not matter, to save sorting the dependencies
      * @return Returns the skippedDependencies.
      */
-    public Set getSkippedDependencies()
+    public Set getSkippedDependencies( boolean sorted )
     {
-        return this.skippedDependencies;
+        return sorted ? getSkippedDependencies() : this.skippedDependencies;
     }
 
     /**
@@ -102,22 +130,20 @@ public class DependencyStatusSets
      */
     public void setSkippedDependencies( Set skippedDependencies )
     {
-        if ( skippedDependencies != null )
-        {
-            this.skippedDependencies = new TreeSet( skippedDependencies );
-        }
-        else
-        {
-            this.skippedDependencies = null;
-        }
+        this.skippedDependencies = skippedDependencies;
+        this.sortedSkippedDependencies = null;
     }
 
     /**
-     * @return Returns the unResolvedDependencies.
+     * @return Returns the unResolvedDependencies, sorted.
      */
     public Set getUnResolvedDependencies()
     {
-        return this.unResolvedDependencies;
+        if ( this.sortedUnResolvedDependencies == null && this.unResolvedDependencies != null )
+        {
+            this.sortedUnResolvedDependencies = new TreeSet( this.unResolvedDependencies );
+        }
+        return this.sortedUnResolvedDependencies;
     }
 
     /**
@@ -126,14 +152,8 @@ public class DependencyStatusSets
      */
     public void setUnResolvedDependencies( Set unResolvedDependencies )
     {
-        if ( unResolvedDependencies != null )
-        {
-            this.unResolvedDependencies = new TreeSet( unResolvedDependencies );
-        }
-        else
-        {
-            this.unResolvedDependencies = null;
-        }
+        this.unResolvedDependencies = unResolvedDependencies;
+        this.sortedUnResolvedDependencies = null;
     }
 
     public String getOutput(boolean outputAbsoluteArtifactFilename )
@@ -143,16 +163,41 @@ public class DependencyStatusSets
 
     public String getOutput(boolean outputAbsoluteArtifactFilename, boolean outputScope )
     {
-        StringBuffer sb = new StringBuffer();
-        sb.append( "\n" );
-        sb.append( "The following files have been resolved:\n" );
-        if ( this.resolvedDependencies == null || this.resolvedDependencies.isEmpty() )
+        StringWriter out = new StringWriter();
+        try
+        {
+            writeOutput( out, outputAbsoluteArtifactFilename, outputScope );
+        }
+        catch ( IOException e )
+        {
+            // a StringWriter does not throw
+            throw new IllegalStateException( e.getMessage() );
+        }
+        return out.toString();
+    }
+
+    /**
+     * Write the report of {@link #getOutput(boolean, boolean)} line by line, without building it
+     * in memory first.
+     *
+     * @param out
+     *            where to write the report
+     * @throws IOException
+     *             if <code>out</code> cannot be written
+     */
+    public void writeOutput( Writer out, boolean outputAbsoluteArtifactFilename, boolean outputScope )
+        throws IOException
+    {
+        out.write( "\n" );
+        out.write( "The following files have been resolved:\n" );
+        Set resolved = getResolvedDependencies();
+        if ( resolved == null || resolved.isEmpty() )
         {
-            sb.append( "   none\n" );
+            out.write( "   none\n" );
         }
         else
         {
-            for ( Iterator i = resolvedDependencies.iterator(); i.hasNext(); )
+            for ( Iterator i = resolved.iterator(); i.hasNext(); )
             {
                 Artifact artifact = (Artifact) i.next();
                 String artifactFilename = null;
@@ -172,35 +217,31 @@ public class DependencyStatusSets
 
                 String id = outputScope ? artifact.toString() : artifact.getId();
 
-                sb.append( "   " + id + ( outputAbsoluteArtifactFilename ? ":" + artifactFilename : "" ) +"\n");
+                out.write( "   " + id + ( outputAbsoluteArtifactFilename ? ":" + artifactFilename : "" ) +"\n");
             }
         }
 
-        if ( this.skippedDependencies != null && !this.skippedDependencies.isEmpty() )
+        Set skipped = getSkippedDependencies();
+        if ( skipped != null && !skipped.isEmpty() )
         {
-            sb.append( "\n" );
-            sb.append( "The following files were skipped:\n" );
-            SortedSet sortedSkippedDependencies = new TreeSet();
-            sortedSkippedDependencies.addAll( this.skippedDependencies );
-            for ( Iterator i = sortedSkippedDependencies.iterator(); i.hasNext(); )
+            out.write( "\n" );
+            out.write( "The following files were skipped:\n" );
+            for ( Iterator i = skipped.iterator(); i.hasNext(); )
             {
-                sb.append( "   " + ( (Artifact) i.next() ).getId()+"\n" );
+                out.write( "   " + ( (Artifact) i.next() ).getId()+"\n" );
             }
         }
 
-        if ( this.unResolvedDependencies != null && !this.unResolvedDependencies.isEmpty() )
+        Set unResolved = getUnResolvedDependencies();
+        if ( unResolved != null && !unResolved.isEmpty() )
         {
-            sb.append( "\n" );
-            sb.append( "The following files have NOT been resolved:\n" );
-            SortedSet sortedUnResolvedDependencies = new TreeSet();
-            sortedUnResolvedDependencies.addAll( this.unResolvedDependencies );
-            for ( Iterator i = sortedUnResolvedDependencies.iterator(); i.hasNext(); )
+            out.write( "\n" );
+            out.write( "The following files have NOT been resolved:\n" );
+            for ( Iterator i = unResolved.iterator(); i.hasNext(); )
             {
-                sb.append( "   " + ( (Artifact) i.next() ).getId()+"\n" );
+                out.write( "   " + ( (Artifact) i.next() ).getId()+"\n" );
             }
         }
-        sb.append("\n");
-
-        return sb.toString();
+        out.write("\n");
     }
 }
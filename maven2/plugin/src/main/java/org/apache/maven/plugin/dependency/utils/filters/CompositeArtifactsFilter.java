@@ -0,0 +1,358 @@
+package org.apache.maven.plugin.dependency.utils.filters;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.shared.artifact.filter.collection.AbstractArtifactsFilter;
+import org.apache.maven.shared.artifact.filter.collection.ArtifactFilterException;
+
+/**
+ * Evaluates the transitivity, scope, type, classifier, groupId and artifactId criteria of the
+ * individual collection filters in a single pass over the artifacts. Each criterion is parsed
+ * once when it is set, and criteria left empty are not evaluated at all, so a filter with no
+ * criteria hands back the artifacts it is given without copying them.
+ *
+ * @version $Id$
+ */
+public class CompositeArtifactsFilter
+    extends AbstractArtifactsFilter
+{
+
+    private static final int TRANSITIVITY = 0;
+
+    private static final int SCOPE = 1;
+
+    private static final int TYPE = 2;
+
+    private static final int CLASSIFIER = 3;
+
+    private static final int GROUP_ID = 4;
+
+    private static final int ARTIFACT_ID = 5;
+
+    private final Criterion[] criteria = new Criterion[6];
+
+    /**
+     * @param directDependencies
+     *            the direct dependencies of the project
+     * @param excludeTransitive
+     *            true to keep only the direct dependencies
+     */
+    public void setTransitivity( Set directDependencies, boolean excludeTransitive )
+    {
+        if ( !excludeTransitive )
+        {
+            criteria[TRANSITIVITY] = null;
+            return;
+        }
+
+        // Direct dependencies are equal artifacts, as in TransitivityFilter; they are looked up
+        // by groupId and artifactId, which do not change during resolution, then compared
+        final Map candidates = new HashMap();
+        if ( directDependencies != null )
+        {
+            for ( Iterator i = directDependencies.iterator(); i.hasNext(); )
+            {
+                Artifact dependency = (Artifact) i.next();
+                List artifacts = (List) candidates.get( getKey( dependency ) );
+                if ( artifacts == null )
+                {
+                    artifacts = new ArrayList( 1 );
+                    candidates.put( getKey( dependency ), artifacts );
+                }
+                artifacts.add( dependency );
+            }
+        }
+        criteria[TRANSITIVITY] = new Criterion()
+        {
+            boolean accept( Artifact artifact )
+            {
+                List artifacts = (List) candidates.get( getKey( artifact ) );
+                return artifacts != null && artifacts.contains( artifact );
+            }
+        };
+    }
+
+    /**
+     * Scopes are interpreted the same way as by the <code>ScopeFilter</code>: including
+     * <code>runtime</code> also includes <code>compile</code>, and so on, and the excluded scope
+     * is ignored when a scope is included.
+     *
+     * @param includeScope
+     *            the scope to include, or an empty string
+     * @param excludeScope
+     *            the scope to exclude, or an empty string
+     * @throws ArtifactFilterException
+     *             if a scope used is unknown, or if the <code>test</code> scope is excluded
+     */
+    public void setScope( String includeScope, String excludeScope )
+        throws ArtifactFilterException
+    {
+        final Set included = isEmpty( includeScope ) ? null : getImpliedScopes( "includeScope", includeScope );
+        final Set excluded = included != null || isEmpty( excludeScope ) ? null
+            : getImpliedScopes( "excludeScope", excludeScope );
+        if ( excluded != null && Artifact.SCOPE_TEST.equals( excludeScope.trim() ) )
+        {
+            throw new ArtifactFilterException( "Can't exclude Test scope, this will exclude everything." );
+        }
+
+        if ( included == null && excluded == null )
+        {
+            criteria[SCOPE] = null;
+            return;
+        }
+
+        // Artifacts without a scope count as part of every implied scope, as in ScopeArtifactFilter
+        final boolean includeUnscoped = included == null || included.size() > 1;
+        final boolean excludeUnscoped = excluded != null && excluded.size() > 1;
+        criteria[SCOPE] = new Criterion()
+        {
+            boolean accept( Artifact artifact )
+            {
+                String scope = artifact.getScope();
+                if ( scope == null )
+                {
+                    return includeUnscoped && !excludeUnscoped;
+                }
+                return ( included == null || included.contains( scope ) )
+                    && ( excluded == null || !excluded.contains( scope ) );
+            }
+        };
+    }
+
+    /**
+     * @param includeTypes
+     *            comma separated types to include, or an empty string
+     * @param excludeTypes
+     *            comma separated types to exclude, or an empty string
+     */
+    public void setTypes( String includeTypes, String excludeTypes )
+    {
+        criteria[TYPE] = createFeatureCriterion( TYPE, includeTypes, excludeTypes );
+    }
+
+    /**
+     * @param includeClassifiers
+     *            comma separated classifiers to include, or an empty string
+     * @param excludeClassifiers
+     *            comma separated classifiers to exclude, or an empty string
+     */
+    public void setClassifiers( String includeClassifiers, String excludeClassifiers )
+    {
+        criteria[CLASSIFIER] = createFeatureCriterion( CLASSIFIER, includeClassifiers, excludeClassifiers );
+    }
+
+    /**
+     * GroupIds are matched as prefixes, so <code>org.codehaus</code> also matches
+     * <code>org.codehaus.cargo</code>.
+     *
+     * @param includeGroupIds
+     *            comma separated groupIds to include, or an empty string
+     * @param excludeGroupIds
+     *            comma separated groupIds to exclude, or an empty string
+     */
+    public void setGroupIds( String includeGroupIds, String excludeGroupIds )
+    {
+        criteria[GROUP_ID] = createFeatureCriterion( GROUP_ID, includeGroupIds, excludeGroupIds );
+    }
+
+    /**
+     * @param includeArtifactIds
+     *            comma separated artifactIds to include, or an empty string
+     * @param excludeArtifactIds
+     *            comma separated artifactIds to exclude, or an empty string
+     */
+    public void setArtifactIds( String includeArtifactIds, String excludeArtifactIds )
+    {
+        criteria[ARTIFACT_ID] = createFeatureCriterion( ARTIFACT_ID, includeArtifactIds, excludeArtifactIds );
+    }
+
+    /**
+     * @return the artifacts matching every criterion, in iteration order, or
+     *         <code>artifacts</code> itself if no criterion is set
+     */
+    public Set filter( Set artifacts )
+    {
+        if ( !hasCriteria() )
+        {
+            return artifacts;
+        }
+
+        Set result = new LinkedHashSet();
+        for ( Iterator i = artifacts.iterator(); i.hasNext(); )
+        {
+            Artifact artifact = (Artifact) i.next();
+            if ( isArtifactIncluded( artifact ) )
+            {
+                result.add( artifact );
+            }
+        }
+        return result;
+    }
+
+    public boolean isArtifactIncluded( Artifact artifact )
+    {
+        for ( int i = 0; i < criteria.length; i++ )
+        {
+            if ( criteria[i] != null && !criteria[i].accept( artifact ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasCriteria()
+    {
+        for ( int i = 0; i < criteria.length; i++ )
+        {
+            if ( criteria[i] != null )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Criterion createFeatureCriterion( final int feature, String includes, String excludes )
+    {
+        final String[] included = split( includes );
+        final String[] excluded = split( excludes );
+        if ( included.length == 0 && excluded.length == 0 )
+        {
+            return null;
+        }
+
+        return new Criterion()
+        {
+            boolean accept( Artifact artifact )
+            {
+                String value = getFeature( feature, artifact );
+                return ( included.length == 0 || matches( feature, value, included ) )
+                    && !matches( feature, value, excluded );
+            }
+        };
+    }
+
+    private static String getFeature( int feature, Artifact artifact )
+    {
+        switch ( feature )
+        {
+            case TYPE:
+                return artifact.getType();
+            case CLASSIFIER:
+                return artifact.getClassifier();
+            case GROUP_ID:
+                return artifact.getGroupId();
+            default:
+                return artifact.getArtifactId();
+        }
+    }
+
+    private static boolean matches( int feature, String value, String[] patterns )
+    {
+        if ( value == null )
+        {
+            return false;
+        }
+        for ( int i = 0; i < patterns.length; i++ )
+        {
+            if ( feature == GROUP_ID ? value.startsWith( patterns[i] ) : value.equals( patterns[i] ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set getImpliedScopes( String parameter, String scope )
+        throws ArtifactFilterException
+    {
+        scope = scope.trim();
+        String[] scopes;
+        if ( Artifact.SCOPE_COMPILE.equals( scope ) )
+        {
+            scopes = new String[] { Artifact.SCOPE_COMPILE, Artifact.SCOPE_PROVIDED, Artifact.SCOPE_SYSTEM };
+        }
+        else if ( Artifact.SCOPE_RUNTIME.equals( scope ) )
+        {
+            scopes = new String[] { Artifact.SCOPE_COMPILE, Artifact.SCOPE_RUNTIME };
+        }
+        else if ( Artifact.SCOPE_TEST.equals( scope ) )
+        {
+            scopes = new String[] { Artifact.SCOPE_COMPILE, Artifact.SCOPE_PROVIDED, Artifact.SCOPE_SYSTEM,
+                Artifact.SCOPE_RUNTIME, Artifact.SCOPE_TEST };
+        }
+        else if ( Artifact.SCOPE_PROVIDED.equals( scope ) || Artifact.SCOPE_SYSTEM.equals( scope ) )
+        {
+            scopes = new String[] { scope };
+        }
+        else
+        {
+            throw new ArtifactFilterException( "Invalid Scope in " + parameter + ": " + scope );
+        }
+        return new HashSet( Arrays.asList( scopes ) );
+    }
+
+    private static String[] split( String values )
+    {
+        List result = new ArrayList();
+        if ( values != null )
+        {
+            String[] parts = values.split( "," );
+            for ( int i = 0; i < parts.length; i++ )
+            {
+                if ( !isEmpty( parts[i] ) )
+                {
+                    result.add( parts[i].trim() );
+                }
+            }
+        }
+        return (String[]) result.toArray( new String[result.size()] );
+    }
+
+    private static boolean isEmpty( String value )
+    {
+        return value == null || value.trim().length() == 0;
+    }
+
+    private static String getKey( Artifact artifact )
+    {
+        return artifact.getGroupId() + ":" + artifact.getArtifactId();
+    }
+
+    /**
+     * A single compiled criterion.
+     */
+    private abstract static class Criterion
+    {
+        abstract boolean accept( Artifact artifact );
+    }
+}
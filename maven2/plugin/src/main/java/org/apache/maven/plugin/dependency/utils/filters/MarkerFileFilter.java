@@ -23,14 +23,24 @@ package org.apache.maven.plugin.dependency.utils.filters;
  *
  */
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.dependency.fromConfiguration.ArtifactItem;
+import org.apache.maven.plugin.dependency.utils.markers.BulkMarkerHandler;
 import org.apache.maven.plugin.dependency.utils.markers.MarkerHandler;
+import org.apache.maven.plugin.dependency.utils.markers.MarkerLookup;
 import org.apache.maven.shared.artifact.filter.collection.AbstractArtifactsFilter;
 import org.apache.maven.shared.artifact.filter.collection.ArtifactFilterException;
 
@@ -113,6 +123,151 @@ public class MarkerFileFilter
         return result;
     }
 
+    /**
+     * Check the markers of a whole set of artifacts at once. The markers are prepared a single
+     * time, for instance with one listing of the marker directory, then checked by
+     * <code>threads</code> threads without touching the handler's current artifact.
+     *
+     * @param artifacts
+     *            the artifacts to check
+     * @param threads
+     *            the number of artifacts checked at the same time
+     * @return the included and the skipped artifacts
+     * @throws ArtifactFilterException
+     *             if a marker cannot be checked
+     */
+    public MarkerFilterResult filterMarkers( Set artifacts, int threads )
+        throws ArtifactFilterException
+    {
+        final MarkerLookup lookup;
+        try
+        {
+            lookup = getMarkerLookup();
+        }
+        catch ( MojoExecutionException e )
+        {
+            throw new ArtifactFilterException( e.getMessage(), e );
+        }
+
+        List candidates = new ArrayList( artifacts );
+        boolean[] included = new boolean[candidates.size()];
+        if ( threads <= 1 || candidates.size() <= 1 )
+        {
+            try
+            {
+                for ( int i = 0; i < included.length; i++ )
+                {
+                    included[i] = isArtifactIncluded( (Artifact) candidates.get( i ), lookup );
+                }
+            }
+            catch ( MojoExecutionException e )
+            {
+                throw new ArtifactFilterException( e.getMessage(), e );
+            }
+        }
+        else
+        {
+            ExecutorService executor = Executors.newFixedThreadPool( Math.min( threads, candidates.size() ) );
+            try
+            {
+                List futures = new ArrayList( candidates.size() );
+                for ( Iterator iter = candidates.iterator(); iter.hasNext(); )
+                {
+                    final Artifact artifact = (Artifact) iter.next();
+                    futures.add( executor.submit( new Callable()
+                    {
+                        public Object call()
+                            throws MojoExecutionException
+                        {
+                            return Boolean.valueOf( isArtifactIncluded( artifact, lookup ) );
+                        }
+                    } ) );
+                }
+                for ( int i = 0; i < included.length; i++ )
+                {
+                    included[i] = ( (Boolean) ( (Future) futures.get( i ) ).get() ).booleanValue();
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                throw new ArtifactFilterException( "Interrupted while checking markers", e );
+            }
+            catch ( ExecutionException e )
+            {
+                throw new ArtifactFilterException( e.getCause().getMessage(), e.getCause() );
+            }
+            finally
+            {
+                executor.shutdown();
+            }
+        }
+
+        Set result = new LinkedHashSet();
+        Set skipped = new LinkedHashSet();
+        for ( int i = 0; i < included.length; i++ )
+        {
+            if ( included[i] )
+            {
+                result.add( candidates.get( i ) );
+            }
+            else
+            {
+                skipped.add( candidates.get( i ) );
+            }
+        }
+        return new MarkerFilterResult( result, skipped );
+    }
+
+    /**
+     * The thread-safe equivalent of {@link #isArtifactIncluded(ArtifactItem)}.
+     */
+    protected boolean isArtifactIncluded( Artifact artifact, MarkerLookup lookup )
+        throws MojoExecutionException
+    {
+        boolean overWrite = ( artifact.isSnapshot() && this.overWriteSnapshots )
+            || ( !artifact.isSnapshot() && this.overWriteReleases );
+
+        return overWrite || !lookup.isMarkerSet( artifact )
+            || ( overWriteIfNewer && lookup.isMarkerOlder( artifact ) );
+    }
+
+    /**
+     * @return the handler's own lookup, or one that checks the artifacts one at a time on the
+     *         handler if it cannot check them in bulk
+     */
+    private MarkerLookup getMarkerLookup()
+        throws MojoExecutionException
+    {
+        if ( handler instanceof BulkMarkerHandler )
+        {
+            return ( (BulkMarkerHandler) handler ).getMarkerLookup();
+        }
+
+        final MarkerHandler theHandler = handler;
+        return new MarkerLookup()
+        {
+            public boolean isMarkerSet( Artifact artifact )
+                throws MojoExecutionException
+            {
+                synchronized ( theHandler )
+                {
+                    theHandler.setArtifact( artifact );
+                    return theHandler.isMarkerSet();
+                }
+            }
+
+            public boolean isMarkerOlder( Artifact artifact )
+                throws MojoExecutionException
+            {
+                synchronized ( theHandler )
+                {
+                    theHandler.setArtifact( artifact );
+                    return theHandler.isMarkerOlder( artifact );
+                }
+            }
+        };
+    }
+
     /**
      * @return Returns the overWriteReleases.
      */
@@ -0,0 +1,57 @@
+package org.apache.maven.plugin.dependency.utils.filters;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Set;
+
+/**
+ * The artifacts a {@link MarkerFileFilter} includes and skips, from a single pass over them.
+ *
+ * @version $Id$
+ */
+public class MarkerFilterResult
+{
+
+    private final Set included;
+
+    private final Set skipped;
+
+    public MarkerFilterResult( Set included, Set skipped )
+    {
+        this.included = included;
+        this.skipped = skipped;
+    }
+
+    /**
+     * @return Returns the artifacts to process, in the order they were given.
+     */
+    public Set getIncluded()
+    {
+        return this.included;
+    }
+
+    /**
+     * @return Returns the artifacts skipped because of their marker, in the order they were given.
+     */
+    public Set getSkipped()
+    {
+        return this.skipped;
+    }
+}
@@ -23,9 +23,11 @@ package org.apache.maven.plugin.dependency.utils.filters;
  *
  */
 
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.dependency.fromConfiguration.ArtifactItem;
 import org.apache.maven.plugin.dependency.utils.markers.MarkerHandler;
+import org.apache.maven.plugin.dependency.utils.markers.MarkerLookup;
 import org.apache.maven.shared.artifact.filter.collection.ArtifactFilterException;
 
 /**
@@ -53,4 +55,10 @@ public class ResolveFileFilter
             throw new ArtifactFilterException( e.getMessage(),e);
         }
     }
+
+    protected boolean isArtifactIncluded( Artifact artifact, MarkerLookup lookup )
+        throws MojoExecutionException
+    {
+        return ( !lookup.isMarkerSet( artifact ) );
+    }
 }
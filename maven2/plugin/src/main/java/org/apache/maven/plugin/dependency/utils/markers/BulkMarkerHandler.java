@@ -0,0 +1,40 @@
+package org.apache.maven.plugin.dependency.utils.markers;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * A {@link MarkerHandler} that can check the markers of many artifacts at once.
+ *
+ * @version $Id$
+ */
+public interface BulkMarkerHandler
+    extends MarkerHandler
+{
+    /**
+     * Prepare the markers for checking, for instance by listing the marker directory once. Markers
+     * set or cleared afterwards may not be seen by the lookup.
+     *
+     * @return a thread-safe view of the markers
+     */
+    MarkerLookup getMarkerLookup()
+        throws MojoExecutionException;
+}
@@ -25,6 +25,10 @@ package org.apache.maven.plugin.dependency.utils.markers;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -34,7 +38,7 @@ import org.apache.maven.plugin.MojoExecutionException;
  * @version $Id$
  */
 public class DefaultFileMarkerHandler
-    implements MarkerHandler
+    implements BulkMarkerHandler
 {
     protected Artifact artifact;
 
@@ -58,7 +62,65 @@ public class DefaultFileMarkerHandler
      */
     protected File getMarkerFile()
     {
-        return new File( this.markerFilesDirectory, this.artifact.getId().replace( ':', '-' ) + ".marker" );
+        return new File( this.markerFilesDirectory, getMarkerFileNames( this.artifact )[0] );
+    }
+
+    /**
+     * Returns the names of the marker files of an artifact, in the order they are checked
+     *
+     * @param theArtifact
+     *            the artifact
+     * @return the marker file names, the one {@link #setMarker()} creates first
+     */
+    protected String[] getMarkerFileNames( Artifact theArtifact )
+    {
+        return new String[] { theArtifact.getId().replace( ':', '-' ) + ".marker" };
+    }
+
+    /**
+     * Lists the marker files directory once: checking whether a marker is set then needs no file
+     * system access, and checking whether it is older stats the marker and the artifact only.
+     *
+     * @return a thread-safe view of the markers
+     */
+    public MarkerLookup getMarkerLookup()
+    {
+        final File directory = this.markerFilesDirectory;
+        String[] names = ( directory == null ? new File( "." ) : directory ).list();
+        final Set listed = names == null ? Collections.EMPTY_SET : new HashSet( Arrays.asList( names ) );
+
+        return new MarkerLookup()
+        {
+            public boolean isMarkerSet( Artifact theArtifact )
+            {
+                return getListedMarker( theArtifact ) != null;
+            }
+
+            public boolean isMarkerOlder( Artifact theArtifact )
+            {
+                String marker = getListedMarker( theArtifact );
+                if ( marker == null )
+                {
+                    // if the marker doesn't exist, we want to copy so assume it is
+                    // infinately older
+                    return true;
+                }
+                return theArtifact.getFile().lastModified() > new File( directory, marker ).lastModified();
+            }
+
+            private String getListedMarker( Artifact theArtifact )
+            {
+                String[] candidates = getMarkerFileNames( theArtifact );
+                for ( int i = 0; i < candidates.length; i++ )
+                {
+                    if ( listed.contains( candidates[i] ) )
+                    {
+                        return candidates[i];
+                    }
+                }
+                return null;
+            }
+        };
     }
 
     /**
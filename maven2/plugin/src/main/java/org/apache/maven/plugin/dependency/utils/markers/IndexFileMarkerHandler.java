@@ -0,0 +1,428 @@
+package org.apache.maven.plugin.dependency.utils.markers;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.cargo.maven2.util.Digests;
+import org.codehaus.cargo.maven2.util.RecordFiles;
+
+/**
+ * Keeps the markers of all the artifacts in a single index file instead of one marker file per
+ * artifact. The index is read the first time a marker is needed, after which checking a marker
+ * costs no file system access; changes stay in memory until {@link #flush()} replaces the index
+ * in one rename.
+ * <p/>
+ * Like the {@link SourcesFileMarkerHandler}, a marker records whether the artifact was resolved,
+ * and is set whichever way it was.
+ * <p/>
+ * In checksum mode, a marker also records the size, modification time and content checksum of
+ * the artifact file, and {@link #isMarkerOlder(Artifact)} compares contents instead of
+ * timestamps: a file of another size has changed, a file of the same size and modification time
+ * has not, and only otherwise is the file hashed again. A fresh checkout or a restored cache
+ * therefore does not make every artifact look newer than its marker.
+ * <p/>
+ * The checksum is the SHA-256 of files of up to 8 MB. Larger files are hashed in 8 MB chunks,
+ * in parallel on the executor given to {@link #setExecutor(ExecutorService)}, and their checksum
+ * is the SHA-256 of the SHA-256s of the chunks: it tells contents apart just as well, but cannot
+ * be compared with a published SHA-256 of the artifact.
+ *
+ * @version $Id$
+ */
+public class IndexFileMarkerHandler
+    implements BulkMarkerHandler
+{
+
+    /**
+     * Name of the index file in a markers directory.
+     */
+    public static final String INDEX_FILE_NAME = "markers.index";
+
+    private static final String HEADER = "# Marker index, version 1";
+
+    private static final String RESOLVED = "resolved";
+
+    private static final String UNRESOLVED = "unresolved";
+
+    /**
+     * Files larger than this are hashed in chunks of this size.
+     */
+    private static final long CHUNK_SIZE = 8 * 1024 * 1024;
+
+    protected Artifact artifact;
+
+    protected File indexFile;
+
+    boolean resolved;
+
+    /**
+     * Artifact id to {@link Marker}, or null until the index is loaded.
+     */
+    private Map markers;
+
+    private boolean dirty;
+
+    private boolean checksums;
+
+    private ExecutorService executor;
+
+    public IndexFileMarkerHandler( File theIndexFile )
+    {
+        this.indexFile = theIndexFile;
+    }
+
+    public IndexFileMarkerHandler( File theIndexFile, boolean isResolved )
+    {
+        this.indexFile = theIndexFile;
+        this.resolved = isResolved;
+    }
+
+    public boolean isMarkerSet()
+        throws MojoExecutionException
+    {
+        return isMarkerSet( getArtifact() );
+    }
+
+    public boolean isMarkerOlder( Artifact theArtifact )
+        throws MojoExecutionException
+    {
+        return isMarkerOlder( getArtifact().getId(), theArtifact );
+    }
+
+    /**
+     * The index is already in memory, so the lookup only loads it.
+     *
+     * @return a thread-safe view of the markers
+     */
+    public MarkerLookup getMarkerLookup()
+    {
+        synchronized ( this )
+        {
+            getMarkers();
+        }
+        return new MarkerLookup()
+        {
+            public boolean isMarkerSet( Artifact theArtifact )
+            {
+                return IndexFileMarkerHandler.this.isMarkerSet( theArtifact );
+            }
+
+            public boolean isMarkerOlder( Artifact theArtifact )
+                throws MojoExecutionException
+            {
+                return IndexFileMarkerHandler.this.isMarkerOlder( theArtifact.getId(), theArtifact );
+            }
+        };
+    }
+
+    private boolean isMarkerSet( Artifact theArtifact )
+    {
+        return getMarker( theArtifact.getId() ) != null;
+    }
+
+    /**
+     * Only the index is accessed under the lock, so that several threads can check files at once.
+     */
+    private boolean isMarkerOlder( String id, Artifact theArtifact )
+        throws MojoExecutionException
+    {
+        Marker marker = getMarker( id );
+        if ( marker != null && this.checksums && marker.checksum != null )
+        {
+            File file = theArtifact.getFile();
+            if ( file.length() != marker.size )
+            {
+                return true;
+            }
+            if ( file.lastModified() == marker.lastModified )
+            {
+                return false;
+            }
+            String checksum = checksum( file );
+            if ( !checksum.equals( marker.checksum ) )
+            {
+                return true;
+            }
+            // same content with another timestamp: remember it so that it is not hashed again
+            putMarker( id, new Marker( marker.resolved, marker.timestamp, file.length(), file.lastModified(),
+                                       checksum ) );
+            return false;
+        }
+        else if ( marker != null )
+        {
+            return theArtifact.getFile().lastModified() > marker.timestamp;
+        }
+        else
+        {
+            // if the marker doesn't exist, we want to copy so assume it is
+            // infinately older
+            return true;
+        }
+    }
+
+    public synchronized void setMarker()
+        throws MojoExecutionException
+    {
+        long timestamp = System.currentTimeMillis();
+        File file = this.artifact.getFile();
+        Marker marker;
+        if ( this.checksums && file != null && file.isFile() )
+        {
+            marker = new Marker( this.resolved, timestamp, file.length(), file.lastModified(), checksum( file ) );
+        }
+        else
+        {
+            marker = new Marker( this.resolved, timestamp, 0, 0, null );
+        }
+        getMarkers().put( this.artifact.getId(), marker );
+        this.dirty = true;
+    }
+
+    public synchronized boolean clearMarker()
+        throws MojoExecutionException
+    {
+        boolean cleared = getMarkers().remove( this.artifact.getId() ) != null;
+        this.dirty |= cleared;
+        return cleared;
+    }
+
+    /**
+     * Write the markers set or cleared since the index was loaded. The index is replaced by a
+     * complete new index in one rename, so that neither an interrupted build nor a concurrent one
+     * sees it half written.
+     *
+     * @throws MojoExecutionException
+     *             if the index cannot be written
+     */
+    public synchronized void flush()
+        throws MojoExecutionException
+    {
+        if ( !this.dirty )
+        {
+            return;
+        }
+
+        final Map theMarkers = this.markers;
+        try
+        {
+            RecordFiles.store( this.indexFile, HEADER, new RecordFiles.Printer()
+            {
+                public void print( Writer writer )
+                    throws IOException
+                {
+                    for ( Iterator i = theMarkers.entrySet().iterator(); i.hasNext(); )
+                    {
+                        Map.Entry entry = (Map.Entry) i.next();
+                        Marker marker = (Marker) entry.getValue();
+                        writer.write( entry.getKey() + "\t" + ( marker.resolved ? RESOLVED : UNRESOLVED ) + "\t"
+                            + marker.timestamp );
+                        if ( marker.checksum != null )
+                        {
+                            writer.write( "\t" + marker.size + "\t" + marker.lastModified + "\t" + marker.checksum );
+                        }
+                        writer.write( "\n" );
+                    }
+                }
+            } );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Unable to write Marker index: " + this.indexFile.getAbsolutePath(), e );
+        }
+        this.dirty = false;
+    }
+
+    private String checksum( File file )
+        throws MojoExecutionException
+    {
+        try
+        {
+            return Digests.digest( file, Digests.SHA256, CHUNK_SIZE, this.executor );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Unable to compute the checksum of " + file.getAbsolutePath(), e );
+        }
+    }
+
+    private synchronized Marker getMarker( String id )
+    {
+        return (Marker) getMarkers().get( id );
+    }
+
+    private synchronized void putMarker( String id, Marker marker )
+    {
+        getMarkers().put( id, marker );
+        this.dirty = true;
+    }
+
+    /**
+     * @return the markers of the index, reading it the first time
+     */
+    private Map getMarkers()
+    {
+        if ( this.markers == null )
+        {
+            this.markers = load( this.indexFile );
+        }
+        return this.markers;
+    }
+
+    /**
+     * @return the markers of <code>file</code>, or no markers if it is missing or cannot be read,
+     *         in which case the artifacts are simply processed again
+     */
+    private static Map load( File file )
+    {
+        Map result = (Map) RecordFiles.load( file, HEADER, new RecordFiles.Parser()
+        {
+            public Object parse( BufferedReader reader )
+                throws IOException
+            {
+                Map loaded = new TreeMap();
+                String line;
+                while ( ( line = reader.readLine() ) != null )
+                {
+                    String[] fields = line.split( "\t" );
+                    Marker marker;
+                    if ( fields.length > 3 )
+                    {
+                        marker = new Marker( RESOLVED.equals( fields[1] ), Long.parseLong( fields[2] ),
+                                             Long.parseLong( fields[3] ), Long.parseLong( fields[4] ), fields[5] );
+                    }
+                    else
+                    {
+                        marker = new Marker( RESOLVED.equals( fields[1] ), Long.parseLong( fields[2] ), 0, 0, null );
+                    }
+                    loaded.put( fields[0], marker );
+                }
+                return loaded;
+            }
+        } );
+        return result == null ? new TreeMap() : result;
+    }
+
+    /**
+     * @return Returns the artifact.
+     */
+    public synchronized Artifact getArtifact()
+    {
+        return this.artifact;
+    }
+
+    /**
+     * @param artifact
+     *            The artifact to set.
+     */
+    public synchronized void setArtifact( Artifact artifact )
+    {
+        this.artifact = artifact;
+    }
+
+    /**
+     * @return Returns the indexFile.
+     */
+    public File getIndexFile()
+    {
+        return this.indexFile;
+    }
+
+    /**
+     * @return Returns the resolved.
+     */
+    public boolean isResolved()
+    {
+        return this.resolved;
+    }
+
+    /**
+     * @param resolved
+     *            The resolved to set.
+     */
+    public void setResolved( boolean isResolved )
+    {
+        this.resolved = isResolved;
+    }
+
+    /**
+     * @return Returns the checksums.
+     */
+    public boolean isChecksums()
+    {
+        return this.checksums;
+    }
+
+    /**
+     * @param checksums
+     *            true to compare the content of artifacts rather than their timestamps
+     */
+    public void setChecksums( boolean checksums )
+    {
+        this.checksums = checksums;
+    }
+
+    /**
+     * @param executor
+     *            The threads hashing the chunks of large files, shared by all the files hashed at the same time,
+     *            or null to hash the chunks on the thread checking the marker.
+     */
+    public void setExecutor( ExecutorService executor )
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * The marker of an artifact: whether it was resolved, when the marker was set and, in
+     * checksum mode, the size, modification time and checksum of the artifact file.
+     */
+    private static class Marker
+    {
+        final boolean resolved;
+
+        final long timestamp;
+
+        final long size;
+
+        final long lastModified;
+
+        /**
+         * The content checksum, as described in the {@link IndexFileMarkerHandler class} comment.
+         */
+        final String checksum;
+
+        Marker( boolean resolved, long timestamp, long size, long lastModified, String checksum )
+        {
+            this.resolved = resolved;
+            this.timestamp = timestamp;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.apache.maven.plugin.dependency.utils.markers;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Answers the questions of a {@link MarkerHandler} for any artifact, without a current artifact
+ * to set first. A lookup is safe to use from several threads at once.
+ *
+ * @version $Id$
+ */
+public interface MarkerLookup
+{
+    boolean isMarkerSet( Artifact artifact )
+        throws MojoExecutionException;
+
+    boolean isMarkerOlder( Artifact artifact )
+        throws MojoExecutionException;
+}
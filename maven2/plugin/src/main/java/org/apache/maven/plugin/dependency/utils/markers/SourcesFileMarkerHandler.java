@@ -82,6 +82,19 @@ public class SourcesFileMarkerHandler
         return new File( this.markerFilesDirectory, this.artifact.getId().replace( ':', '-' ) + suffix );
     }
 
+    protected String[] getMarkerFileNames( Artifact theArtifact )
+    {
+        String name = theArtifact.getId().replace( ':', '-' );
+        if ( this.resolved )
+        {
+            return new String[] { name + ".resolved", name + ".unresolved" };
+        }
+        else
+        {
+            return new String[] { name + ".unresolved", name + ".resolved" };
+        }
+    }
+
     /**
      * Tests whether the file or directory denoted by this abstract pathname
      * exists.
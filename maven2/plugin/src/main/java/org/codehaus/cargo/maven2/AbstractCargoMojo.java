@@ -36,7 +36,7 @@ import org.codehaus.cargo.maven2.configuration.Configuration;
 import org.codehaus.cargo.maven2.configuration.Container;
 import org.codehaus.cargo.maven2.configuration.Deployable;
 import org.codehaus.cargo.maven2.configuration.Deployer;
-import org.codehaus.cargo.maven2.jetty.JettyArtifactResolver;
+import org.codehaus.cargo.maven2.embedded.EmbeddedArtifactResolver;
 import org.codehaus.cargo.maven2.log.MavenLogger;
 import org.codehaus.cargo.maven2.util.CargoProject;
 import org.codehaus.cargo.util.DefaultFileHandler;
@@ -480,10 +480,10 @@ public abstract class AbstractCargoMojo extends AbstractCommonMojo
     
     protected void loadEmbeddedContainerDependencies() throws MojoExecutionException
     {
-        if (getContainerElement().getContainerId().startsWith("jetty"))
+        EmbeddedArtifactResolver resolver = new EmbeddedArtifactResolver(this.artifactResolver,
+            this.localRepository, this.repositories, this.artifactFactory);
+        if (resolver.isSupported(getContainerElement().getContainerId()))
         {
-            JettyArtifactResolver resolver = new JettyArtifactResolver(this.artifactResolver,
-                this.localRepository, this.repositories, this.artifactFactory);
             ClassLoader classLoader = resolver.resolveDependencies(
                 getContainerElement().getContainerId(), getCargoProject().getEmbeddedClassLoader());
             getCargoProject().setEmbeddedClassLoader(classLoader);
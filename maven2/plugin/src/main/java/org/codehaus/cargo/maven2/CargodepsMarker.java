@@ -0,0 +1,146 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.codehaus.cargo.maven2.util.RecordFiles;
+
+/**
+ * Record kept next to a <code>.cargodeps</code> POM installed by the {@link DependencyCalculator}:
+ * the checksum of the POM it was rewritten from, and the WARs that POM depends on. When the
+ * source POM is unchanged the installed POM is current, and the nested WARs can be visited
+ * without building the project again.
+ * <p/>
+ * The marker is a tab separated text file, one record per line.
+ *
+ * @version $Id$
+ */
+class CargodepsMarker
+{
+    private static final String HEADER = "# Cargo cargodeps marker, version 1";
+
+    private String checksum;
+
+    private List wars = new ArrayList();
+
+    /**
+     * @param checksum the SHA-1 of the source POM
+     */
+    CargodepsMarker(String checksum)
+    {
+        this.checksum = checksum;
+    }
+
+    String getChecksum()
+    {
+        return this.checksum;
+    }
+
+    /**
+     * Record a WAR dependency of the source POM.
+     */
+    void addWar(String groupId, String artifactId, String version)
+    {
+        this.wars.add(new String[] {groupId, artifactId, version});
+    }
+
+    /**
+     * @return the WAR dependencies of the source POM, as <code>{groupId, artifactId,
+     *         version}</code> arrays
+     */
+    List getWars()
+    {
+        return Collections.unmodifiableList(this.wars);
+    }
+
+    /**
+     * @param pom an installed <code>.cargodeps</code> POM
+     * @return the marker file of <code>pom</code>
+     */
+    static File getFile(File pom)
+    {
+        return new File(pom.getPath() + ".cargodeps");
+    }
+
+    /**
+     * @param pom an installed <code>.cargodeps</code> POM
+     * @return the marker of <code>pom</code>, or null if the POM or its marker are missing or
+     *         the marker cannot be read
+     */
+    static CargodepsMarker load(File pom)
+    {
+        if (!pom.isFile())
+        {
+            return null;
+        }
+
+        return (CargodepsMarker) RecordFiles.load(getFile(pom), HEADER, new RecordFiles.Parser()
+        {
+            public Object parse(BufferedReader reader) throws IOException
+            {
+                CargodepsMarker marker = null;
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    String[] fields = line.split("\t", -1);
+                    if ("source".equals(fields[0]))
+                    {
+                        marker = new CargodepsMarker(fields[1]);
+                    }
+                    else if ("war".equals(fields[0]))
+                    {
+                        marker.addWar(fields[1], fields[2], fields[3]);
+                    }
+                }
+                return marker;
+            }
+        });
+    }
+
+    /**
+     * Store the marker of an installed POM.
+     *
+     * @param pom the installed <code>.cargodeps</code> POM
+     * @throws IOException if the marker cannot be written
+     */
+    void store(File pom) throws IOException
+    {
+        RecordFiles.store(getFile(pom), HEADER, new RecordFiles.Printer()
+        {
+            public void print(Writer writer) throws IOException
+            {
+                writer.write("source\t" + checksum + "\n");
+                for (Iterator i = wars.iterator(); i.hasNext();)
+                {
+                    String[] war = (String[]) i.next();
+                    writer.write("war\t" + war[0] + "\t" + war[1] + "\t" + war[2] + "\n");
+                }
+            }
+        });
+    }
+}
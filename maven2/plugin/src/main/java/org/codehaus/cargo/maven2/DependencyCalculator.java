@@ -21,13 +21,32 @@ package org.codehaus.cargo.maven2;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
@@ -43,18 +62,24 @@ import org.apache.maven.model.Model;
 import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
 import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugin.dependency.utils.DependencyStatusSets;
+import org.apache.maven.plugin.dependency.utils.filters.CompositeArtifactsFilter;
+import org.apache.maven.plugin.dependency.utils.filters.MarkerFileFilter;
+import org.apache.maven.plugin.dependency.utils.filters.MarkerFilterResult;
 import org.apache.maven.plugin.dependency.utils.filters.ResolveFileFilter;
-import org.apache.maven.plugin.dependency.utils.markers.SourcesFileMarkerHandler;
+import org.apache.maven.plugin.dependency.utils.markers.IndexFileMarkerHandler;
 import org.apache.maven.profiles.DefaultProfileManager;
 import org.apache.maven.profiles.ProfileManager;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectBuilder;
 import org.apache.maven.project.ProjectBuildingException;
 import org.apache.maven.project.artifact.InvalidDependencyVersionException;
+import org.codehaus.cargo.maven2.util.Digests;
 import org.codehaus.plexus.PlexusContainer;
+import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
-import org.apache.maven.shared.artifact.filter.collection.*;
+import org.apache.maven.shared.artifact.filter.collection.ArtifactFilterException;
 /**
  * This class is effectively an unmitigated hack. Any offers to do it 'properly'
  * are gratefully received from someone who can get the guts of Maven to do what
@@ -123,6 +148,62 @@ public class DependencyCalculator {
 
     private File markersDirectory;
 
+    /**
+     * The markers of the last calculation, or null if it used none.
+     */
+    private IndexFileMarkerHandler markerHandler;
+
+    private int threads = 1;
+
+    private boolean checksumMarkers;
+
+    private Log log;
+
+    /**
+     * A WAR of the dependency graph, once its POM has been read.
+     */
+    private static class WarNode {
+        Artifact artifact;
+
+        /**
+         * The model to rewrite and install, or null if the installed cargodeps POM is current.
+         */
+        Model model;
+
+        CargodepsMarker marker;
+
+        /**
+         * The keys of the WARs this one depends on, in declaration order.
+         */
+        List children = new ArrayList();
+    }
+
+    /**
+     * The preparation of every WAR of the graph being walked ({@link Future}s of
+     * {@link WarNode}s), by groupId:artifactId:version.
+     */
+    private Map nodes;
+
+    private ExecutorService executor;
+
+    /**
+     * Held around every call to the Maven components, none of which is thread-safe: the pool
+     * only runs the hashing and the file I/O of the WARs concurrently.
+     */
+    private final Object componentLock = new Object();
+
+    private File cacheFile;
+
+    /**
+     * The checksum of the project model, once its cargodeps POM is installed.
+     */
+    private String modelChecksum;
+
+    /**
+     * The installed cargodeps POMs of the project and of its WARs.
+     */
+    private List cargodepsPoms = new ArrayList();
+
     public DependencyCalculator(ArtifactFactory artifactFactory,
                                 ArtifactResolver resolver, ArtifactRepository localRepository,
                                 List remoteRepositories,
@@ -141,17 +222,67 @@ public class DependencyCalculator {
 
     }
 
+    /**
+     * @param threads the maximum number of WAR POMs resolved at the same time
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param checksumMarkers true to also process the dependencies whose content changed since
+     *        their marker was set, rather than only those without a marker
+     */
+    public void setChecksumMarkers(boolean checksumMarkers) {
+        this.checksumMarkers = checksumMarkers;
+    }
+
+    /**
+     * @param markersDirectory where to record the dependencies already processed, so that the
+     *        next builds report them as skipped; null to process all of them every time
+     */
+    public void setMarkersDirectory(File markersDirectory) {
+        this.markersDirectory = markersDirectory;
+    }
+
+    /**
+     * @param log where to report the dependencies, at debug level; without a log they are
+     *        printed to the standard output
+     */
+    public void setLog(Log log) {
+        this.log = log;
+    }
+
+    /**
+     * @param cacheFile where to keep the calculated JAR files between builds, or null to
+     *        calculate them every time
+     */
+    public void setCacheFile(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
     public DependencyStatusSets calculate(MavenProject project, File markersDirectory)
             throws MojoExecutionException
     {
         this.markersDirectory = markersDirectory;
         DependencyStatusSets results = getDependencySets(project, false);
-        String output = results.getOutput(true, true);
         try
         {
-            System.out.println(output);
+            // Only format the report when someone reads it, and stream it rather than build it
+            if (log == null)
+            {
+                Writer out = new OutputStreamWriter(System.out);
+                results.writeOutput(out, true, true);
+                out.flush();
+            }
+            else if (log.isDebugEnabled())
+            {
+                Writer out = new LogWriter(log);
+                results.writeOutput(out, true, true);
+                out.close();
+            }
         }
-        catch(Exception e)
+        catch(IOException e)
         {
             throw new MojoExecutionException(e.getMessage(), e);
         }
@@ -161,22 +292,23 @@ public class DependencyCalculator {
     protected DependencyStatusSets getDependencySets(MavenProject project, boolean stopOnFailure)
         throws MojoExecutionException
     {
-        FilterArtifacts filter = new FilterArtifacts();
-        filter.addFilter(new TransitivityFilter(project.getDependencyArtifacts(), false));
-        filter.addFilter(new ScopeFilter("", ""));
-        filter.addFilter(new TypeFilter("", ""));
-        filter.addFilter(new ClassifierFilter("", ""));
-        filter.addFilter(new GroupIdFilter("", ""));
-        filter.addFilter(new ArtifactIdFilter("", ""));
-        Set artifacts = project.getArtifacts();
+        // All criteria are evaluated per artifact in a single pass; as none of them is set
+        // at the moment, the project artifacts are passed on without being copied
+        CompositeArtifactsFilter filter = new CompositeArtifactsFilter();
+        filter.setTransitivity(project.getDependencyArtifacts(), false);
         try
         {
-            artifacts = filter.filter(artifacts);
+            filter.setScope("", "");
         }
         catch(ArtifactFilterException e)
         {
             throw new MojoExecutionException(e.getMessage(), e);
         }
+        filter.setTypes("", "");
+        filter.setClassifiers("", "");
+        filter.setGroupIds("", "");
+        filter.setArtifactIds("", "");
+        Set artifacts = filter.filter(project.getArtifacts());
         DependencyStatusSets status = null;
         status = filterMarkedDependencies(artifacts);
         return status;
@@ -185,29 +317,118 @@ public class DependencyCalculator {
     protected DependencyStatusSets filterMarkedDependencies(Set artifacts)
         throws MojoExecutionException
     {
-        FilterArtifacts filter = new FilterArtifacts();
-        filter.clearFilters();
-        filter.addFilter(getMarkedArtifactFilter());
-        Set unMarkedArtifacts;
+        if (markersDirectory == null)
+        {
+            markerHandler = null;
+            return new DependencyStatusSets(artifacts, null, new HashSet());
+        }
+
+        // The chunks of large files are hashed on a pool of their own, shared by the threads
+        // checking the markers, which must not be in it as they wait for the chunks
+        ExecutorService hashExecutor = createHashExecutor();
+
+        // Check all the markers at once and split the artifacts in one pass
+        MarkerFilterResult marked;
         try
         {
-            unMarkedArtifacts = filter.filter(artifacts);
+            markerHandler = new IndexFileMarkerHandler(
+                    new File(markersDirectory, IndexFileMarkerHandler.INDEX_FILE_NAME), true);
+            marked = getMarkedArtifactFilter(markerHandler, hashExecutor)
+                    .filterMarkers(artifacts, threads);
         }
         catch(ArtifactFilterException e)
         {
             throw new MojoExecutionException(e.getMessage(), e);
         }
-        Set skippedArtifacts = new HashSet();
-        skippedArtifacts.addAll(artifacts);
-        skippedArtifacts.removeAll(unMarkedArtifacts);
-        return new DependencyStatusSets(unMarkedArtifacts, null, skippedArtifacts);
+        finally
+        {
+            if (hashExecutor != null)
+            {
+                hashExecutor.shutdown();
+            }
+        }
+        return new DependencyStatusSets(marked.getIncluded(), null, marked.getSkipped());
     }
 
-    protected ArtifactsFilter getMarkedArtifactFilter()
+    /**
+     * @param handler the index of the markers, read once, instead of a marker file per artifact
+     * @param hashExecutor where to hash the chunks of large files in checksum mode, or null
+     */
+    protected MarkerFileFilter getMarkedArtifactFilter(IndexFileMarkerHandler handler,
+            ExecutorService hashExecutor)
+    {
+        if (checksumMarkers)
+        {
+            handler.setChecksums(true);
+            handler.setExecutor(hashExecutor);
+            // Also process the artifacts whose content changed since their marker was set
+            return new MarkerFileFilter(false, false, true, handler);
+        }
+        return new ResolveFileFilter(handler);
+    }
+
+    /**
+     * @return a pool for the chunks of large files in checksum mode, or null to hash them on the
+     *         calling thread
+     */
+    private ExecutorService createHashExecutor()
     {
-        return new ResolveFileFilter(new SourcesFileMarkerHandler(markersDirectory));
+        return checksumMarkers && threads > 1 ? Executors.newFixedThreadPool(threads) : null;
     }
-    
+
+    /**
+     * Mark the dependencies processed by this calculation, then write all the markers in one go.
+     * In checksum mode, this also records the checksums of the files.
+     */
+    private void setMarkers(Set artifacts) throws MojoExecutionException
+    {
+        if (markerHandler == null)
+        {
+            return;
+        }
+
+        ExecutorService hashExecutor = createHashExecutor();
+        markerHandler.setExecutor(hashExecutor);
+        try
+        {
+            for (Iterator i = artifacts.iterator(); i.hasNext();)
+            {
+                markerHandler.setArtifact((Artifact) i.next());
+                markerHandler.setMarker();
+            }
+            markerHandler.flush();
+        }
+        finally
+        {
+            if (hashExecutor != null)
+            {
+                hashExecutor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Calculate the JAR files of a cargodeps project, then mark the dependencies that were not
+     * marked yet, or in checksum mode whose content changed. The marked dependencies are still
+     * part of the result: they are only reported as skipped.
+     *
+     * @return the files of all the dependencies of <code>project</code>
+     */
+    Set calculateFiles(MavenProject project) throws MojoExecutionException {
+        DependencyStatusSets result = calculate(project, markersDirectory);
+
+        Set files = new HashSet();
+        for (Iterator i = result.getResolvedDependencies(false).iterator(); i.hasNext();) {
+            files.add(((Artifact) i.next()).getFile());
+        }
+        for (Iterator i = result.getSkippedDependencies(false).iterator(); i.hasNext();) {
+            files.add(((Artifact) i.next()).getFile());
+        }
+
+        setMarkers(result.getResolvedDependencies(false));
+        return files;
+    }
+
 
     public Set execute(MavenProject mavenProject) throws ArtifactResolutionException,
             ArtifactNotFoundException, ProjectBuildingException,
@@ -215,8 +436,19 @@ public class DependencyCalculator {
             InvalidDependencyVersionException, ArtifactInstallationException, MojoExecutionException {
         ProfileManager profileManager = new DefaultProfileManager(container);
 
+        cargodepsPoms.clear();
         fixupProjectArtifact(mavenProject);
 
+        String key = null;
+        if (cacheFile != null) {
+            key = getDependenciesKey();
+            Set cached = DependencyFilesCache.load(cacheFile, key);
+            if (cached != null) {
+                // Neither the project nor the POMs of its WARs changed since the last build
+                return cached;
+            }
+        }
+
         // Calculate the new deps
         Artifact art = mavenProject.getArtifact();
         Artifact art2 = artifactFactory.createArtifactWithClassifier(art
@@ -227,17 +459,36 @@ public class DependencyCalculator {
         MavenProject mavenProject2 = mavenProjectBuilder.buildWithDependencies(
                 art2.getFile(), localRepository, profileManager);
 
-        DependencyStatusSets result = calculate(mavenProject2, markersDirectory);
+        Set filesToAdd = calculateFiles(mavenProject2);
 
-        Set filesToAdd = new HashSet();
+        if (cacheFile != null) {
+            DependencyFilesCache.store(cacheFile, key, filesToAdd);
+        }
+        return filesToAdd;
+    }
 
-        
-        for (Iterator i = result.getResolvedDependencies().iterator(); i.hasNext();) {
-            Artifact artdep = (Artifact) i.next();
-            filesToAdd.add(artdep.getFile());
+    /**
+     * @return a key of everything the dependency calculation depends on: the model of the
+     *         project and the cargodeps POMs of the project and of its WARs
+     */
+    private String getDependenciesKey() throws IOException {
+        StringBuffer key = new StringBuffer(modelChecksum);
+        List poms = new ArrayList(cargodepsPoms);
+        Collections.sort(poms);
+        for (Iterator i = poms.iterator(); i.hasNext();) {
+            File pom = (File) i.next();
+            key.append('\n').append(pom.getPath()).append('\t')
+                    .append(Digests.digest(pom, Digests.SHA1));
         }
+        return Digests.digest(key.toString(), Digests.SHA1);
+    }
 
-        return filesToAdd;
+    /**
+     * @return the cargodeps POMs installed or found current since the last
+     *         {@link #execute(MavenProject)}, in the order they were installed
+     */
+    List getCargodepsPoms() {
+        return Collections.unmodifiableList(cargodepsPoms);
     }
 
     void fixupProjectArtifact(MavenProject mavenProject) throws FileNotFoundException, IOException,
@@ -245,6 +496,7 @@ public class DependencyCalculator {
             ArtifactNotFoundException, InvalidDependencyVersionException,
             ProjectBuildingException, ArtifactInstallationException {
         MavenProject mp2 = new MavenProject(mavenProject);
+        List wars = new ArrayList();
         // For each of our dependencies..
         for (Iterator i = mp2.createArtifacts(artifactFactory, null, null)
                 .iterator(); i.hasNext();) {
@@ -254,25 +506,31 @@ public class DependencyCalculator {
                 Artifact art2 = artifactFactory.createArtifactWithClassifier(
                         art.getGroupId(), art.getArtifactId(),
                         art.getVersion(), "pom", null);
-                fixupRepositoryArtifact(art2);
+                wars.add(art2);
             }
         }
+        fixupRepositoryArtifacts(wars);
 
         // If we mess with this model, it's the 'REAL' model. So lets copy it
 
         Model pomFile = mp2.getModel();
 
-        File outFile = File.createTempFile("pom", ".xml");
-        MavenXpp3Writer pomWriter = new MavenXpp3Writer();
-
-        pomWriter.write(new FileWriter(outFile), pomFile);
-
-        MavenXpp3Reader pomReader = new MavenXpp3Reader();
-        pomFile = pomReader.read(new FileReader(outFile));
+        String pom = toString(pomFile);
 
         Artifact art = mp2.getArtifact();
-        fixModelAndSaveInRepository(art, pomFile);
-        outFile.delete();
+        CargodepsMarker marker = new CargodepsMarker(Digests.digest(pom, Digests.SHA1));
+        for (Iterator i = wars.iterator(); i.hasNext();) {
+            Artifact war = (Artifact) i.next();
+            marker.addWar(war.getGroupId(), war.getArtifactId(), war.getVersion());
+        }
+        if (!isCurrent(art, marker.getChecksum())) {
+            MavenXpp3Reader pomReader = new MavenXpp3Reader();
+            pomFile = pomReader.read(new StringReader(pom));
+
+            fixModelAndSaveInRepository(art, pomFile, marker);
+        }
+        modelChecksum = marker.getChecksum();
+        cargodepsPoms.add(getInstalledPom(art));
     }
 
     void fixupRepositoryArtifact(Artifact artifact)
@@ -280,35 +538,215 @@ public class DependencyCalculator {
             IOException, XmlPullParserException, ProjectBuildingException,
             ArtifactResolutionException, ArtifactNotFoundException,
             ArtifactInstallationException {
+        fixupRepositoryArtifacts(Collections.singletonList(artifact));
+    }
 
-        // Resolve it
-        resolver.resolve(artifact, remoteRepositories, localRepository);
-        File artifactFile = artifact.getFile();
+    /**
+     * Rewrite and install the cargodeps POMs of <code>artifacts</code> and of all the WARs they
+     * depend on. The WARs of the graph are prepared on a pool of threads, each WAR once however
+     * many times it appears, while the cargodeps POMs are installed on the calling thread:
+     * dependencies first, in declaration order, as a depth-first walk would. The Maven
+     * components are only ever called by one thread at a time, see {@link #componentLock}.
+     */
+    void fixupRepositoryArtifacts(List artifacts)
+            throws InvalidDependencyVersionException, FileNotFoundException,
+            IOException, XmlPullParserException, ProjectBuildingException,
+            ArtifactResolutionException, ArtifactNotFoundException,
+            ArtifactInstallationException {
+        if (artifacts.isEmpty()) {
+            return;
+        }
 
-        // Also, create a project for it
-        MavenProject mavenProject = mavenProjectBuilder.buildFromRepository(
-                artifact, remoteRepositories, localRepository);
-        for (Iterator i = mavenProject.createArtifacts(artifactFactory, null,
-                null).iterator(); i.hasNext();) {
-            Artifact art = (Artifact) i.next();
+        this.nodes = new HashMap();
+        this.executor = Executors.newFixedThreadPool(threads);
+        try {
+            List keys = new ArrayList();
+            for (Iterator i = artifacts.iterator(); i.hasNext();) {
+                keys.add(visit((Artifact) i.next()));
+            }
+            Set installed = new HashSet();
+            for (Iterator i = keys.iterator(); i.hasNext();) {
+                install((String) i.next(), installed);
+            }
+        } finally {
+            this.executor.shutdownNow();
+        }
+    }
 
-            if (art.getType().equals("war")) {
-                // Sigh...
-                Artifact art2 = artifactFactory.createArtifactWithClassifier(
-                        art.getGroupId(), art.getArtifactId(),
-                        art.getVersion(), "pom", null);
-                fixupRepositoryArtifact(art2);
+    /**
+     * Schedule the preparation of a WAR of the graph, unless it already is.
+     *
+     * @return the key of the WAR in {@link #nodes}
+     */
+    private String visit(final Artifact artifact) {
+        String key = artifact.getGroupId() + ":" + artifact.getArtifactId() + ":"
+                + artifact.getVersion();
+        synchronized (this.nodes) {
+            if (!this.nodes.containsKey(key)) {
+                FutureTask task = new FutureTask(new Callable() {
+                    public Object call() throws Exception {
+                        return prepare(artifact);
+                    }
+                });
+                this.nodes.put(key, task);
+                this.executor.execute(task);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Resolve the POM of a WAR, schedule the WARs it depends on and rewrite it if its
+     * installed cargodeps POM isn't current. Runs on the pool and never waits for other WARs,
+     * only for the Maven components.
+     */
+    private WarNode prepare(Artifact artifact)
+            throws InvalidDependencyVersionException, FileNotFoundException,
+            IOException, XmlPullParserException, ProjectBuildingException,
+            ArtifactResolutionException, ArtifactNotFoundException {
+        WarNode node = new WarNode();
+        node.artifact = artifact;
+
+        File artifactFile;
+        File installedPom;
+        synchronized (componentLock) {
+            // Resolve it, unless a release is already in the local repository: snapshots
+            // follow the update policy of their repositories
+            artifactFile = new File(localRepository.getBasedir(), localRepository.pathOf(artifact));
+            if (artifact.isSnapshot() || !artifactFile.isFile()) {
+                resolver.resolve(artifact, remoteRepositories, localRepository);
+                artifactFile = artifact.getFile();
+            } else {
+                artifact.setFile(artifactFile);
             }
+            installedPom = getInstalledPom(artifact);
         }
 
-        MavenXpp3Reader pomReader = new MavenXpp3Reader();
-        Model pomFile = pomReader.read(new FileReader(artifactFile));
+        String checksum = Digests.digest(artifactFile, Digests.SHA1);
+        CargodepsMarker marker = CargodepsMarker.load(installedPom);
+        if (marker != null && marker.getChecksum().equals(checksum)) {
+            // The installed cargodeps POM is current, only the WARs it depends on may not be
+            synchronized (componentLock) {
+                for (Iterator i = marker.getWars().iterator(); i.hasNext();) {
+                    String[] war = (String[]) i.next();
+                    node.children.add(visit(artifactFactory.createArtifactWithClassifier(
+                            war[0], war[1], war[2], "pom", null)));
+                }
+            }
+            return node;
+        }
+        node.marker = new CargodepsMarker(checksum);
+
+        synchronized (componentLock) {
+            // Also, create a project for it
+            MavenProject mavenProject = mavenProjectBuilder.buildFromRepository(
+                    artifact, remoteRepositories, localRepository);
+            for (Iterator i = mavenProject.createArtifacts(artifactFactory, null,
+                    null).iterator(); i.hasNext();) {
+                Artifact art = (Artifact) i.next();
+
+                if (art.getType().equals("war")) {
+                    // Sigh...
+                    Artifact art2 = artifactFactory.createArtifactWithClassifier(
+                            art.getGroupId(), art.getArtifactId(),
+                            art.getVersion(), "pom", null);
+                    node.children.add(visit(art2));
+                    node.marker.addWar(art2.getGroupId(), art2.getArtifactId(),
+                            art2.getVersion());
+                }
+            }
+        }
+
+        Reader reader = new FileReader(artifactFile);
+        try {
+            node.model = new MavenXpp3Reader().read(reader);
+        } finally {
+            reader.close();
+        }
+        return node;
+    }
 
-        fixModelAndSaveInRepository(artifact, pomFile);
+    /**
+     * Install the cargodeps POMs of a WAR and of its dependencies, dependencies first.
+     *
+     * @param installed the keys of the WARs already installed (or being installed, which
+     *        also stops cycles)
+     */
+    private void install(String key, Set installed)
+            throws InvalidDependencyVersionException, FileNotFoundException,
+            IOException, XmlPullParserException, ProjectBuildingException,
+            ArtifactResolutionException, ArtifactNotFoundException,
+            ArtifactInstallationException {
+        if (!installed.add(key)) {
+            return;
+        }
 
+        Future future;
+        synchronized (this.nodes) {
+            future = (Future) this.nodes.get(key);
+        }
+        WarNode node = getNode(future);
+        for (Iterator i = node.children.iterator(); i.hasNext();) {
+            install((String) i.next(), installed);
+        }
+        synchronized (componentLock) {
+            if (node.model != null) {
+                fixModelAndSaveInRepository(node.artifact, node.model, node.marker);
+            }
+            cargodepsPoms.add(getInstalledPom(node.artifact));
+        }
+    }
+
+    private static WarNode getNode(Future future)
+            throws InvalidDependencyVersionException, IOException, XmlPullParserException,
+            ProjectBuildingException, ArtifactResolutionException, ArtifactNotFoundException {
+        try {
+            return (WarNode) future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while resolving WAR dependencies");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InvalidDependencyVersionException) {
+                throw (InvalidDependencyVersionException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof XmlPullParserException) {
+                throw (XmlPullParserException) cause;
+            } else if (cause instanceof ProjectBuildingException) {
+                throw (ProjectBuildingException) cause;
+            } else if (cause instanceof ArtifactResolutionException) {
+                throw (ArtifactResolutionException) cause;
+            } else if (cause instanceof ArtifactNotFoundException) {
+                throw (ArtifactNotFoundException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (IOException) new IOException("Problem resolving WAR dependencies")
+                    .initCause(cause);
+        }
     }
 
-    void fixModelAndSaveInRepository(Artifact artifact, Model pomFile)
+    /**
+     * @return true if the cargodeps POM of <code>artifact</code> was rewritten from a POM whose
+     *         checksum is <code>checksum</code>
+     */
+    private boolean isCurrent(Artifact artifact, String checksum) {
+        CargodepsMarker marker = CargodepsMarker.load(getInstalledPom(artifact));
+        return marker != null && marker.getChecksum().equals(checksum);
+    }
+
+    /**
+     * @return where the cargodeps POM of <code>artifact</code> is installed
+     */
+    private File getInstalledPom(Artifact artifact) {
+        return new File(localRepository.getBasedir(),
+                localRepository.pathOf(getCargodepsArtifact(artifact)));
+    }
+
+    void fixModelAndSaveInRepository(Artifact artifact, Model pomFile, CargodepsMarker marker)
             throws IOException, ArtifactInstallationException {
         for (Iterator i = pomFile.getDependencies().iterator(); i.hasNext();) {
             Dependency art = (Dependency) i.next();
@@ -325,18 +763,48 @@ public class DependencyCalculator {
         if (version == null)
             version = pomFile.getParent().getVersion();
 
-        File outFile = File.createTempFile("pom", ".xml");
-        MavenXpp3Writer pomWriter = new MavenXpp3Writer();
+        byte[] pom = toString(pomFile).getBytes("UTF-8");
+        File installedPom = getInstalledPom(artifact);
+        // Only touch the repository when the POM changed
+        if (!installedPom.isFile() || !Arrays.equals(pom, readBytes(installedPom))) {
+            File outFile = File.createTempFile("pom", ".xml");
+            try {
+                OutputStream out = new FileOutputStream(outFile);
+                try {
+                    out.write(pom);
+                } finally {
+                    out.close();
+                }
+
+                Artifact art2 = getCargodepsArtifact(artifact);
+
+                installer.install(outFile, art2, localRepository);
+            } finally {
+                outFile.delete();
+            }
+        }
 
-        pomWriter.write(new FileWriter(outFile), pomFile);
+        // Next builds will reuse the installed POM while the source POM is unchanged
+        marker.store(installedPom);
+    }
 
-        Artifact art2 = artifactFactory.createArtifactWithClassifier(artifact
-                .getGroupId() + ".cargodeps", artifact.getArtifactId(), artifact.getVersion(),
-                "pom", null);
+    private static byte[] readBytes(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return IOUtil.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
 
-        installer.install(outFile, art2, localRepository);
-		outFile.delete();
-	}
+    /**
+     * @return the XML of <code>model</code>
+     */
+    private static String toString(Model model) throws IOException {
+        StringWriter writer = new StringWriter();
+        new MavenXpp3Writer().write(writer, model);
+        return writer.toString();
+    }
 
     public Artifact getCargodepsArtifact(Artifact art)
     {
@@ -0,0 +1,105 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.codehaus.cargo.maven2.util.RecordFiles;
+
+/**
+ * The JAR files calculated by the {@link DependencyCalculator} for a project, kept in the build
+ * directory with a key of everything they were calculated from. While the key is the same, the
+ * next builds reuse the files instead of resolving the dependency graph again.
+ * <p/>
+ * The cache is a tab separated text file, one record per line.
+ *
+ * @version $Id$
+ */
+final class DependencyFilesCache
+{
+    private static final String HEADER = "# Cargo uberwar dependencies, version 1";
+
+    private DependencyFilesCache()
+    {
+        // Utility class
+    }
+
+    /**
+     * @param file the cache file
+     * @param key the key of the project model and of its cargodeps POMs
+     * @return the cached files, or null if the cache is missing, was calculated for another
+     *         key, cannot be read or names files that no longer exist
+     */
+    static Set load(File file, final String key)
+    {
+        return (Set) RecordFiles.load(file, HEADER, new RecordFiles.Parser()
+        {
+            public Object parse(BufferedReader reader) throws IOException
+            {
+                if (!("key\t" + key).equals(reader.readLine()))
+                {
+                    return null;
+                }
+                Set files = new LinkedHashSet();
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    String[] fields = line.split("\t", 2);
+                    File dependency = new File(fields[1]);
+                    if (!"file".equals(fields[0]) || !dependency.isFile())
+                    {
+                        return null;
+                    }
+                    files.add(dependency);
+                }
+                return files;
+            }
+        });
+    }
+
+    /**
+     * Store the files calculated for a key.
+     *
+     * @param file the cache file
+     * @param key the key of the project model and of its cargodeps POMs
+     * @param files the calculated {@link File}s
+     * @throws IOException if the cache cannot be written
+     */
+    static void store(File file, final String key, final Set files) throws IOException
+    {
+        RecordFiles.store(file, HEADER, new RecordFiles.Printer()
+        {
+            public void print(Writer writer) throws IOException
+            {
+                writer.write("key\t" + key + "\n");
+                for (Iterator i = files.iterator(); i.hasNext();)
+                {
+                    writer.write("file\t" + ((File) i.next()).getPath() + "\n");
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2;
+
+import java.io.Writer;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Writer that sends each line written to it to the debug level of a Maven log, so that reports
+ * can be streamed to the log instead of being built in memory.
+ *
+ * @version $Id$
+ */
+class LogWriter extends Writer
+{
+    private final Log log;
+
+    private final StringBuffer line = new StringBuffer();
+
+    LogWriter(Log log)
+    {
+        this.log = log;
+    }
+
+    public void write(char[] buffer, int offset, int length)
+    {
+        for (int i = offset; i < offset + length; i++)
+        {
+            if (buffer[i] == '\n')
+            {
+                this.log.debug(this.line.toString());
+                this.line.setLength(0);
+            }
+            else
+            {
+                this.line.append(buffer[i]);
+            }
+        }
+    }
+
+    public void flush()
+    {
+        // Lines are logged as soon as they are complete
+    }
+
+    /**
+     * Log the last line, if it was not terminated.
+     */
+    public void close()
+    {
+        if (this.line.length() > 0)
+        {
+            this.log.debug(this.line.toString());
+            this.line.setLength(0);
+        }
+    }
+}
@@ -27,8 +27,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -57,12 +62,18 @@ import org.codehaus.plexus.configuration.PlexusConfiguration;
 import org.codehaus.plexus.context.Context;
 import org.codehaus.plexus.context.ContextException;
 import org.codehaus.plexus.personality.plexus.lifecycle.phase.Contextualizable;
+import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.xml.*;
 import org.codehaus.plexus.util.xml.pull.*;
 import org.codehaus.cargo.maven2.io.xpp3.UberWarXpp3Reader;
 import org.codehaus.cargo.maven2.merge.MergeProcessorFactory;
 import org.codehaus.cargo.maven2.merge.MergeWebXml;
 import org.codehaus.cargo.maven2.merge.MergeXslt;
+import org.codehaus.cargo.maven2.merge.WebXmlStreamAdapter;
+import org.codehaus.cargo.maven2.merge.XsltMergeProcessor;
+import org.codehaus.cargo.maven2.uberwar.ConflictAnalyzer;
+import org.codehaus.cargo.maven2.uberwar.StreamingWarAssembler;
+import org.codehaus.cargo.maven2.util.Digests;
 import org.jdom.JDOMException;
 import org.xml.sax.SAXException;
 
@@ -74,6 +85,11 @@ import org.xml.sax.SAXException;
  * @requiresDependencyResolution runtime
  */
 public class UberWarMojo extends AbstractUberWarMojo implements Contextualizable {
+    /**
+     * The deployment descriptor of a web application.
+     */
+    private static final String WEB_XML = "WEB-INF/web.xml";
+
     /**
      * The directory for the generated WAR.
      *
@@ -105,6 +121,45 @@ public class UberWarMojo extends AbstractUberWarMojo implements Contextualizable
      */
     private boolean resolveDependencies = false;
 
+    /**
+     * Assemble the uberwar in a single streaming pass: each source archive is read once and
+     * its entries are written straight to the generated WAR, instead of expanding every WAR
+     * and JAR before storing the result. Only the files named in <code>&lt;merge&gt;</code>
+     * nodes (and <code>WEB-INF/web.xml</code>) are buffered for merging.
+     *
+     * @parameter expression="${cargo.uberwar.streaming}"
+     */
+    private boolean streaming = false;
+
+    /**
+     * The number of threads used to read the source WARs and JARs, and to run the merges of
+     * different files, when assembling the uberwar in <code>streaming</code> mode, and to
+     * resolve the POMs of nested WARs when <code>resolveDependencies</code> is set. Defaults to
+     * the number of available processors.
+     *
+     * @parameter expression="${cargo.uberwar.threads}"
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * When <code>resolveDependencies</code> is set, also process the dependencies whose content
+     * changed since they were last processed, by comparing the checksum of each file with the
+     * one recorded in its marker. Files whose size and date did not change are not hashed again.
+     *
+     * @parameter expression="${cargo.uberwar.checksumMarkers}"
+     */
+    private boolean checksumMarkers = false;
+
+    /**
+     * Only rewrite what changed since the previous build when assembling the uberwar in
+     * <code>streaming</code> mode. A manifest of the source archives and of the provenance of
+     * every entry is kept next to the generated WAR; when neither the sources nor the merge
+     * configuration changed the WAR is left untouched.
+     *
+     * @parameter expression="${cargo.uberwar.incremental}"
+     */
+    private boolean incremental = false;
+
     /**
      * The id to use for the merge descriptor
      *
@@ -180,6 +235,7 @@ public class UberWarMojo extends AbstractUberWarMojo implements Contextualizable
     public void execute() throws MojoExecutionException {
         TZArchiveImplementation.getInstance().setEnabled(true);
         Reader r = null;
+        String descriptorContent;
 
         if (this.descriptor != null) {
             try {
@@ -198,45 +254,33 @@ public class UberWarMojo extends AbstractUberWarMojo implements Contextualizable
             throw new MojoExecutionException("You must specify descriptor or descriptorId");
         }
 
+        try {
+            descriptorContent = IOUtil.toString(r);
+        }
+        catch (IOException e) {
+            throw new MojoExecutionException("Could not read the merge descriptor", e);
+        }
+        finally {
+            IOUtil.close(r);
+        }
+
         try {
             UberWarXpp3Reader reader = new UberWarXpp3Reader();
-            MergeRoot root = reader.read(r);
-
-            Xpp3Dom dom;
-
-            // Add the war files
-            WarArchiveMerger wam = new WarArchiveMerger();
-            List wars = root.getWars();
-            if (wars.size() == 0)
-                addAllWars(wam);
-            else {
-                for (Iterator i = wars.iterator(); i.hasNext();) {
-                    String id = (String) i.next();
-                    addWar(wam, id);
-                }
-            }
+            MergeRoot root = reader.read(new StringReader(descriptorContent));
 
-            if (resolveDependencies) {
-                wam.setMergeJarFiles(false);
-                addAllTransitiveJars(wam);
-            } else {
-                // Just look at our dependent JAR files instead
-                addAllDependentJars(wam);
-            }
+            File warFile = new File(this.outputDirectory, this.warName + ".war");
 
-            // List of <merge> nodes to perform, in order
-            for (Iterator i = root.getMerges().iterator(); i.hasNext();) {
-                Merge merge = (Merge) i.next();
-                doMerge(wam, merge);
+            if (streaming) {
+                assembleStreaming(root, warFile, descriptorContent);
+            } else {
+                if (incremental) {
+                    getLog().warn("Incremental builds need the streaming mode, building the "
+                        + "uberwar from scratch");
+                }
+                assemble(root, warFile);
             }
 
-            //WebXml merge = root.getWebXml();
-            //doWebXmlMerge(wam, merge);
-
-            File warFile = new File(this.outputDirectory, this.warName + ".war");
-
-            WarArchive output = (WarArchive) wam.performMerge();
-            output.store(warFile);
+            checkConflicts(root.getConflicts(), warFile);
 
             getProject().getArtifact().setFile(warFile);
 
@@ -257,11 +301,184 @@ public class UberWarMojo extends AbstractUberWarMojo implements Contextualizable
 
     }
 
+    /**
+     * Build the uberwar by expanding every archive in a {@link WarArchiveMerger}.
+     */
+    private void assemble(MergeRoot root, File warFile)
+            throws MojoExecutionException, IOException, JDOMException, MergeException {
+        // Add the war files
+        WarArchiveMerger wam = new WarArchiveMerger();
+        List wars = root.getWars();
+        if (wars.size() == 0)
+            addAllWars(wam);
+        else {
+            for (Iterator i = wars.iterator(); i.hasNext();) {
+                String id = (String) i.next();
+                addWar(wam, id);
+            }
+        }
+
+        if (resolveDependencies) {
+            wam.setMergeJarFiles(false);
+            addAllTransitiveJars(wam);
+        } else {
+            // Just look at our dependent JAR files instead
+            addAllDependentJars(wam);
+        }
+
+        // List of <merge> nodes to perform, in order
+        for (Iterator i = root.getMerges().iterator(); i.hasNext();) {
+            Merge merge = (Merge) i.next();
+            if (isWebXmlMerge(merge) && MergeWebXml.isStreaming(merge)) {
+                getLog().warn("The streaming web.xml merge engine needs the streaming mode "
+                    + "(cargo.uberwar.streaming), using the default engine");
+            }
+            doMerge(wam, merge);
+        }
+
+        //WebXml merge = root.getWebXml();
+        //doWebXmlMerge(wam, merge);
+
+        WarArchive output = (WarArchive) wam.performMerge();
+        output.store(warFile);
+    }
+
+    /**
+     * Build the uberwar in a single streaming pass with a {@link StreamingWarAssembler}. The
+     * {@link WarArchiveMerger} is only used to hold the web.xml merge configuration.
+     */
+    private void assembleStreaming(MergeRoot root, File warFile, String descriptorContent)
+            throws MojoExecutionException, IOException, MergeException {
+        WarArchiveMerger wam = new WarArchiveMerger();
+        StreamingWarAssembler assembler = new StreamingWarAssembler(getLog());
+        assembler.setThreads(threads);
+        if (incremental) {
+            assembler.setManifest(new File(this.outputDirectory, this.warName + ".uberwar-manifest"),
+                getConfigurationKey(descriptorContent));
+        }
+
+        List wars = root.getWars();
+        if (wars.size() == 0) {
+            for (Iterator i = findAllWars().iterator(); i.hasNext();) {
+                assembler.addWar((File) i.next());
+            }
+        } else {
+            for (Iterator i = wars.iterator(); i.hasNext();) {
+                assembler.addWar(findWar((String) i.next()));
+            }
+        }
+
+        Collection jars;
+        if (resolveDependencies) {
+            assembler.setMergeJarFiles(false);
+            jars = findTransitiveJars();
+        } else {
+            jars = findDependentJars();
+        }
+        for (Iterator i = jars.iterator(); i.hasNext();) {
+            assembler.addJar((File) i.next());
+        }
+
+        Merge streamingMerge = getStreamingWebXmlMerge(root.getMerges());
+        MergeProcessor webXmlMerger;
+        if (streamingMerge != null) {
+            webXmlMerger = new MergeWebXml(getConfigDirectory()).createStreaming(streamingMerge);
+        } else {
+            webXmlMerger = new WebXmlStreamAdapter(wam.getWebXmlMerger());
+        }
+        assembler.addMergeProcessor(WEB_XML, webXmlMerger);
+
+        for (Iterator i = root.getMerges().iterator(); i.hasNext();) {
+            Merge merge = (Merge) i.next();
+            if (isWebXmlMerge(merge) && MergeWebXml.isStreaming(merge)) {
+                continue;
+            }
+            MergeProcessor merger = createMergeProcessor(wam, merge);
+            if (merger != null) {
+                assembler.addMergeProcessor(getMergeTarget(merge), merger);
+            }
+        }
+
+        assembler.assemble(warFile);
+    }
+
+    /**
+     * Look for classes present with different contents in several JARs of the uberwar, as
+     * configured by the <code>&lt;conflicts&gt;</code> node of the descriptor.
+     */
+    private void checkConflicts(Conflicts conflicts, File warFile)
+            throws MojoExecutionException, IOException {
+        if (conflicts == null || ConflictAnalyzer.IGNORE.equalsIgnoreCase(conflicts.getPolicy())) {
+            return;
+        }
+        // Without a policy, conflicts are reported as warnings
+        if (conflicts.getPolicy() != null
+            && !ConflictAnalyzer.WARN.equalsIgnoreCase(conflicts.getPolicy())
+            && !ConflictAnalyzer.FAIL.equalsIgnoreCase(conflicts.getPolicy())) {
+            throw new MojoExecutionException("Unknown conflicts policy [" + conflicts.getPolicy()
+                + "]: use " + ConflictAnalyzer.WARN + ", " + ConflictAnalyzer.FAIL + " or "
+                + ConflictAnalyzer.IGNORE);
+        }
+
+        ConflictAnalyzer analyzer = new ConflictAnalyzer(getLog());
+        analyzer.setThreads(threads);
+        analyzer.setResources(conflicts.isResources());
+        List found = analyzer.analyze(warFile);
+        for (Iterator i = found.iterator(); i.hasNext();) {
+            ConflictAnalyzer.Conflict conflict = (ConflictAnalyzer.Conflict) i.next();
+            getLog().warn("Conflicting copies of " + conflict.getPath() + " in "
+                + conflict.getLocations());
+        }
+
+        if (!found.isEmpty() && ConflictAnalyzer.FAIL.equalsIgnoreCase(conflicts.getPolicy())) {
+            throw new MojoExecutionException(found.size() + " classes or resources of ["
+                + warFile + "] have conflicting copies");
+        }
+    }
+
+    /**
+     * @return a key of everything besides the source archives that influences the uberwar: the
+     *         merge descriptor, the files next to it (such as XSLT stylesheets) and the settings
+     */
+    private String getConfigurationKey(String descriptorContent) {
+        StringBuffer key = new StringBuffer(descriptorContent);
+        key.append('\n').append(resolveDependencies);
+        if (this.descriptor != null) {
+            File[] files = getConfigDirectory().listFiles();
+            if (files != null) {
+                Arrays.sort(files);
+                for (int i = 0; i < files.length; i++) {
+                    key.append('\n').append(files[i].getName()).append('\t')
+                        .append(files[i].length()).append('\t').append(files[i].lastModified());
+                }
+            }
+        }
+        return Digests.digest(key.toString(), Digests.SHA1);
+    }
 
     private void doMerge(WarArchiveMerger wam, Merge merge) throws MojoExecutionException {
+        MergeProcessor merger = createMergeProcessor(wam, merge);
+
+        if (merger != null) {
+            if (merge.getDocument() != null) {
+                wam.addMergeProcessor(merge.getDocument(), merger);
+            } else if (merge.getFile() != null) {
+                wam.addMergeProcessor(merge.getFile(), merger);
+            }
+
+
+            //merger.performMerge();
+        }
+    }
+
+    /**
+     * @return the merge processor described by a <code>&lt;merge&gt;</code> node, or null if
+     *         the node only configures the web.xml merger of <code>wam</code>
+     */
+    private MergeProcessor createMergeProcessor(WarArchiveMerger wam, Merge merge)
+            throws MojoExecutionException {
         try {
             String type = merge.getType();
-            String file = merge.getFile();
             String document = merge.getDocument();
             String clazz = merge.getClassname();
 
@@ -279,23 +496,59 @@ public class UberWarMojo extends AbstractUberWarMojo implements Contextualizable
                 merger = (MergeProcessor) Class.forName(clazz).newInstance();
             }
 
-            if (merger != null) {
-                if (document != null) {
-                    merger = new DocumentStreamAdapter(merger);
-                    wam.addMergeProcessor(document, merger);
-                } else if (file != null) {
-                    wam.addMergeProcessor(file, merger);
-                }
-
-
-                //merger.performMerge();
+            // In streaming mode the XSLT processor reads the streams itself, without a DOM
+            if (merger != null && document != null
+                    && !(streaming && merger instanceof XsltMergeProcessor)) {
+                merger = new DocumentStreamAdapter(merger);
             }
+            return merger;
         }
         catch (Exception e) {
             throw new MojoExecutionException("Problem in file merge", e);
         }
     }
 
+    /**
+     * @return the web.xml merge that selects the streaming engine, or null if there is none
+     * @throws MojoExecutionException if it is not the only web.xml merge: the streaming engine
+     *         would silently replace the others
+     */
+    private static Merge getStreamingWebXmlMerge(List merges) throws MojoExecutionException {
+        Merge streamingMerge = null;
+        int webXmlMerges = 0;
+        for (Iterator i = merges.iterator(); i.hasNext();) {
+            Merge merge = (Merge) i.next();
+            if (isWebXmlMerge(merge)) {
+                webXmlMerges++;
+                if (MergeWebXml.isStreaming(merge)) {
+                    streamingMerge = merge;
+                }
+            }
+        }
+        if (streamingMerge != null && webXmlMerges > 1) {
+            throw new MojoExecutionException("The streaming web.xml merge engine must be "
+                + "configured by the only <merge> of type web.xml, but there are "
+                + webXmlMerges + ": put all the <tag> strategies in a single one");
+        }
+        return streamingMerge;
+    }
+
+    private static boolean isWebXmlMerge(Merge merge) {
+        return merge.getType() != null && merge.getType().equalsIgnoreCase("web.xml");
+    }
+
+    /**
+     * @return the path of the file a <code>&lt;merge&gt;</code> node applies to
+     */
+    private String getMergeTarget(Merge merge) throws MojoExecutionException {
+        if (merge.getDocument() != null) {
+            return merge.getDocument();
+        } else if (merge.getFile() != null) {
+            return merge.getFile();
+        }
+        throw new MojoExecutionException("A merge must specify the document or file to merge");
+    }
+
     /**
      * Add all JAR files into the WAR file, calculated transitively and resolved in
      * the normal 'maven' way (I.E if 2 war files contain different versions, resolve to using
@@ -305,13 +558,31 @@ public class UberWarMojo extends AbstractUberWarMojo implements Contextualizable
      * @throws MojoExecutionException
      */
     protected void addAllTransitiveJars(WarArchiveMerger wam) throws MojoExecutionException {
+        try {
+            for (Iterator i = findTransitiveJars().iterator(); i.hasNext();) {
+                wam.addMergeItem(i.next());
+            }
+        }
+        catch (MergeException ex) {
+            throw new MojoExecutionException("Problem merging dependent JAR files", ex);
+        }
+    }
+
+    /**
+     * @return the JAR files calculated transitively from the WAR dependencies
+     * @throws MojoExecutionException
+     */
+    protected Set findTransitiveJars() throws MojoExecutionException {
         DependencyCalculator dc = new DependencyCalculator(artifactFactory, resolver, localRepository, remoteRepositories,
                 mavenProjectBuilder, installer, artifactMetadataSource, container);
+        dc.setThreads(threads);
+        dc.setChecksumMarkers(checksumMarkers);
+        dc.setLog(getLog());
+        dc.setCacheFile(new File(this.outputDirectory, this.warName + ".uberwar-dependencies"));
+        dc.setMarkersDirectory(new File(this.outputDirectory, this.warName + ".uberwar-markers"));
 
         try {
-            for (Iterator i = dc.execute(mavenProject).iterator(); i.hasNext();) {
-                wam.addMergeItem(i.next());
-            }
+            return dc.execute(mavenProject);
         }
         catch (Exception ex) {
             throw new MojoExecutionException("Problem merging dependent JAR files", ex);
@@ -326,29 +597,53 @@ public class UberWarMojo extends AbstractUberWarMojo implements Contextualizable
      * @throws MojoExecutionException
      */
     protected void addAllDependentJars(WarArchiveMerger wam) throws MojoExecutionException {
+        for (Iterator iter = findDependentJars().iterator(); iter.hasNext();) {
+            try {
+                wam.addMergeItem(iter.next());
+            }
+            catch (MergeException e) {
+                throw new MojoExecutionException("Problem merging WAR", e);
+            }
+        }
+    }
+
+    /**
+     * @return the runtime JAR dependencies of the project, in dependency order
+     */
+    protected List findDependentJars() {
+        List jars = new ArrayList();
         for (Iterator iter = getProject().getArtifacts().iterator(); iter.hasNext();) {
             Artifact artifact = (Artifact) iter.next();
-            System.out.println("See " + artifact);
+            getLog().debug("See " + artifact);
             ScopeArtifactFilter filter = new ScopeArtifactFilter(Artifact.SCOPE_RUNTIME);
             if (!artifact.isOptional() && filter.include(artifact)) {
                 String type = artifact.getType();
 
                 if ("jar".equals(type)) {
-                    System.out.println("use " + artifact);
-                    try {
-                        wam.addMergeItem(artifact.getFile());
-                    }
-                    catch (MergeException e) {
-                        throw new MojoExecutionException("Problem merging WAR", e);
-                    }
-
+                    getLog().debug("use " + artifact);
+                    jars.add(artifact.getFile());
                 }
             }
         }
+        return jars;
     }
 
     protected void addWar(WarArchiveMerger wam, String artifactIdent)
             throws MojoExecutionException, IOException {
+        try {
+            wam.addMergeItem(new DefaultWarArchive(findWar(artifactIdent).getPath()));
+        }
+        catch (MergeException e) {
+            throw new MojoExecutionException("Problem merging WAR", e);
+        }
+    }
+
+    /**
+     * @param artifactIdent the <code>groupId:artifactId</code> of a WAR dependency
+     * @return the file of the matching WAR dependency
+     * @throws MojoExecutionException if the project has no such WAR dependency
+     */
+    protected File findWar(String artifactIdent) throws MojoExecutionException {
         for (Iterator iter = getProject().getArtifacts().iterator(); iter.hasNext();) {
             Artifact artifact = (Artifact) iter.next();
 
@@ -358,13 +653,7 @@ public class UberWarMojo extends AbstractUberWarMojo implements Contextualizable
                 if ("war".equals(type)) {
                     String name = artifact.getGroupId() + ":" + artifact.getArtifactId();
                     if (name.equals(artifactIdent)) {
-                        try {
-                            wam.addMergeItem(new DefaultWarArchive(artifact.getFile().getPath()));
-                        }
-                        catch (MergeException e) {
-                            throw new MojoExecutionException("Problem merging WAR", e);
-                        }
-                        return;
+                        return artifact.getFile();
                     }
                 }
             }
@@ -376,6 +665,22 @@ public class UberWarMojo extends AbstractUberWarMojo implements Contextualizable
     }
 
     protected void addAllWars(WarArchiveMerger wam) throws MojoExecutionException, IOException {
+        for (Iterator iter = findAllWars().iterator(); iter.hasNext();) {
+            File war = (File) iter.next();
+            try {
+                wam.addMergeItem(new DefaultWarArchive(war.getPath()));
+            }
+            catch (MergeException e) {
+                throw new MojoExecutionException("Problem merging WAR", e);
+            }
+        }
+    }
+
+    /**
+     * @return the runtime WAR dependencies of the project, in dependency order
+     */
+    protected List findAllWars() {
+        List warFiles = new ArrayList();
         for (Iterator iter = getProject().getArtifacts().iterator(); iter.hasNext();) {
             Artifact artifact = (Artifact) iter.next();
 
@@ -384,15 +689,11 @@ public class UberWarMojo extends AbstractUberWarMojo implements Contextualizable
             if (!artifact.isOptional() && filter.include(artifact)) {
                 String type = artifact.getType();
                 if ("war".equals(type)) {
-                    try {
-                        wam.addMergeItem(new DefaultWarArchive(artifact.getFile().getPath()));
-                    }
-                    catch (MergeException e) {
-                        throw new MojoExecutionException("Problem merging WAR", e);
-                    }
+                    warFiles.add(artifact.getFile());
                 }
             }
         }
+        return warFiles;
     }
 
     public void contextualize(Context context) throws ContextException {
@@ -23,7 +23,9 @@ import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.maven.plugin.MojoExecutionException;
@@ -33,12 +35,15 @@ import org.codehaus.cargo.container.RemoteContainer;
 import org.codehaus.cargo.container.EmbeddedLocalContainer;
 import org.codehaus.cargo.container.InstalledLocalContainer;
 import org.codehaus.cargo.container.configuration.Configuration;
+import org.codehaus.cargo.container.property.GeneralPropertySet;
 import org.codehaus.cargo.container.installer.ZipURLInstaller;
 import org.codehaus.cargo.generic.ContainerFactory;
 import org.codehaus.cargo.generic.DefaultContainerFactory;
 import org.codehaus.cargo.util.log.Logger;
 import org.codehaus.cargo.util.log.LogLevel;
+import org.codehaus.cargo.maven2.embedded.IndexedClassLoader;
 import org.codehaus.cargo.maven2.util.CargoProject;
+import org.codehaus.cargo.maven2.util.ClassDataSharing;
 
 /**
  * Holds configuration data for the <code>&lt;container&gt;</code> tag used to configure
@@ -72,6 +77,13 @@ public class Container
 
     private Map systemProperties;
 
+    private boolean classDataSharing;
+
+    /**
+     * Whether the MAVEN_OPTS advice of embedded containers was already logged by this JVM.
+     */
+    private static boolean embeddedAdviceLogged;
+
     public Map getSystemProperties()
     {
         return this.systemProperties;
@@ -82,6 +94,22 @@ public class Container
         this.systemProperties = systemProperties;
     }
 
+    /**
+     * @return true to start the container from an AppCDS archive of its classpath. Installed
+     *         containers get the JVM arguments dumping or using the archive, if their JVM is Java
+     *         13 or later. Embedded containers run in the Maven JVM, which is already started:
+     *         they only get advice on the MAVEN_OPTS to use
+     */
+    public boolean isClassDataSharing()
+    {
+        return this.classDataSharing;
+    }
+
+    public void setClassDataSharing(boolean classDataSharing)
+    {
+        this.classDataSharing = classDataSharing;
+    }
+
     public Long getTimeout()
     {
         return this.timeout;
@@ -215,6 +243,8 @@ public class Container
                 // Embedded containers (at least Jetty) doesn't seem to use the classloader set
                 // for them, but they do excute out of our thread, so the following works fine.
                 Thread.currentThread().setContextClassLoader(project.getEmbeddedClassLoader());
+
+                setupEmbeddedClassDataSharing(project);
             }
             else if (container.getType() == ContainerType.INSTALLED)
             {
@@ -222,6 +252,7 @@ public class Container
                 setupOutput((InstalledLocalContainer) container, project);
                 setupExtraClasspath((InstalledLocalContainer) container, project);
                 setupSystemProperties((InstalledLocalContainer) container);
+                setupClassDataSharing((InstalledLocalContainer) container, project);
             }
         }
         setupLogger(container, logger);
@@ -251,9 +282,10 @@ public class Container
             }
 
             // Create a new classloader that adds the dependencies to the classpath and has the old
-            // classloader as its parent classloader.
+            // classloader as its parent classloader. Both are indexed, so that a lookup does not
+            // scan every jar of the two classpaths.
             URLClassLoader urlClassloader =
-                new URLClassLoader(dependencyURLs, project.getEmbeddedClassLoader());
+                new IndexedClassLoader(dependencyURLs, project.getEmbeddedClassLoader());
 
             // Set the Cargo project classloader to the newly constructed classloader.
             project.setEmbeddedClassLoader(urlClassloader);
@@ -318,6 +350,106 @@ public class Container
         }
     }
 
+    /**
+     * Make the container JVM dump an AppCDS archive of its classpath on the first run, and start
+     * from it on the next runs.
+     */
+    private void setupClassDataSharing(InstalledLocalContainer container, CargoProject project)
+        throws MojoExecutionException
+    {
+        if (!isClassDataSharing())
+        {
+            return;
+        }
+
+        String javaHome = container.getConfiguration().getPropertyValue("cargo.java.home");
+        if (javaHome == null)
+        {
+            javaHome = System.getProperty("java.home");
+        }
+        if (!ClassDataSharing.isSupported(javaHome))
+        {
+            project.getLog().warn("Class data sharing needs Java 13 or later, which the JVM of ["
+                + javaHome + "] is not known to be: starting the container without it");
+            return;
+        }
+
+        List classpath = new ArrayList();
+        classpath.add(container.getHome());
+        classpath.add(javaHome);
+        if (getDependencies() != null)
+        {
+            for (int i = 0; i < getDependencies().length; i++)
+            {
+                classpath.add(getDependencies()[i].getDependencyPath(project));
+            }
+        }
+
+        File archive = ClassDataSharing.getArchive(getClassDataSharingDirectory(project),
+            getContainerId(), classpath);
+        archive.getParentFile().mkdirs();
+        ClassDataSharing.deleteOtherArchives(archive, getContainerId());
+        String jvmArgs = ClassDataSharing.addJvmArg(
+            container.getConfiguration().getPropertyValue(GeneralPropertySet.JVMARGS), archive);
+        container.getConfiguration().setProperty(GeneralPropertySet.JVMARGS, jvmArgs);
+        project.getLog().debug("Setting container JVM arguments to [" + jvmArgs + "]");
+    }
+
+    /**
+     * An embedded container runs in the Maven JVM, which is already started: only tell how to
+     * start it with class data sharing. The advice is logged once per JVM, as it is the same for
+     * every container the build starts.
+     */
+    private void setupEmbeddedClassDataSharing(CargoProject project)
+    {
+        if (!isClassDataSharing())
+        {
+            return;
+        }
+        if (ClassDataSharing.isEnabledInThisJvm())
+        {
+            project.getLog().debug("The Maven JVM was started with class data sharing");
+            return;
+        }
+        if (!ClassDataSharing.isSupported(System.getProperty("java.home")))
+        {
+            project.getLog().warn("Class data sharing needs Java 13 or later, which the Maven "
+                + "JVM is not: running the embedded container without it");
+            return;
+        }
+
+        List classpath = new ArrayList();
+        classpath.add(System.getProperty("java.home"));
+        ClassLoader loader = project.getEmbeddedClassLoader();
+        for (; loader instanceof URLClassLoader; loader = loader.getParent())
+        {
+            URL[] urls = ((URLClassLoader) loader).getURLs();
+            for (int i = 0; i < urls.length; i++)
+            {
+                classpath.add(urls[i].getFile());
+            }
+        }
+
+        File archive = ClassDataSharing.getArchive(getClassDataSharingDirectory(project),
+            getContainerId(), classpath);
+        String advice = ClassDataSharing.getMavenOptsAdvice(archive);
+        synchronized (Container.class)
+        {
+            if (!embeddedAdviceLogged)
+            {
+                embeddedAdviceLogged = true;
+                project.getLog().info(advice);
+                return;
+            }
+        }
+        project.getLog().debug(advice);
+    }
+
+    private File getClassDataSharingDirectory(CargoProject project)
+    {
+        return new File(project.getBuildDirectory(), "cargo/cds");
+    }
+
     /**
      * Set up a home dir (possibly using a ZipURLInstaller).
      */
@@ -0,0 +1,215 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.embedded;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.cargo.container.internal.util.JdkUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Dynamically load the dependencies of embedded containers. The artifacts of a container are
+ * listed in the <code>META-INF/cargo/embedded/&lt;containerId&gt;.artifacts</code> resource, one
+ * <code>groupId:artifactId:version</code> per line in classpath order, so that supporting another
+ * embedded container only takes another resource.
+ * <p/>
+ * The resolved artifacts are recorded in a lock file of the local repository and loaded by a
+ * classloader shared with the other executions of the JVM.
+ *
+ * @version $Id$
+ */
+public class EmbeddedArtifactResolver
+{
+    /**
+     * Directory of the artifact manifests, in the classpath.
+     */
+    public static final String MANIFESTS = "META-INF/cargo/embedded/";
+
+    private ArtifactResolver artifactResolver;
+
+    private ArtifactRepository localRepository;
+
+    private List repositories;
+
+    private ArtifactFactory artifactFactory;
+
+    private JdkUtils jdkUtils = new JdkUtils();
+
+    public EmbeddedArtifactResolver(ArtifactResolver artifactResolver,
+        ArtifactRepository localRepository, List repositories, ArtifactFactory artifactFactory)
+    {
+        this.artifactResolver = artifactResolver;
+        this.localRepository = localRepository;
+        this.repositories = repositories;
+        this.artifactFactory = artifactFactory;
+    }
+
+    /**
+     * @param containerId the id of an embedded container
+     * @return true if the artifacts of the container are listed in a manifest
+     */
+    public boolean isSupported(String containerId)
+    {
+        return getManifest(containerId) != null;
+    }
+
+    /**
+     * @param containerId the id of the embedded container
+     * @param parent the parent classloader, or null
+     * @return a classloader of the container's artifacts, shared with the previous executions
+     *         that resolved the same artifacts in this JVM
+     * @throws MojoExecutionException if the container has no manifest or an artifact cannot be
+     *         resolved
+     * @see EmbeddedClassLoaderCache
+     */
+    public ClassLoader resolveDependencies(String containerId, ClassLoader parent)
+        throws MojoExecutionException
+    {
+        try
+        {
+            String repository = this.localRepository.getBasedir();
+            List files = EmbeddedClassLoaderCache.getResolvedFiles(containerId, repository);
+            if (files == null)
+            {
+                files = resolveFiles(containerId);
+                EmbeddedClassLoaderCache.putResolvedFiles(containerId, repository, files);
+            }
+
+            // The JDK classes are added after the cache, which checks that every file it holds
+            // still exists: a JRE has no tools.jar
+            List classpath = new ArrayList(files);
+            // On OSX, the tools.jar classes are included in the classes.jar so there is no need
+            // to include any tools.jar file to the cp.
+            if (!this.jdkUtils.isOSX())
+            {
+                classpath.add(this.jdkUtils.getToolsJar());
+            }
+            return EmbeddedClassLoaderCache.getClassLoader(containerId, classpath, parent);
+        }
+        catch (Exception e)
+        {
+            throw new MojoExecutionException("Failed to resolve dependency", e);
+        }
+    }
+
+    /**
+     * @param containerId the id of an embedded container
+     * @return the <code>groupId:artifactId:version</code> of the container's artifacts, in
+     *         classpath order
+     * @throws IOException if the container has no manifest or it cannot be read
+     */
+    public List getArtifacts(String containerId) throws IOException
+    {
+        URL manifest = getManifest(containerId);
+        if (manifest == null)
+        {
+            throw new IOException("No embedded container artifacts for [" + containerId
+                + "] in " + MANIFESTS);
+        }
+
+        List artifacts = new ArrayList();
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(manifest.openStream(), "UTF-8"));
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#"))
+                {
+                    continue;
+                }
+                if (line.split(":").length != 3)
+                {
+                    throw new IOException("Invalid artifact [" + line + "] in " + manifest);
+                }
+                artifacts.add(line);
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return artifacts;
+    }
+
+    private URL getManifest(String containerId)
+    {
+        return EmbeddedArtifactResolver.class.getClassLoader().getResource(
+            MANIFESTS + containerId + ".artifacts");
+    }
+
+    /**
+     * Resolve the artifacts of a container, unless the lock file of a previous build still lists
+     * their files.
+     */
+    private List resolveFiles(String containerId) throws Exception
+    {
+        List coordinates = getArtifacts(containerId);
+        File lockFile = ResolvedArtifactsLockFile.getFile(this.localRepository.getBasedir(),
+            containerId);
+        List files = ResolvedArtifactsLockFile.load(lockFile, coordinates);
+        if (files == null)
+        {
+            files = resolveArtifacts(coordinates);
+            try
+            {
+                ResolvedArtifactsLockFile.store(lockFile, coordinates, files);
+            }
+            catch (IOException e)
+            {
+                // Another build may be writing the lock file: the artifacts are resolved anyway
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Maven's artifact resolver and wagon manager are not thread-safe, so the artifacts are
+     * resolved one after the other. The lock file spares this on most builds.
+     *
+     * @return the files of the artifacts, in the order of <code>coordinates</code>
+     */
+    private List resolveArtifacts(List coordinates) throws Exception
+    {
+        List files = new ArrayList(coordinates.size());
+        for (Iterator it = coordinates.iterator(); it.hasNext();)
+        {
+            String[] coordinate = ((String) it.next()).split(":");
+            Artifact artifact = this.artifactFactory.createArtifact(coordinate[0],
+                coordinate[1], coordinate[2], "compile", "jar");
+            this.artifactResolver.resolve(artifact, this.repositories, this.localRepository);
+            files.add(artifact.getFile());
+        }
+        return files;
+    }
+}
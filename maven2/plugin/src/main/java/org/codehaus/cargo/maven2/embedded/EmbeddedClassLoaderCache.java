@@ -0,0 +1,152 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2006 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.embedded;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classloaders of embedded containers, shared by all the executions of the plugin in the same
+ * JVM. In a reactor where many modules start the same embedded container, only the first one
+ * resolves its artifacts and loads its classes; the others reuse the already warmed classloader.
+ * <p/>
+ * A classloader is keyed by the container id, the parent classloader and the resolved files,
+ * including their size and modification time, so that a changed artifact gets a new
+ * classloader.
+ *
+ * @version $Id$
+ */
+public final class EmbeddedClassLoaderCache
+{
+    /**
+     * Stands for the null parent classloader in {@link #classLoaders}.
+     */
+    private static final Object NO_PARENT = new Object();
+
+    /**
+     * Parent classloader to a map of key to classloader.
+     */
+    private static final Map classLoaders = new HashMap();
+
+    /**
+     * Container id and local repository to the list of resolved {@link File}s.
+     */
+    private static final Map resolvedFiles = new HashMap();
+
+    private EmbeddedClassLoaderCache()
+    {
+        // Utility class
+    }
+
+    /**
+     * @param containerId the id of the embedded container
+     * @param repository the base directory of the local repository
+     * @return the files resolved for the container in a previous execution, or null if they were
+     *         not resolved yet or one of them no longer exists
+     */
+    public static synchronized List getResolvedFiles(String containerId, String repository)
+    {
+        List files = (List) resolvedFiles.get(containerId + "@" + repository);
+        if (files != null)
+        {
+            for (Iterator i = files.iterator(); i.hasNext();)
+            {
+                if (!((File) i.next()).isFile())
+                {
+                    return null;
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @param containerId the id of the embedded container
+     * @param repository the base directory of the local repository
+     * @param files the {@link File}s resolved for the artifacts of the container, which must
+     *        all exist for the next executions to reuse them
+     */
+    public static synchronized void putResolvedFiles(String containerId, String repository,
+        List files)
+    {
+        resolvedFiles.put(containerId + "@" + repository, new ArrayList(files));
+    }
+
+    /**
+     * @param containerId the id of the embedded container
+     * @param files the {@link File}s of the classpath, in classpath order
+     * @param parent the parent classloader, or null
+     * @return the classloader of a previous execution with the same key, or a new one
+     * @throws MalformedURLException if a file cannot be converted to a URL
+     */
+    public static synchronized ClassLoader getClassLoader(String containerId, List files,
+        ClassLoader parent) throws MalformedURLException
+    {
+        Object parentKey = parent == null ? NO_PARENT : parent;
+        Map loaders = (Map) classLoaders.get(parentKey);
+        if (loaders == null)
+        {
+            loaders = new HashMap();
+            classLoaders.put(parentKey, loaders);
+        }
+
+        String key = getKey(containerId, files);
+        ClassLoader classLoader = (ClassLoader) loaders.get(key);
+        if (classLoader == null)
+        {
+            URL[] urls = new URL[files.size()];
+            for (int i = 0; i < urls.length; i++)
+            {
+                urls[i] = ((File) files.get(i)).toURL();
+            }
+            classLoader = parent == null ? new IndexedClassLoader(urls)
+                : new IndexedClassLoader(urls, parent);
+            loaders.put(key, classLoader);
+        }
+        return classLoader;
+    }
+
+    /**
+     * Forget all the classloaders and resolved files.
+     */
+    public static synchronized void clear()
+    {
+        classLoaders.clear();
+        resolvedFiles.clear();
+    }
+
+    private static String getKey(String containerId, List files)
+    {
+        StringBuffer key = new StringBuffer(containerId);
+        for (Iterator i = files.iterator(); i.hasNext();)
+        {
+            File file = (File) i.next();
+            key.append('|').append(file.getAbsolutePath()).append(':').append(file.length())
+                .append(':').append(file.lastModified());
+        }
+        return key.toString();
+    }
+}
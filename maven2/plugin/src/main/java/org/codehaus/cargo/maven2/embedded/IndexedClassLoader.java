@@ -0,0 +1,436 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.embedded;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSource;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.codehaus.cargo.maven2.util.ZipIndex;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Classloader of embedded containers that knows which jars hold which package. The central
+ * directories of the jars are read once, when the classloader is created; a class or resource is
+ * then only looked up in the jars holding its directory, instead of in every jar of the
+ * classpath in turn. As a parent is asked before its children, classloaders stacked over an
+ * indexed classloader do not scan its jars either.
+ * <p/>
+ * Classpath entries that are not jars, such as directories, cannot be indexed and are searched
+ * for everything, like {@link URLClassLoader} does. Jars and other entries are always searched
+ * in classpath order.
+ *
+ * @version $Id$
+ */
+public class IndexedClassLoader extends URLClassLoader
+{
+    /**
+     * An entry of the classpath.
+     */
+    private abstract static class Element
+    {
+        /**
+         * The position of the entry in the classpath.
+         */
+        final int position;
+
+        final URL url;
+
+        Element(int position, URL url)
+        {
+            this.position = position;
+            this.url = url;
+        }
+
+        /**
+         * @return the URL of the resource <code>name</code> of this entry, or null
+         */
+        abstract URL findResource(String name);
+    }
+
+    /**
+     * A jar of the classpath, opened the first time something is read from it.
+     */
+    private static class Jar extends Element
+    {
+        final File file;
+
+        private JarFile jarFile;
+
+        private Manifest manifest;
+
+        Jar(int position, URL url, File file)
+        {
+            super(position, url);
+            this.file = file;
+        }
+
+        synchronized JarFile getJarFile() throws IOException
+        {
+            if (this.jarFile == null)
+            {
+                this.jarFile = new JarFile(this.file);
+                this.manifest = this.jarFile.getManifest();
+            }
+            return this.jarFile;
+        }
+
+        synchronized Manifest getManifest() throws IOException
+        {
+            getJarFile();
+            return this.manifest;
+        }
+
+        URL findResource(String name)
+        {
+            try
+            {
+                if (getJarFile().getEntry(name) == null)
+                {
+                    return null;
+                }
+                return new URL("jar:" + this.url.toExternalForm() + "!/" + name);
+            }
+            catch (MalformedURLException e)
+            {
+                return null;
+            }
+            catch (IOException e)
+            {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * An entry of the classpath that is not an indexed jar, searched by a
+     * {@link URLClassLoader} of its own.
+     */
+    private static class Unindexed extends Element
+    {
+        private final URLClassLoader loader;
+
+        Unindexed(int position, URL url)
+        {
+            super(position, url);
+            this.loader = new URLClassLoader(new URL[] {url}, null);
+        }
+
+        URL findResource(String name)
+        {
+            return this.loader.findResource(name);
+        }
+    }
+
+    private final URL[] urls;
+
+    /**
+     * Directory, with a trailing slash, to the list of {@link Jar}s holding entries in that
+     * directory or below it, in classpath order.
+     */
+    private final Map directories = new HashMap();
+
+    /**
+     * The {@link Unindexed} entries, in classpath order.
+     */
+    private final List unindexed = new ArrayList();
+
+    /**
+     * @param urls the classpath
+     */
+    public IndexedClassLoader(URL[] urls)
+    {
+        this(urls, ClassLoader.getSystemClassLoader());
+    }
+
+    /**
+     * @param urls the classpath
+     * @param parent the parent classloader, or null for the bootstrap classloader
+     */
+    public IndexedClassLoader(URL[] urls, ClassLoader parent)
+    {
+        super(new URL[0], parent);
+        this.urls = (URL[]) urls.clone();
+        for (int i = 0; i < urls.length; i++)
+        {
+            if (!index(i, urls[i]))
+            {
+                this.unindexed.add(new Unindexed(i, urls[i]));
+            }
+        }
+    }
+
+    /**
+     * @return all the classpath entries, indexed or not, in classpath order
+     */
+    public URL[] getURLs()
+    {
+        return (URL[]) this.urls.clone();
+    }
+
+    protected Class findClass(String name) throws ClassNotFoundException
+    {
+        String path = name.replace('.', '/') + ".class";
+        for (Iterator i = getCandidates(path).iterator(); i.hasNext();)
+        {
+            Element element = (Element) i.next();
+            try
+            {
+                if (element instanceof Jar)
+                {
+                    Jar jar = (Jar) element;
+                    JarFile jarFile = jar.getJarFile();
+                    JarEntry entry = jarFile.getJarEntry(path);
+                    if (entry != null)
+                    {
+                        definePackageOf(name, jar.getManifest(), jar.url);
+                        byte[] bytes = read(jarFile.getInputStream(entry));
+                        // The certificates are only known once the entry has been read
+                        return defineClass(name, bytes,
+                            new CodeSource(jar.url, entry.getCertificates()));
+                    }
+                }
+                else
+                {
+                    URL resource = element.findResource(path);
+                    if (resource != null)
+                    {
+                        definePackageOf(name, null, element.url);
+                        byte[] bytes = read(resource.openStream());
+                        return defineClass(name, bytes,
+                            new CodeSource(element.url, (Certificate[]) null));
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+        return super.findClass(name);
+    }
+
+    public URL findResource(String name)
+    {
+        for (Iterator i = getCandidates(name).iterator(); i.hasNext();)
+        {
+            URL url = ((Element) i.next()).findResource(name);
+            if (url != null)
+            {
+                return url;
+            }
+        }
+        return super.findResource(name);
+    }
+
+    public Enumeration findResources(String name) throws IOException
+    {
+        List resources = new ArrayList();
+        for (Iterator i = getCandidates(name).iterator(); i.hasNext();)
+        {
+            URL url = ((Element) i.next()).findResource(name);
+            if (url != null)
+            {
+                resources.add(url);
+            }
+        }
+        resources.addAll(Collections.list(super.findResources(name)));
+        return Collections.enumeration(resources);
+    }
+
+    /**
+     * @return the entries that may hold the resource <code>name</code>, in classpath order: the
+     *         jars holding its directory and all the entries that are not indexed
+     */
+    private List getCandidates(String name)
+    {
+        List jars = (List) this.directories.get(getDirectory(name));
+        if (jars == null || jars.isEmpty())
+        {
+            return this.unindexed;
+        }
+        if (this.unindexed.isEmpty())
+        {
+            return jars;
+        }
+
+        List candidates = new ArrayList(jars.size() + this.unindexed.size());
+        int j = 0;
+        int u = 0;
+        while (j < jars.size() || u < this.unindexed.size())
+        {
+            if (u == this.unindexed.size() || j < jars.size()
+                && ((Element) jars.get(j)).position < ((Element) this.unindexed.get(u)).position)
+            {
+                candidates.add(jars.get(j++));
+            }
+            else
+            {
+                candidates.add(this.unindexed.get(u++));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Add a jar to the index, under the directory of each of its entries and all the parents of
+     * these directories, so that looking up a directory finds the jars holding anything below
+     * it.
+     *
+     * @return true if <code>url</code> is a jar whose entries were added to the index
+     */
+    private boolean index(int position, URL url)
+    {
+        if (!"file".equals(url.getProtocol()))
+        {
+            return false;
+        }
+        File file = new File(url.getPath().replaceAll("%20", " "));
+        if (!file.isFile())
+        {
+            return false;
+        }
+
+        List entries;
+        try
+        {
+            ZipIndex index = new ZipIndex(file, false);
+            try
+            {
+                entries = index.getEntries();
+            }
+            finally
+            {
+                index.close();
+            }
+        }
+        catch (IOException e)
+        {
+            // Not a readable jar: search it like a URLClassLoader would
+            return false;
+        }
+
+        Jar jar = new Jar(position, url, file);
+        Set indexed = new HashSet();
+        for (Iterator i = entries.iterator(); i.hasNext();)
+        {
+            ZipIndex.Entry entry = (ZipIndex.Entry) i.next();
+            String name = entry.getName();
+            String directory = entry.isDirectory() ? getDirectory(name + "x") : getDirectory(name);
+            while (indexed.add(directory))
+            {
+                List jars = (List) this.directories.get(directory);
+                if (jars == null)
+                {
+                    jars = new ArrayList(1);
+                    this.directories.put(directory, jars);
+                }
+                jars.add(jar);
+                if (directory.length() == 0)
+                {
+                    break;
+                }
+                directory = getDirectory(directory.substring(0, directory.length() - 1));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Define the package of the class <code>name</code>, unless it already is.
+     *
+     * @param manifest the manifest of the classpath entry, or null
+     */
+    private void definePackageOf(String name, Manifest manifest, URL url)
+    {
+        int lastDot = name.lastIndexOf('.');
+        if (lastDot == -1)
+        {
+            return;
+        }
+        String packageName = name.substring(0, lastDot);
+        if (getPackage(packageName) == null)
+        {
+            try
+            {
+                if (manifest != null)
+                {
+                    definePackage(packageName, manifest, url);
+                }
+                else
+                {
+                    definePackage(packageName, null, null, null, null, null, null, null);
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Defined by another thread in the meantime
+            }
+        }
+    }
+
+    private Class defineClass(String name, byte[] bytes, CodeSource codeSource)
+    {
+        return defineClass(name, bytes, 0, bytes.length, codeSource);
+    }
+
+    private static byte[] read(InputStream in) throws IOException
+    {
+        try
+        {
+            return IOUtil.toByteArray(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the directory of an entry name, with a trailing slash, or an empty string for the
+     *         root directory; the directory of a directory name, with its trailing slash, is the
+     *         directory itself
+     */
+    private static String getDirectory(String name)
+    {
+        if (name.startsWith("/"))
+        {
+            name = name.substring(1);
+        }
+        return name.substring(0, name.lastIndexOf('/') + 1);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2006 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.embedded;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.codehaus.cargo.maven2.util.RecordFiles;
+
+/**
+ * The files resolved for the artifacts of an embedded container, recorded in the local
+ * repository. While the artifacts of the container and the recorded files do not change, the
+ * next builds use the files without calling the artifact resolver.
+ * <p/>
+ * The lock file is a tab separated text file, one record per line.
+ *
+ * @version $Id$
+ */
+final class ResolvedArtifactsLockFile
+{
+    private static final String HEADER = "# Cargo embedded container artifacts, version 1";
+
+    private ResolvedArtifactsLockFile()
+    {
+        // Utility class
+    }
+
+    /**
+     * @param repository the base directory of the local repository
+     * @param containerId the id of the embedded container
+     * @return the lock file of the container
+     */
+    static File getFile(String repository, String containerId)
+    {
+        return new File(repository, "org/codehaus/cargo/embedded/" + containerId + ".lock");
+    }
+
+    /**
+     * @param file the lock file
+     * @param artifacts the <code>groupId:artifactId:version</code> of the container's artifacts
+     * @return the recorded files, in classpath order, or null if the lock file is missing, was
+     *         recorded for other artifacts, cannot be read or names files that no longer exist
+     */
+    static List load(File file, final List artifacts)
+    {
+        return (List) RecordFiles.load(file, HEADER, new RecordFiles.Parser()
+        {
+            public Object parse(BufferedReader reader) throws IOException
+            {
+                for (Iterator i = artifacts.iterator(); i.hasNext();)
+                {
+                    if (!("artifact\t" + i.next()).equals(reader.readLine()))
+                    {
+                        return null;
+                    }
+                }
+                List files = new ArrayList();
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    String[] fields = line.split("\t", 2);
+                    File resolved = new File(fields[1]);
+                    if (!"file".equals(fields[0]) || !resolved.isFile())
+                    {
+                        return null;
+                    }
+                    files.add(resolved);
+                }
+                return files;
+            }
+        });
+    }
+
+    /**
+     * Record the files resolved for the artifacts of a container.
+     *
+     * @param file the lock file
+     * @param artifacts the <code>groupId:artifactId:version</code> of the container's artifacts
+     * @param files the resolved {@link File}s, in classpath order
+     * @throws IOException if the lock file cannot be written
+     */
+    static void store(File file, final List artifacts, final List files) throws IOException
+    {
+        RecordFiles.store(file, HEADER, new RecordFiles.Printer()
+        {
+            public void print(Writer writer) throws IOException
+            {
+                for (Iterator i = artifacts.iterator(); i.hasNext();)
+                {
+                    writer.write("artifact\t" + i.next() + "\n");
+                }
+                for (Iterator i = files.iterator(); i.hasNext();)
+                {
+                    writer.write("file\t" + ((File) i.next()).getAbsolutePath() + "\n");
+                }
+            }
+        });
+    }
+}
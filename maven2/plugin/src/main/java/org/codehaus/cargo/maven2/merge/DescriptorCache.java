@@ -0,0 +1,155 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.merge;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codehaus.cargo.maven2.util.Digests;
+import org.codehaus.cargo.module.DescriptorType;
+import org.codehaus.cargo.module.webapp.WebXml;
+import org.codehaus.cargo.module.webapp.WebXmlIo;
+import org.codehaus.plexus.util.IOUtil;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+
+/**
+ * Parsed web.xml fragments, shared by all the merges of a build and keyed by the hash of their
+ * content, so that a strategy used by several tags or choices is only parsed once.
+ * <p/>
+ * The cached documents are never handed out: {@link Parsed#getRootElement()} returns a copy,
+ * which is much cheaper than parsing the descriptor again. The cache lives as long as the JVM,
+ * which may run many builds, so it only keeps the {@link #MAX_ENTRIES} descriptors used last.
+ *
+ * @version $Id:
+ */
+public final class DescriptorCache
+{
+  /**
+   * A parsed descriptor.
+   */
+  public static class Parsed
+  {
+    private WebXml webXml;
+    private DescriptorType descriptorType;
+
+    Parsed(WebXml webXml)
+    {
+      this.webXml = webXml;
+      this.descriptorType = webXml.getDescriptorType();
+    }
+
+    /**
+     * @return the type of the descriptor
+     */
+    public DescriptorType getDescriptorType()
+    {
+      return this.descriptorType;
+    }
+
+    /**
+     * @return a copy of the root element of the descriptor, which the caller is free to change
+     */
+    public Element getRootElement()
+    {
+      synchronized( this.webXml )
+      {
+        return (Element)this.webXml.getRootElement().clone();
+      }
+    }
+  }
+
+  /**
+   * The number of parsed descriptors kept.
+   */
+  static final int MAX_ENTRIES = 64;
+
+  /**
+   * Parsed descriptors by hash of their content, least recently used first.
+   */
+  private static final Map CACHE = new LinkedHashMap(16, 0.75f, true)
+  {
+    protected boolean removeEldestEntry(Map.Entry eldest)
+    {
+      return size() > MAX_ENTRIES;
+    }
+  };
+
+  private DescriptorCache()
+  {
+    // Utility class
+  }
+
+  /**
+   * @param content the bytes of a web.xml descriptor or fragment
+   * @return the parsed descriptor
+   * @throws IOException if the descriptor cannot be read
+   * @throws JDOMException if the descriptor cannot be parsed
+   */
+  public static Parsed getWebXml(byte[] content) throws IOException, JDOMException
+  {
+    String key = Digests.digest(content, Digests.SHA1);
+    synchronized( CACHE )
+    {
+      Parsed parsed = (Parsed)CACHE.get(key);
+      if( parsed == null )
+      {
+        parsed = new Parsed(WebXmlIo.parseWebXml(new ByteArrayInputStream(content), null));
+        CACHE.put(key, parsed);
+      }
+      return parsed;
+    }
+  }
+
+  /**
+   * @param file a web.xml descriptor or fragment
+   * @return the parsed descriptor
+   * @throws IOException if the descriptor cannot be read
+   * @throws JDOMException if the descriptor cannot be parsed
+   */
+  public static Parsed getWebXml(File file) throws IOException, JDOMException
+  {
+    InputStream in = new FileInputStream(file);
+    try
+    {
+      return getWebXml(IOUtil.toByteArray(in));
+    }
+    finally
+    {
+      in.close();
+    }
+  }
+
+  /**
+   * Forget all the parsed descriptors.
+   */
+  public static void clear()
+  {
+    synchronized( CACHE )
+    {
+      CACHE.clear();
+    }
+  }
+}
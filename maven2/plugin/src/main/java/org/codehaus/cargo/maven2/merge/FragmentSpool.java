@@ -0,0 +1,88 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.merge;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Append-only store of XML fragments backed by a temporary file, so that merging large
+ * descriptors only keeps fragment numbers in memory.
+ *
+ * @version $Id:
+ */
+class FragmentSpool
+{
+  private File file;
+  private RandomAccessFile data;
+  private long[] offsets = new long[64];
+  private int[] lengths = new int[64];
+  private int count;
+
+  FragmentSpool() throws IOException
+  {
+    this.file = File.createTempFile("cargo-fragments", ".spool");
+    this.file.deleteOnExit();
+    this.data = new RandomAccessFile(this.file, "rw");
+  }
+
+  /**
+   * @param fragment the fragment to store
+   * @return the number of the fragment, for {@link #read(int)}
+   */
+  int add(String fragment) throws IOException
+  {
+    if( this.count == this.offsets.length )
+    {
+      long[] offsets = new long[this.count * 2];
+      int[] lengths = new int[this.count * 2];
+      System.arraycopy(this.offsets, 0, offsets, 0, this.count);
+      System.arraycopy(this.lengths, 0, lengths, 0, this.count);
+      this.offsets = offsets;
+      this.lengths = lengths;
+    }
+
+    byte[] bytes = fragment.getBytes("UTF-8");
+    long offset = this.data.length();
+    this.data.seek(offset);
+    this.data.write(bytes);
+    this.offsets[this.count] = offset;
+    this.lengths[this.count] = bytes.length;
+    return this.count++;
+  }
+
+  String read(int fragment) throws IOException
+  {
+    byte[] bytes = new byte[this.lengths[fragment]];
+    this.data.seek(this.offsets[fragment]);
+    this.data.readFully(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
+  /**
+   * Close and delete the spool file.
+   */
+  void close() throws IOException
+  {
+    this.data.close();
+    this.file.delete();
+  }
+}
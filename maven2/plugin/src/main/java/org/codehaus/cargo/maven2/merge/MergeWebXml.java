@@ -19,9 +19,8 @@
  */
 package org.codehaus.cargo.maven2.merge;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileReader;
 
 import org.codehaus.cargo.maven2.Merge;
 import org.codehaus.cargo.module.Descriptor;
@@ -30,12 +29,11 @@ import org.codehaus.cargo.module.merge.MergeProcessor;
 import org.codehaus.cargo.module.merge.tagstrategy.ChooseByNameMergeStrategy;
 import org.codehaus.cargo.module.merge.tagstrategy.MergeStrategy;
 import org.codehaus.cargo.module.merge.tagstrategy.NodeMergeStrategy;
-import org.codehaus.cargo.module.webapp.WebXml;
-import org.codehaus.cargo.module.webapp.WebXmlIo;
 import org.codehaus.cargo.module.webapp.WebXmlType;
 import org.codehaus.cargo.module.webapp.merge.WarArchiveMerger;
 import org.codehaus.cargo.module.webapp.merge.WebXmlMerger;
 import org.codehaus.cargo.util.CargoException;
+import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 
 /**
@@ -45,6 +43,11 @@ import org.codehaus.plexus.util.xml.Xpp3Dom;
  */
 public class MergeWebXml implements MergeProcessorFactory
 {
+  /**
+   * Value of the <code>engine</code> parameter selecting the {@link StreamingWebXmlMerger}.
+   */
+  public static final String STREAMING_ENGINE = "streaming";
+
   WebXmlMerger webXmlMerger;
   Descriptor firstItem = null;
   File configDirectory;
@@ -86,9 +89,169 @@ public class MergeWebXml implements MergeProcessorFactory
     
   }
   
+  /**
+   * @param xml a <code>&lt;merge&gt;</code> node of type web.xml
+   * @return true if the node asks for the streaming engine, with
+   *         <code>&lt;engine&gt;streaming&lt;/engine&gt;</code> in its parameters
+   */
+  public static boolean isStreaming(Merge xml)
+  {
+    Xpp3Dom parameters = (Xpp3Dom)xml.getParameters();
+    if( parameters == null || parameters.getChild("engine") == null )
+    {
+      return false;
+    }
+    return STREAMING_ENGINE.equalsIgnoreCase(parameters.getChild("engine").getValue().trim());
+  }
+
+  /**
+   * Create a streaming web.xml merge processor, configured with the same
+   * <code>&lt;default&gt;</code> tag strategies as {@link #create}.
+   *
+   * @param xml the <code>&lt;merge&gt;</code> node
+   * @return the merge processor for <code>WEB-INF/web.xml</code>
+   */
+  public StreamingWebXmlMerger createStreaming(Merge xml)
+  {
+    StreamingWebXmlMerger merger = new StreamingWebXmlMerger();
+
+    Xpp3Dom parameters = (Xpp3Dom)xml.getParameters();
+    Xpp3Dom defaultNode = parameters.getChild("default");
+    if( defaultNode != null )
+    {
+      Xpp3Dom[] tags = defaultNode.getChildren("tag");
+      for(int i=0; i<tags.length;i++)
+      {
+        Xpp3Dom tag = tags[i];
+        merger.setStrategy(tag.getAttribute("name"), makeStreamingStrategy(tag.getChild("strategy")));
+      }
+    }
+    return merger;
+  }
+
+  /**
+   * Builds the strategies of one merge engine. The <code>&lt;strategy&gt;</code> nodes are
+   * parsed by {@link MergeWebXml#makeStrategy(Xpp3Dom, StrategyFactory)} for both engines.
+   */
+  interface StrategyFactory
+  {
+    Object preserve();
+
+    Object overwrite();
+
+    Object chooseByName(Object defaultStrategy);
+
+    void addChoice(Object chooseByName, String name, Object strategy);
+
+    Object nodeMerge(File file) throws Exception;
+
+    Object nodeMerge(String xml) throws Exception;
+  }
+
+  /**
+   * The strategies of the {@link DescriptorMergerByTag}.
+   */
+  private static final StrategyFactory DESCRIPTOR_STRATEGIES = new StrategyFactory()
+  {
+    public Object preserve()
+    {
+      return DescriptorMergerByTag.PRESERVE;
+    }
+
+    public Object overwrite()
+    {
+      return DescriptorMergerByTag.OVERWRITE;
+    }
+
+    public Object chooseByName(Object defaultStrategy)
+    {
+      return new ChooseByNameMergeStrategy((MergeStrategy)defaultStrategy);
+    }
+
+    public void addChoice(Object chooseByName, String name, Object strategy)
+    {
+      ((ChooseByNameMergeStrategy)chooseByName).addStrategyForName(name, (MergeStrategy)strategy);
+    }
+
+    // The same strategy is often used by several tags and choices: only parse it once
+    public Object nodeMerge(File file) throws Exception
+    {
+      return createNodeMerge(DescriptorCache.getWebXml(file));
+    }
+
+    public Object nodeMerge(String xml) throws Exception
+    {
+      return createNodeMerge(DescriptorCache.getWebXml(xml.getBytes()));
+    }
+
+    private Object createNodeMerge(DescriptorCache.Parsed webXml)
+    {
+      return new NodeMergeStrategy( webXml.getDescriptorType(), webXml.getRootElement() );
+    }
+  };
+
+  /**
+   * The strategies of the {@link StreamingWebXmlMerger}.
+   */
+  private static final StrategyFactory STREAMING_STRATEGIES = new StrategyFactory()
+  {
+    public Object preserve()
+    {
+      return StreamingWebXmlMerger.Strategy.PRESERVE;
+    }
+
+    public Object overwrite()
+    {
+      return StreamingWebXmlMerger.Strategy.OVERWRITE;
+    }
+
+    public Object chooseByName(Object defaultStrategy)
+    {
+      return new StreamingWebXmlMerger.ChooseByName((StreamingWebXmlMerger.Strategy)defaultStrategy);
+    }
+
+    public void addChoice(Object chooseByName, String name, Object strategy)
+    {
+      ((StreamingWebXmlMerger.ChooseByName)chooseByName).addStrategyForName(name,
+        (StreamingWebXmlMerger.Strategy)strategy);
+    }
+
+    public Object nodeMerge(File file) throws Exception
+    {
+      FileReader reader = new FileReader(file);
+      try
+      {
+        return new StreamingWebXmlMerger.NodeMerge(IOUtil.toString(reader));
+      }
+      finally
+      {
+        reader.close();
+      }
+    }
+
+    public Object nodeMerge(String xml) throws Exception
+    {
+      return new StreamingWebXmlMerger.NodeMerge(xml);
+    }
+  };
+
+  protected StreamingWebXmlMerger.Strategy makeStreamingStrategy(Xpp3Dom config)
+  {
+      return (StreamingWebXmlMerger.Strategy)makeStrategy(config, STREAMING_STRATEGIES);
+  }
+
   protected MergeStrategy makeStrategy(Xpp3Dom config)
   {
+      return (MergeStrategy)makeStrategy(config, DESCRIPTOR_STRATEGIES);
+  }
 
+  /**
+   * @param config a <code>&lt;strategy&gt;</code> node
+   * @param factory the builder of the strategies of the merge engine
+   * @return the strategy of <code>config</code>, built by <code>factory</code>
+   */
+  private Object makeStrategy(Xpp3Dom config, StrategyFactory factory)
+  {
       if( !config.getName().equals("strategy") )
       {
           throw new CargoException("You must specify a merge strategy");
@@ -96,20 +259,20 @@ public class MergeWebXml implements MergeProcessorFactory
 
       String strategyName = config.getAttribute("name");
       String strategyFile = config.getAttribute("file");
-      
+
       if( strategyName.equalsIgnoreCase("Preserve"))
       {
-          return DescriptorMergerByTag.PRESERVE;
+          return factory.preserve();
       }
       else if( strategyName.equalsIgnoreCase("Overwrite"))
       {
-          return DescriptorMergerByTag.OVERWRITE;
+          return factory.overwrite();
       }
       else if( strategyName.equalsIgnoreCase("ChooseByName"))
       {
           Xpp3Dom def = config.getChild("default").getChild(0);
 
-          ChooseByNameMergeStrategy cbnms = new ChooseByNameMergeStrategy(makeStrategy(def));
+          Object cbn = factory.chooseByName(makeStrategy(def, factory));
 
           Xpp3Dom[] items = config.getChildren();
           for(int i=0; i<items.length;i++)
@@ -117,28 +280,22 @@ public class MergeWebXml implements MergeProcessorFactory
               Xpp3Dom item = items[i];
               if( item.getName().equals("choice") )
               {
-                  cbnms.addStrategyForName(item.getAttribute("name"), makeStrategy(item.getChild(0)));
+                  factory.addChoice(cbn, item.getAttribute("name"), makeStrategy(item.getChild(0), factory));
               }
           }
-          return cbnms;
+          return cbn;
       }
       if( strategyName.equalsIgnoreCase("NodeMerge"))
       {
-         
-
           try
           {
               if( strategyFile != null )
               {
-                File f = new File(getConfigDirectory(), strategyFile);
-                WebXml webXml = WebXmlIo.parseWebXml(new FileInputStream(f), null);
-                return new NodeMergeStrategy( webXml.getDescriptorType(), webXml.getRootElement() );
+                return factory.nodeMerge(new File(getConfigDirectory(), strategyFile));
               }
               else
               {
-                String theXml = config.getChild(0).toString();
-                WebXml webXml = WebXmlIo.parseWebXml(new ByteArrayInputStream(theXml.getBytes()), null);
-                return new NodeMergeStrategy( webXml.getDescriptorType(), webXml.getRootElement() );
+                return factory.nodeMerge(config.getChild(0).toString());
               }
           }
           catch (Exception e)
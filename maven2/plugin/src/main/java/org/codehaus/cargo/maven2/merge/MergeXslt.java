@@ -20,18 +20,16 @@
 package org.codehaus.cargo.maven2.merge;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
 
 import org.codehaus.cargo.maven2.Merge;
-import org.codehaus.cargo.module.merge.DocumentMergerByXslt;
 import org.codehaus.cargo.module.merge.MergeProcessor;
 import org.codehaus.cargo.module.webapp.merge.WarArchiveMerger;
 import org.codehaus.cargo.util.CargoException;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 
 /**
- * Merge processor that uses XSLT
+ * Merge processor that uses XSLT. Stylesheets are compiled once and kept in the
+ * {@link XsltTemplatesCache}.
  *  
  * @version $Id: 
  */
@@ -56,11 +54,7 @@ public class MergeXslt implements MergeProcessorFactory
       
       File file = new File(workingDirectory, filename);
       
-      InputStream is = new FileInputStream(file);
-      
-      DocumentMergerByXslt documentMergerByXslt = new DocumentMergerByXslt(is);            
-      
-      return documentMergerByXslt;
+      return new XsltMergeProcessor(XsltTemplatesCache.getTemplates(file));
     }
     catch(Exception ex)
     {
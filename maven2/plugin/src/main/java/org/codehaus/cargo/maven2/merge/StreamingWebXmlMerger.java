@@ -0,0 +1,721 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.merge;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.codehaus.cargo.module.merge.MergeException;
+import org.codehaus.cargo.module.merge.MergeProcessor;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * web.xml merge processor that reads each descriptor once, with a StAX parser, instead of
+ * building and merging full JDOM trees.
+ * <p/>
+ * Every top level element of the descriptors (a servlet, a filter mapping...) is serialised as
+ * it is read and spooled to a temporary file; only its tag name and the value of its identifier
+ * (<code>servlet-name</code> for a servlet, <code>param-name</code> for a context parameter,
+ * ...) are kept in memory, for conflict detection. When the same tag and identifier appear in
+ * several descriptors, the {@link Strategy} registered for the tag decides which one is kept:
+ * <ul>
+ *   <li>{@link Strategy#PRESERVE} keeps the first one (the default);</li>
+ *   <li>{@link Strategy#OVERWRITE} keeps the last one;</li>
+ *   <li>{@link ChooseByName} picks a strategy by identifier value;</li>
+ *   <li>{@link NodeMerge} builds a new element from a template where a child element whose
+ *       text is <code>$left:name</code> or <code>$right:name</code> is replaced by the
+ *       <code>name</code> children of the first or the second element.</li>
+ * </ul>
+ * Elements that can only appear once (<code>session-config</code>,
+ * <code>welcome-file-list</code>...) conflict with each other; elements without identifier
+ * (mappings, security constraints) are all kept.
+ * <p/>
+ * The merged descriptor uses the XML declaration, DOCTYPE and root element of the first
+ * descriptor, and lists the elements in the order of the web.xml DTD, each group in merge order.
+ * Comments outside of the top level elements are not kept. Merge items must be
+ * {@link InputStream}s; {@link #performMerge()} returns the merged descriptor as UTF-8 bytes.
+ *
+ * @version $Id:
+ */
+public class StreamingWebXmlMerger implements MergeProcessor
+{
+  /**
+   * Order of the top level elements in a web.xml.
+   */
+  static final List TAG_ORDER = Arrays.asList(new String[] {
+    "icon", "display-name", "description", "distributable", "context-param", "filter",
+    "filter-mapping", "listener", "servlet", "servlet-mapping", "session-config",
+    "mime-mapping", "welcome-file-list", "error-page", "taglib", "jsp-config",
+    "resource-env-ref", "resource-ref", "security-constraint", "login-config", "security-role",
+    "env-entry", "ejb-ref", "ejb-local-ref", "service-ref", "message-destination-ref",
+    "message-destination", "locale-encoding-mapping-list"});
+
+  /**
+   * Identifying child elements, by tag name.
+   */
+  static final Map IDENTIFIERS = new HashMap();
+
+  /**
+   * Marker of the tags that can only appear once.
+   */
+  private static final String[] SINGLE = new String[0];
+
+  static
+  {
+    identify("context-param", "param-name");
+    identify("filter", "filter-name");
+    identify("listener", "listener-class");
+    identify("servlet", "servlet-name");
+    identify("mime-mapping", "extension");
+    IDENTIFIERS.put("error-page", new String[] {"error-code", "exception-type"});
+    identify("taglib", "taglib-uri");
+    identify("resource-env-ref", "resource-env-ref-name");
+    identify("resource-ref", "res-ref-name");
+    identify("security-role", "role-name");
+    identify("env-entry", "env-entry-name");
+    identify("ejb-ref", "ejb-ref-name");
+    identify("ejb-local-ref", "ejb-ref-name");
+    identify("service-ref", "service-ref-name");
+    identify("message-destination-ref", "message-destination-ref-name");
+    identify("message-destination", "message-destination-name");
+
+    String[] single = new String[] {"icon", "display-name", "description", "distributable",
+      "session-config", "welcome-file-list", "jsp-config", "login-config",
+      "locale-encoding-mapping-list"};
+    for(int i=0; i<single.length; i++)
+    {
+      IDENTIFIERS.put(single[i], SINGLE);
+    }
+  }
+
+  private static void identify(String tag, String identifier)
+  {
+    IDENTIFIERS.put(tag, new String[] {identifier});
+  }
+
+  /**
+   * Decides which of two conflicting elements is kept.
+   */
+  public abstract static class Strategy
+  {
+    /**
+     * Keep the element that was read first.
+     */
+    public static final Strategy PRESERVE = new Strategy()
+    {
+      public String merge(String left, String right)
+      {
+        return left;
+      }
+    };
+
+    /**
+     * Keep the element that was read last.
+     */
+    public static final Strategy OVERWRITE = new Strategy()
+    {
+      public String merge(String left, String right)
+      {
+        return right;
+      }
+    };
+
+    /**
+     * @param key the identifier value shared by the conflicting elements
+     * @return the strategy that actually applies to <code>key</code>
+     */
+    public Strategy resolve(String key)
+    {
+      return this;
+    }
+
+    /**
+     * @param left the element read first, serialised
+     * @param right the element read last, serialised
+     * @return the element to keep, serialised
+     */
+    public abstract String merge(String left, String right) throws MergeException;
+  }
+
+  /**
+   * Picks a strategy by identifier value.
+   */
+  public static class ChooseByName extends Strategy
+  {
+    private Strategy defaultStrategy;
+    private Map choices = new HashMap();
+
+    public ChooseByName(Strategy defaultStrategy)
+    {
+      this.defaultStrategy = defaultStrategy;
+    }
+
+    public void addStrategyForName(String name, Strategy strategy)
+    {
+      this.choices.put(name, strategy);
+    }
+
+    public Strategy resolve(String key)
+    {
+      Strategy strategy = (Strategy)this.choices.get(key);
+      return (strategy == null ? this.defaultStrategy : strategy).resolve(key);
+    }
+
+    public String merge(String left, String right) throws MergeException
+    {
+      return this.defaultStrategy.merge(left, right);
+    }
+  }
+
+  /**
+   * Builds a new element from a template.
+   */
+  public static class NodeMerge extends Strategy
+  {
+    private static final String LEFT = "$left:";
+    private static final String RIGHT = "$right:";
+
+    private Element template;
+
+    /**
+     * @param template the template element, such as
+     *        <code>&lt;servlet&gt;&lt;servlet-name&gt;$left:servlet-name&lt;/servlet-name&gt;
+     *        ...&lt;/servlet&gt;</code>
+     */
+    public NodeMerge(String template) throws MergeException
+    {
+      this.template = parse(template);
+    }
+
+    public String merge(String left, String right) throws MergeException
+    {
+      StringBuffer out = new StringBuffer();
+      apply(this.template, parse(left), parse(right), out);
+      return out.toString();
+    }
+
+    private void apply(Element template, Element left, Element right, StringBuffer out)
+    {
+      out.append('<').append(template.getTagName());
+      appendAttributes(template, out);
+      out.append('>');
+      for(Node child = template.getFirstChild(); child != null; child = child.getNextSibling())
+      {
+        if( child.getNodeType() != Node.ELEMENT_NODE )
+        {
+          serialize(child, out);
+          continue;
+        }
+
+        String reference = getText((Element)child).trim();
+        if( reference.startsWith(LEFT) )
+        {
+          copyChildren(left, reference.substring(LEFT.length()), out);
+        }
+        else if( reference.startsWith(RIGHT) )
+        {
+          copyChildren(right, reference.substring(RIGHT.length()), out);
+        }
+        else
+        {
+          apply((Element)child, left, right, out);
+        }
+      }
+      out.append("</").append(template.getTagName()).append('>');
+    }
+
+    private static void copyChildren(Element source, String name, StringBuffer out)
+    {
+      for(Node child = source.getFirstChild(); child != null; child = child.getNextSibling())
+      {
+        if( child.getNodeType() == Node.ELEMENT_NODE
+          && ((Element)child).getTagName().equals(name) )
+        {
+          serialize(child, out);
+        }
+      }
+    }
+
+    private static String getText(Element element)
+    {
+      StringBuffer text = new StringBuffer();
+      for(Node child = element.getFirstChild(); child != null; child = child.getNextSibling())
+      {
+        if( child.getNodeType() == Node.ELEMENT_NODE )
+        {
+          return "";
+        }
+        if( child.getNodeType() == Node.TEXT_NODE
+          || child.getNodeType() == Node.CDATA_SECTION_NODE )
+        {
+          text.append(child.getNodeValue());
+        }
+      }
+      return text.toString();
+    }
+
+    private static Element parse(String fragment) throws MergeException
+    {
+      try
+      {
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        return builder.parse(new InputSource(new StringReader(fragment))).getDocumentElement();
+      }
+      catch (Exception e)
+      {
+        throw new MergeException("Cannot parse web.xml fragment " + fragment, e);
+      }
+    }
+
+    private static void serialize(Node node, StringBuffer out)
+    {
+      switch( node.getNodeType() )
+      {
+        case Node.ELEMENT_NODE:
+          Element element = (Element)node;
+          out.append('<').append(element.getTagName());
+          appendAttributes(element, out);
+          out.append('>');
+          for(Node child = node.getFirstChild(); child != null; child = child.getNextSibling())
+          {
+            serialize(child, out);
+          }
+          out.append("</").append(element.getTagName()).append('>');
+          break;
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+          escape(node.getNodeValue(), out);
+          break;
+        case Node.COMMENT_NODE:
+          out.append("<!--").append(node.getNodeValue()).append("-->");
+          break;
+        default:
+          break;
+      }
+    }
+
+    private static void appendAttributes(Element element, StringBuffer out)
+    {
+      NamedNodeMap attributes = element.getAttributes();
+      for(int i=0; i<attributes.getLength(); i++)
+      {
+        Node attribute = attributes.item(i);
+        out.append(' ').append(attribute.getNodeName()).append("=\"");
+        escape(attribute.getNodeValue(), out);
+        out.append('"');
+      }
+    }
+  }
+
+  /**
+   * A top level element: only its key and its number in the spool are kept in memory.
+   */
+  private static class Fragment
+  {
+    int id;
+
+    Fragment(int id)
+    {
+      this.id = id;
+    }
+  }
+
+  private Map strategies = new HashMap();
+  private Strategy defaultStrategy = Strategy.PRESERVE;
+
+  /**
+   * Fragment lists, by tag name, in the order the tags were first seen.
+   */
+  private Map groups = new LinkedHashMap();
+  private Map keyed = new HashMap();
+  private FragmentSpool spool;
+
+  private String doctype;
+  private String rootStart;
+  private String rootName;
+
+  /**
+   * @param tagName the name of a top level element
+   * @param strategy the strategy for conflicting <code>tagName</code> elements
+   */
+  public void setStrategy(String tagName, Strategy strategy)
+  {
+    this.strategies.put(tagName, strategy);
+  }
+
+  /**
+   * @param defaultStrategy the strategy for the tags that have no strategy of their own
+   */
+  public void setDefaultStrategy(Strategy defaultStrategy)
+  {
+    this.defaultStrategy = defaultStrategy;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void addMergeItem(Object mergeItem) throws MergeException
+  {
+    if( !(mergeItem instanceof InputStream) )
+    {
+      throw new MergeException("The streaming web.xml merger only merges streams, not "
+        + mergeItem);
+    }
+
+    XMLStreamReader reader = null;
+    try
+    {
+      if( this.spool == null )
+      {
+        this.spool = new FragmentSpool();
+      }
+      reader = createInputFactory().createXMLStreamReader((InputStream)mergeItem);
+      int depth = 0;
+      while( reader.hasNext() )
+      {
+        int event = reader.next();
+        if( event == XMLStreamConstants.DTD && this.rootName == null )
+        {
+          this.doctype = reader.getText();
+        }
+        else if( event == XMLStreamConstants.START_ELEMENT )
+        {
+          depth++;
+          if( depth == 1 )
+          {
+            if( this.rootName == null )
+            {
+              StringBuffer start = new StringBuffer();
+              appendStartTag(reader, start);
+              this.rootStart = start.toString();
+              this.rootName = getQName(reader);
+            }
+          }
+          else
+          {
+            readFragment(reader);
+            depth--;
+          }
+        }
+        else if( event == XMLStreamConstants.END_ELEMENT )
+        {
+          depth--;
+        }
+      }
+    }
+    catch (XMLStreamException e)
+    {
+      throw new MergeException("Problem parsing web.xml", e);
+    }
+    catch (IOException e)
+    {
+      throw new MergeException("Problem spooling web.xml", e);
+    }
+    finally
+    {
+      close(reader);
+    }
+  }
+
+  /**
+   * Read a top level element, positioned on its start tag, and merge it.
+   */
+  private void readFragment(XMLStreamReader reader) throws XMLStreamException, IOException,
+    MergeException
+  {
+    String tag = reader.getLocalName();
+    String[] identifiers = (String[])IDENTIFIERS.get(tag);
+    String key = identifiers == SINGLE ? "" : null;
+
+    StringBuffer out = new StringBuffer();
+    appendStartTag(reader, out);
+    int depth = 1;
+    String identifier = null;
+    StringBuffer identifierText = null;
+    while( depth > 0 )
+    {
+      int event = reader.next();
+      switch( event )
+      {
+        case XMLStreamConstants.START_ELEMENT:
+          depth++;
+          appendStartTag(reader, out);
+          if( depth == 2 && key == null && identifiers != null
+            && Arrays.asList(identifiers).contains(reader.getLocalName()) )
+          {
+            identifier = reader.getLocalName();
+            identifierText = new StringBuffer();
+          }
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          if( depth == 2 && identifierText != null )
+          {
+            key = identifiers.length > 1 ? identifier + '=' + identifierText.toString().trim()
+              : identifierText.toString().trim();
+            identifierText = null;
+          }
+          depth--;
+          out.append("</").append(getQName(reader)).append('>');
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          escape(reader.getText(), out);
+          if( identifierText != null )
+          {
+            identifierText.append(reader.getText());
+          }
+          break;
+        case XMLStreamConstants.COMMENT:
+          out.append("<!--").append(reader.getText()).append("-->");
+          break;
+        case XMLStreamConstants.PROCESSING_INSTRUCTION:
+          out.append("<?").append(reader.getPITarget()).append(' ')
+            .append(reader.getPIData()).append("?>");
+          break;
+        default:
+          break;
+      }
+    }
+
+    merge(tag, key, out.toString());
+  }
+
+  private void merge(String tag, String key, String fragment) throws IOException,
+    MergeException
+  {
+    List group = (List)this.groups.get(tag);
+    if( group == null )
+    {
+      group = new ArrayList();
+      this.groups.put(tag, group);
+    }
+
+    if( key == null )
+    {
+      group.add(new Fragment(this.spool.add(fragment)));
+      return;
+    }
+
+    String fullKey = tag + '\n' + key;
+    Fragment existing = (Fragment)this.keyed.get(fullKey);
+    if( existing == null )
+    {
+      existing = new Fragment(this.spool.add(fragment));
+      group.add(existing);
+      this.keyed.put(fullKey, existing);
+      return;
+    }
+
+    Strategy strategy = (Strategy)this.strategies.get(tag);
+    strategy = (strategy == null ? this.defaultStrategy : strategy).resolve(key);
+    if( strategy == Strategy.OVERWRITE )
+    {
+      existing.id = this.spool.add(fragment);
+    }
+    else if( strategy != Strategy.PRESERVE )
+    {
+      String left = this.spool.read(existing.id);
+      String merged = strategy.merge(left, fragment);
+      if( merged != left )
+      {
+        existing.id = this.spool.add(merged);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Object performMerge() throws MergeException
+  {
+    if( this.rootName == null )
+    {
+      return null;
+    }
+
+    try
+    {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      Writer out = new OutputStreamWriter(bytes, "UTF-8");
+      out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+      if( this.doctype != null )
+      {
+        out.write(this.doctype);
+        out.write("\n");
+      }
+      out.write(this.rootStart);
+
+      for(Iterator i = TAG_ORDER.iterator(); i.hasNext();)
+      {
+        write((List)this.groups.remove(i.next()), out);
+      }
+      for(Iterator i = this.groups.values().iterator(); i.hasNext();)
+      {
+        write((List)i.next(), out);
+      }
+
+      out.write("\n</" + this.rootName + ">\n");
+      out.close();
+      return bytes.toByteArray();
+    }
+    catch (IOException e)
+    {
+      throw new MergeException("Problem writing the merged web.xml", e);
+    }
+    finally
+    {
+      try
+      {
+        this.spool.close();
+      }
+      catch (IOException e)
+      {
+        // The spool is a temporary file, deleted on exit anyway
+      }
+    }
+  }
+
+  private void write(List group, Writer out) throws IOException
+  {
+    if( group == null )
+    {
+      return;
+    }
+    for(Iterator i = group.iterator(); i.hasNext();)
+    {
+      out.write("\n  ");
+      out.write(this.spool.read(((Fragment)i.next()).id));
+    }
+  }
+
+  private static XMLInputFactory createInputFactory()
+  {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    // Never fetch the web.xml DTD: it is only copied to the merged descriptor
+    factory.setXMLResolver(new XMLResolver()
+    {
+      public Object resolveEntity(String publicId, String systemId, String baseUri,
+        String namespace)
+      {
+        return new ByteArrayInputStream(new byte[0]);
+      }
+    });
+    return factory;
+  }
+
+  private static void close(XMLStreamReader reader)
+  {
+    if( reader != null )
+    {
+      try
+      {
+        reader.close();
+      }
+      catch (XMLStreamException e)
+      {
+        // Nothing more can be read anyway
+      }
+    }
+  }
+
+  private static String getQName(XMLStreamReader reader)
+  {
+    String prefix = reader.getPrefix();
+    return prefix == null || prefix.length() == 0 ? reader.getLocalName()
+      : prefix + ':' + reader.getLocalName();
+  }
+
+  private static void appendStartTag(XMLStreamReader reader, StringBuffer out)
+  {
+    out.append('<').append(getQName(reader));
+    for(int i=0; i<reader.getNamespaceCount(); i++)
+    {
+      String prefix = reader.getNamespacePrefix(i);
+      out.append(prefix == null || prefix.length() == 0 ? " xmlns" : " xmlns:" + prefix);
+      out.append("=\"");
+      escape(reader.getNamespaceURI(i), out);
+      out.append('"');
+    }
+    for(int i=0; i<reader.getAttributeCount(); i++)
+    {
+      String prefix = reader.getAttributePrefix(i);
+      out.append(' ');
+      if( prefix != null && prefix.length() > 0 )
+      {
+        out.append(prefix).append(':');
+      }
+      out.append(reader.getAttributeLocalName(i)).append("=\"");
+      escape(reader.getAttributeValue(i), out);
+      out.append('"');
+    }
+    out.append('>');
+  }
+
+  static void escape(String text, StringBuffer out)
+  {
+    for(int i=0; i<text.length(); i++)
+    {
+      char c = text.charAt(i);
+      switch( c )
+      {
+        case '<':
+          out.append("&lt;");
+          break;
+        case '>':
+          out.append("&gt;");
+          break;
+        case '&':
+          out.append("&amp;");
+          break;
+        case '"':
+          out.append("&quot;");
+          break;
+        default:
+          out.append(c);
+      }
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2005-2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.merge;
+
+import java.io.InputStream;
+
+import org.codehaus.cargo.module.merge.MergeException;
+import org.codehaus.cargo.module.merge.MergeProcessor;
+import org.codehaus.cargo.module.webapp.WebXmlIo;
+
+/**
+ * Adapter that parses web.xml streams before handing them to a web.xml merge processor
+ * (normally the {@link org.codehaus.cargo.module.webapp.merge.WebXmlMerger} of a
+ * {@link org.codehaus.cargo.module.webapp.merge.WarArchiveMerger}).
+ *
+ * @version $Id:
+ */
+public class WebXmlStreamAdapter implements MergeProcessor
+{
+  MergeProcessor next;
+
+  public WebXmlStreamAdapter(MergeProcessor next)
+  {
+    this.next = next;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void addMergeItem(Object mergeItem) throws MergeException
+  {
+    if( mergeItem instanceof InputStream )
+    {
+      try
+      {
+        next.addMergeItem(WebXmlIo.parseWebXml((InputStream)mergeItem, null));
+      }
+      catch (MergeException e)
+      {
+        throw e;
+      }
+      catch (Exception e)
+      {
+        throw new MergeException("Problem parsing web.xml", e);
+      }
+    }
+    else
+    {
+      next.addMergeItem(mergeItem);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Object performMerge() throws MergeException
+  {
+    return next.performMerge();
+  }
+
+}
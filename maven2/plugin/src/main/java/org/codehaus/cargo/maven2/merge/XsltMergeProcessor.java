@@ -0,0 +1,381 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.merge;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.stax.StAXResult;
+import javax.xml.transform.stax.StAXSource;
+
+import org.codehaus.cargo.module.merge.MergeException;
+import org.codehaus.cargo.module.merge.MergeProcessor;
+import org.jdom.Document;
+import org.jdom.input.SAXBuilder;
+import org.jdom.output.XMLOutputter;
+
+/**
+ * Merge processor applying a compiled XSLT stylesheet.
+ * <p/>
+ * The items are folded pairwise: the stylesheet is applied to a document made of the result so
+ * far and of the next item,
+ * <code>&lt;merge&gt;&lt;left&gt;...&lt;/left&gt;&lt;right&gt;...&lt;/right&gt;&lt;/merge&gt;</code>,
+ * and its output becomes the left side of the next step. The first item is the initial result.
+ * <p/>
+ * That document is never built: it is streamed to the transformer as StAX events, and the
+ * output is written with a StAX writer, so only the serialised result of each step is kept
+ * between items. Items can be {@link InputStream}s, byte arrays or JDOM {@link Document}s;
+ * {@link #performMerge()} returns a {@link Document} if the items were documents, and the
+ * merged bytes otherwise.
+ *
+ * @version $Id:
+ */
+public class XsltMergeProcessor implements MergeProcessor
+{
+  private static final String MERGE = "merge";
+  private static final String LEFT = "left";
+  private static final String RIGHT = "right";
+
+  private Templates templates;
+  private byte[] merged;
+  private boolean documents;
+
+  /**
+   * @param templates the compiled stylesheet, see {@link XsltTemplatesCache}
+   */
+  public XsltMergeProcessor(Templates templates)
+  {
+    this.templates = templates;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void addMergeItem(Object mergeItem) throws MergeException
+  {
+    byte[] item = toBytes(mergeItem);
+    if( this.merged == null )
+    {
+      this.merged = item;
+      return;
+    }
+
+    try
+    {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(this.merged.length + item.length);
+      XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+      Transformer transformer = this.templates.newTransformer();
+      transformer.transform(new StAXSource(new MergeDocumentReader(this.merged, item)),
+        new StAXResult(writer));
+      writer.close();
+      this.merged = out.toByteArray();
+    }
+    catch (Exception e)
+    {
+      throw new MergeException("Problem applying the XSLT merge", e);
+    }
+  }
+
+  private byte[] toBytes(Object mergeItem) throws MergeException
+  {
+    try
+    {
+      if( mergeItem instanceof byte[] )
+      {
+        return (byte[])mergeItem;
+      }
+      else if( mergeItem instanceof Document )
+      {
+        this.documents = true;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new XMLOutputter().output((Document)mergeItem, out);
+        return out.toByteArray();
+      }
+      else if( mergeItem instanceof InputStream )
+      {
+        InputStream in = (InputStream)mergeItem;
+        try
+        {
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          byte[] buffer = new byte[8192];
+          int read;
+          while( (read = in.read(buffer)) != -1 )
+          {
+            out.write(buffer, 0, read);
+          }
+          return out.toByteArray();
+        }
+        finally
+        {
+          in.close();
+        }
+      }
+    }
+    catch (IOException e)
+    {
+      throw new MergeException("Problem reading the XSLT merge item", e);
+    }
+    throw new MergeException("Don't know how to merge " + mergeItem);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Object performMerge() throws MergeException
+  {
+    if( this.merged == null || !this.documents )
+    {
+      return this.merged;
+    }
+
+    try
+    {
+      return new SAXBuilder().build(new ByteArrayInputStream(this.merged));
+    }
+    catch (Exception e)
+    {
+      throw new MergeException("Problem parsing the XSLT merge result", e);
+    }
+  }
+
+  /**
+   * Event reader presenting two documents as
+   * <code>&lt;merge&gt;&lt;left&gt;...&lt;/left&gt;&lt;right&gt;...&lt;/right&gt;&lt;/merge&gt;</code>.
+   */
+  static class MergeDocumentReader implements XMLEventReader
+  {
+    private XMLEventFactory events = XMLEventFactory.newInstance();
+    private LinkedList queue = new LinkedList();
+    private XMLEventReader current;
+    private byte[] right;
+    private int step;
+    private int depth;
+
+    MergeDocumentReader(byte[] left, byte[] right) throws XMLStreamException
+    {
+      this.right = right;
+      // StAXSource wants to know where the document comes from
+      this.events.setLocation(new Location()
+      {
+        public int getLineNumber()
+        {
+          return -1;
+        }
+
+        public int getColumnNumber()
+        {
+          return -1;
+        }
+
+        public int getCharacterOffset()
+        {
+          return -1;
+        }
+
+        public String getPublicId()
+        {
+          return null;
+        }
+
+        public String getSystemId()
+        {
+          return null;
+        }
+      });
+      this.queue.add(this.events.createStartDocument());
+      this.queue.add(this.events.createStartElement("", "", MERGE));
+      this.queue.add(this.events.createStartElement("", "", LEFT));
+      this.current = createReader(left);
+    }
+
+    private static XMLEventReader createReader(byte[] document) throws XMLStreamException
+    {
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+      factory.setXMLResolver(new XMLResolver()
+      {
+        public Object resolveEntity(String publicId, String systemId, String baseUri,
+          String namespace)
+        {
+          return new ByteArrayInputStream(new byte[0]);
+        }
+      });
+      return factory.createXMLEventReader(new ByteArrayInputStream(document));
+    }
+
+    /**
+     * Make sure the queue holds the next event, if there is one.
+     */
+    private void fill() throws XMLStreamException
+    {
+      while( this.queue.isEmpty() && this.step < 3 )
+      {
+        if( this.current != null && this.current.hasNext() )
+        {
+          XMLEvent event = this.current.nextEvent();
+          if( event.isStartElement() )
+          {
+            this.depth++;
+          }
+          else if( event.isEndElement() )
+          {
+            this.depth--;
+          }
+          else if( this.depth == 0 && !event.isProcessingInstruction()
+            && event.getEventType() != XMLEvent.COMMENT )
+          {
+            // Document events, DTD and whitespace outside of the root element
+            continue;
+          }
+          this.queue.add(event);
+          continue;
+        }
+
+        if( this.current != null )
+        {
+          this.current.close();
+          this.current = null;
+        }
+        if( this.step == 0 )
+        {
+          this.queue.add(this.events.createEndElement("", "", LEFT));
+          this.queue.add(this.events.createStartElement("", "", RIGHT));
+          this.current = createReader(this.right);
+        }
+        else if( this.step == 1 )
+        {
+          this.queue.add(this.events.createEndElement("", "", RIGHT));
+          this.queue.add(this.events.createEndElement("", "", MERGE));
+          this.queue.add(this.events.createEndDocument());
+        }
+        this.step++;
+      }
+    }
+
+    public boolean hasNext()
+    {
+      try
+      {
+        fill();
+      }
+      catch (XMLStreamException e)
+      {
+        throw new IllegalStateException(e.getMessage());
+      }
+      return !this.queue.isEmpty();
+    }
+
+    public XMLEvent nextEvent() throws XMLStreamException
+    {
+      fill();
+      if( this.queue.isEmpty() )
+      {
+        throw new NoSuchElementException();
+      }
+      return (XMLEvent)this.queue.removeFirst();
+    }
+
+    public Object next()
+    {
+      try
+      {
+        return nextEvent();
+      }
+      catch (XMLStreamException e)
+      {
+        throw new IllegalStateException(e.getMessage());
+      }
+    }
+
+    public XMLEvent peek() throws XMLStreamException
+    {
+      fill();
+      return this.queue.isEmpty() ? null : (XMLEvent)this.queue.getFirst();
+    }
+
+    public String getElementText() throws XMLStreamException
+    {
+      StringBuffer text = new StringBuffer();
+      for(XMLEvent event = nextEvent(); !event.isEndElement(); event = nextEvent())
+      {
+        if( event.isCharacters() )
+        {
+          text.append(event.asCharacters().getData());
+        }
+        else if( event.isStartElement() )
+        {
+          throw new XMLStreamException("Element text expected, found an element");
+        }
+      }
+      return text.toString();
+    }
+
+    public XMLEvent nextTag() throws XMLStreamException
+    {
+      XMLEvent event = nextEvent();
+      while( (event.isCharacters() && event.asCharacters().isWhiteSpace())
+        || event.isProcessingInstruction() || event.getEventType() == XMLEvent.COMMENT )
+      {
+        event = nextEvent();
+      }
+      if( !event.isStartElement() && !event.isEndElement() )
+      {
+        throw new XMLStreamException("Start or end tag expected, found " + event);
+      }
+      return event;
+    }
+
+    public Object getProperty(String name)
+    {
+      return null;
+    }
+
+    public void close() throws XMLStreamException
+    {
+      if( this.current != null )
+      {
+        this.current.close();
+        this.current = null;
+      }
+      this.step = 3;
+      this.queue.clear();
+    }
+
+    public void remove()
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.merge;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ * Compiled XSLT stylesheets, shared by all the merges of a build. The cache lives as long as
+ * the plugin class loader, so the modules of a reactor build reuse each other's stylesheets.
+ * An entry is compiled again when the stylesheet file changes.
+ *
+ * @version $Id:
+ */
+public final class XsltTemplatesCache
+{
+  /**
+   * Compiled stylesheet, with the date and size of the file it was compiled from.
+   */
+  private static class Entry
+  {
+    long lastModified;
+    long length;
+    Templates templates;
+  }
+
+  private static final Map CACHE = new HashMap();
+
+  private XsltTemplatesCache()
+  {
+    // Utility class
+  }
+
+  /**
+   * @param stylesheet an XSLT file
+   * @return the compiled stylesheet, thread safe
+   * @throws TransformerConfigurationException if the stylesheet cannot be compiled
+   * @throws IOException if the path of the stylesheet cannot be resolved
+   */
+  public static Templates getTemplates(File stylesheet)
+    throws TransformerConfigurationException, IOException
+  {
+    String key = stylesheet.getCanonicalPath();
+    synchronized( CACHE )
+    {
+      Entry entry = (Entry)CACHE.get(key);
+      if( entry == null || entry.lastModified != stylesheet.lastModified()
+        || entry.length != stylesheet.length() )
+      {
+        entry = new Entry();
+        entry.lastModified = stylesheet.lastModified();
+        entry.length = stylesheet.length();
+        entry.templates = TransformerFactory.newInstance().newTemplates(
+          new StreamSource(stylesheet));
+        CACHE.put(key, entry);
+      }
+      return entry.templates;
+    }
+  }
+
+  /**
+   * Forget all the compiled stylesheets.
+   */
+  public static void clear()
+  {
+    synchronized( CACHE )
+    {
+      CACHE.clear();
+    }
+  }
+}
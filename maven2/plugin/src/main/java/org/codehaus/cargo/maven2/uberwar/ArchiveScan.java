@@ -0,0 +1,291 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.uberwar;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.codehaus.cargo.maven2.util.Digests;
+import org.codehaus.cargo.maven2.util.ZipIndex;
+
+/**
+ * What the ingestion stage of a {@link StreamingWarAssembler} knows about one source archive:
+ * the entries of a WAR, in archive order, together with the content of the entries that have to
+ * be merged, or the size and CRC of a JAR going into <code>WEB-INF/lib</code>.
+ * <p/>
+ * Scans are independent of each other, so they can be built concurrently. They hold no merge
+ * state: merge items are only handed to the merge processors afterwards, in merge order.
+ * <p/>
+ * When the fingerprint of the archive in the manifest of the previous build still matches, the
+ * scan is taken from the manifest and the archive is only opened if one of its entries is
+ * actually needed.
+ *
+ * @version $Id$
+ */
+class ArchiveScan
+{
+    static final String WAR = "war";
+
+    static final String JAR = "jar";
+
+    private File file;
+
+    private ZipIndex index;
+
+    private UberWarManifest.Input input = new UberWarManifest.Input();
+
+    private Map mergeItems = new HashMap();
+
+    private boolean fromManifest;
+
+    private ArchiveScan(File file, String kind)
+    {
+        this.file = file;
+        this.input.kind = kind;
+        this.input.path = file.getAbsolutePath();
+        this.input.length = file.length();
+        this.input.lastModified = file.lastModified();
+        this.input.sha1 = "";
+    }
+
+    /**
+     * List the entries of a WAR and read the ones that are merged. Only the central directory
+     * and the merged entries are read. The WAR is left open so that its entries can be copied
+     * later on; it is closed by {@link #close()}.
+     *
+     * @param war the WAR to scan
+     * @param mergePaths the paths of the files to merge
+     * @param previous the manifest of the previous build, or null if the WAR doesn't need to be
+     *        fingerprinted
+     * @return the scan of <code>war</code>
+     * @throws IOException if the WAR cannot be read
+     */
+    static ArchiveScan scanWar(File war, Set mergePaths, UberWarManifest previous)
+        throws IOException
+    {
+        ArchiveScan scan = new ArchiveScan(war, WAR);
+        if (previous != null && scan.reuse(previous, true))
+        {
+            return scan;
+        }
+
+        scan.index = new ZipIndex(war);
+        try
+        {
+            scan.input.entries.addAll(scan.index.getEntries());
+            for (Iterator i = mergePaths.iterator(); i.hasNext();)
+            {
+                String path = (String) i.next();
+                ZipIndex.Entry entry = scan.index.getEntry(path);
+                if (entry != null)
+                {
+                    scan.mergeItems.put(path, scan.index.read(entry));
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            scan.close();
+            throw e;
+        }
+        return scan;
+    }
+
+    /**
+     * Compute the CRC of a JAR so that it can be stored in the uberwar without being
+     * compressed again.
+     *
+     * @param jar the JAR to scan
+     * @param previous the manifest of the previous build, or null if the JAR doesn't need to be
+     *        fingerprinted
+     * @return the scan of <code>jar</code>
+     * @throws IOException if the JAR cannot be read
+     */
+    static ArchiveScan scanJar(File jar, UberWarManifest previous) throws IOException
+    {
+        ArchiveScan scan = new ArchiveScan(jar, JAR);
+        if (previous != null && scan.reuse(previous, false))
+        {
+            return scan;
+        }
+
+        MessageDigest digest = null;
+        if (previous != null && scan.input.sha1.length() == 0)
+        {
+            digest = Digests.newDigest(Digests.SHA1);
+        }
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[StreamingWarAssembler.BUFFER_SIZE];
+        InputStream in = new FileInputStream(jar);
+        try
+        {
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                crc.update(buffer, 0, read);
+                if (digest != null)
+                {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        scan.input.crc = crc.getValue();
+        if (digest != null)
+        {
+            scan.input.sha1 = Digests.toHex(digest.digest());
+        }
+        return scan;
+    }
+
+    /**
+     * Take the scan from the previous manifest if the archive hasn't changed: either its size
+     * and date are the same, or its content is.
+     *
+     * @return true if the scan was taken from the manifest
+     */
+    private boolean reuse(UberWarManifest previous, boolean hashWhenChanged) throws IOException
+    {
+        UberWarManifest.Input known = previous.getInput(this.input.path, this.input.kind);
+        if (known != null && known.length == this.input.length
+            && known.lastModified == this.input.lastModified)
+        {
+            copyFrom(known);
+            return true;
+        }
+
+        if (hashWhenChanged || (known != null && known.length == this.input.length))
+        {
+            this.input.sha1 = Digests.digest(this.file, Digests.SHA1);
+            if (known != null && known.sha1.equals(this.input.sha1))
+            {
+                copyFrom(known);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void copyFrom(UberWarManifest.Input known)
+    {
+        this.input.sha1 = known.sha1;
+        this.input.crc = known.crc;
+        this.input.entries.addAll(known.entries);
+        this.fromManifest = true;
+    }
+
+    File getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * @return the fingerprint of the archive, for the manifest of this build
+     */
+    UberWarManifest.Input getInput()
+    {
+        return this.input;
+    }
+
+    /**
+     * @return true if nothing was read from the archive because it is unchanged since the
+     *         previous build
+     */
+    boolean isFromManifest()
+    {
+        return this.fromManifest;
+    }
+
+    /**
+     * @return the index of the WAR, opened if needed
+     * @throws IOException if the WAR cannot be opened
+     */
+    ZipIndex getIndex() throws IOException
+    {
+        if (this.index == null)
+        {
+            this.index = new ZipIndex(this.file);
+        }
+        return this.index;
+    }
+
+    /**
+     * @return the {@link ZipIndex.Entry} list of a WAR, in archive order
+     */
+    List getEntries()
+    {
+        return this.input.entries;
+    }
+
+    /**
+     * @param path the path of a merged file
+     * @return the content of that file in this WAR, or null if the WAR doesn't contain it
+     * @throws IOException if the WAR cannot be read
+     */
+    byte[] getMergeItem(String path) throws IOException
+    {
+        byte[] item = (byte[]) this.mergeItems.get(path);
+        if (item == null && this.fromManifest)
+        {
+            for (Iterator i = this.input.entries.iterator(); i.hasNext();)
+            {
+                ZipIndex.Entry entry = (ZipIndex.Entry) i.next();
+                if (entry.getName().equals(path))
+                {
+                    item = getIndex().read(getIndex().getEntry(path));
+                    this.mergeItems.put(path, item);
+                    break;
+                }
+            }
+        }
+        return item;
+    }
+
+    long getCrc()
+    {
+        return this.input.crc;
+    }
+
+    long getSize()
+    {
+        return this.input.length;
+    }
+
+    void close() throws IOException
+    {
+        if (this.index != null)
+        {
+            this.index.close();
+            this.index = null;
+        }
+    }
+}
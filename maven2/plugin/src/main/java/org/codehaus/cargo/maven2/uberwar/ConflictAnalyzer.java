@@ -0,0 +1,340 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.uberwar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.cargo.maven2.util.ZipIndex;
+
+/**
+ * Finds the classes, and optionally the resources, that are present with different contents in
+ * several elements of the classpath of a WAR: <code>WEB-INF/classes</code> and the JARs of
+ * <code>WEB-INF/lib</code>. Which copy a web application sees then depends on the class loader,
+ * and such conflicts usually show up at runtime only.
+ * <p/>
+ * Nothing is decompressed: copies are compared by the CRC and size recorded in the central
+ * directory of each archive. The central directories of the JARs are read on a pool of worker
+ * threads, see {@link #setThreads(int)}, and the conflicts are reported in the order they are
+ * found along the classpath.
+ *
+ * @version $Id$
+ */
+public class ConflictAnalyzer
+{
+    /**
+     * Report conflicts as warnings.
+     */
+    public static final String WARN = "warn";
+
+    /**
+     * Fail the build when there are conflicts.
+     */
+    public static final String FAIL = "fail";
+
+    /**
+     * Don't look for conflicts.
+     */
+    public static final String IGNORE = "ignore";
+
+    private static final String CLASSES = "WEB-INF/classes/";
+
+    /**
+     * A file present with different contents in several elements of the classpath.
+     */
+    public static class Conflict
+    {
+        private String path;
+
+        private List locations = new ArrayList();
+
+        Conflict(String path, String location)
+        {
+            this.path = path;
+            this.locations.add(location);
+        }
+
+        /**
+         * @return the path of the file, relative to the classpath
+         */
+        public String getPath()
+        {
+            return this.path;
+        }
+
+        /**
+         * @return the classpath elements holding a different copy of the file, the first one
+         *         first
+         */
+        public List getLocations()
+        {
+            return Collections.unmodifiableList(this.locations);
+        }
+
+        public String toString()
+        {
+            return this.path + " " + this.locations;
+        }
+    }
+
+    /**
+     * A copy of a file in an element of the classpath.
+     */
+    private static class Copy
+    {
+        String location;
+
+        long crc;
+
+        long size;
+
+        Copy(String location, ZipIndex.Entry entry)
+        {
+            this.location = location;
+            this.crc = entry.getCrc();
+            this.size = entry.getSize();
+        }
+    }
+
+    private Log log;
+
+    private int threads = 1;
+
+    private boolean resources;
+
+    /**
+     * @param log where to report progress
+     */
+    public ConflictAnalyzer(Log log)
+    {
+        this.log = log;
+    }
+
+    /**
+     * @param threads the maximum number of JARs read at the same time
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param resources whether resources are checked as well as classes. Manifests, signatures
+     *        and Maven descriptors are never checked.
+     */
+    public void setResources(boolean resources)
+    {
+        this.resources = resources;
+    }
+
+    /**
+     * @param war the WAR to analyse
+     * @return the {@link Conflict}s, in the order they are found along the classpath
+     * @throws IOException if the WAR or one of its JARs cannot be read
+     */
+    public List analyze(File war) throws IOException
+    {
+        // Not mapped, as the WAR is overwritten by the next build
+        ZipIndex index = new ZipIndex(war, false);
+        try
+        {
+            List locations = new ArrayList();
+            List classes = new ArrayList();
+            List jars = new ArrayList();
+            for (Iterator i = index.getEntries().iterator(); i.hasNext();)
+            {
+                ZipIndex.Entry entry = (ZipIndex.Entry) i.next();
+                String name = entry.getName();
+                if (name.startsWith(CLASSES) && !entry.isDirectory())
+                {
+                    classes.add(new ZipIndex.Entry(name.substring(CLASSES.length()),
+                        entry.getMethod(), entry.getDosTime(), entry.getCrc(),
+                        entry.getCompressedSize(), entry.getSize()));
+                }
+                else if (StreamingWarAssembler.isLibraryJar(name))
+                {
+                    jars.add(entry);
+                }
+            }
+
+            Map entries = new LinkedHashMap();
+            if (!classes.isEmpty())
+            {
+                entries.put(CLASSES.substring(0, CLASSES.length() - 1), classes);
+            }
+            readJars(index, jars, entries);
+            this.log.debug("Looking for conflicts in " + entries.size()
+                + " classpath elements of [" + war + "]");
+            return findConflicts(entries);
+        }
+        finally
+        {
+            index.close();
+        }
+    }
+
+    /**
+     * Read the central directories of <code>jars</code> and add their entries to
+     * <code>entries</code>, by JAR path, in the order of <code>jars</code>.
+     */
+    private void readJars(final ZipIndex index, List jars, Map entries) throws IOException
+    {
+        if (jars.isEmpty())
+        {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.threads,
+            jars.size()));
+        try
+        {
+            List futures = new ArrayList();
+            for (Iterator i = jars.iterator(); i.hasNext();)
+            {
+                final ZipIndex.Entry jar = (ZipIndex.Entry) i.next();
+                futures.add(executor.submit(new Callable()
+                {
+                    public Object call() throws IOException
+                    {
+                        return index.readNestedEntries(jar);
+                    }
+                }));
+            }
+            for (int i = 0; i < jars.size(); i++)
+            {
+                entries.put(((ZipIndex.Entry) jars.get(i)).getName(),
+                    get((Future) futures.get(i)));
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List get(Future future) throws IOException
+    {
+        try
+        {
+            return (List) future.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw (IOException) new IOException("Cannot read a JAR").initCause(cause);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading JARs");
+        }
+    }
+
+    /**
+     * @param entries the {@link ZipIndex.Entry} lists of the classpath elements, by element, in
+     *        classpath order
+     */
+    private List findConflicts(Map entries)
+    {
+        Map firstCopies = new HashMap();
+        Map conflicts = new LinkedHashMap();
+        for (Iterator i = entries.entrySet().iterator(); i.hasNext();)
+        {
+            Map.Entry element = (Map.Entry) i.next();
+            String location = (String) element.getKey();
+            for (Iterator j = ((List) element.getValue()).iterator(); j.hasNext();)
+            {
+                ZipIndex.Entry entry = (ZipIndex.Entry) j.next();
+                String path = entry.getName();
+                if (!isChecked(entry))
+                {
+                    continue;
+                }
+
+                Copy first = (Copy) firstCopies.get(path);
+                if (first == null)
+                {
+                    firstCopies.put(path, new Copy(location, entry));
+                }
+                else if (!first.location.equals(location)
+                    && (first.crc != entry.getCrc() || first.size != entry.getSize()))
+                {
+                    Conflict conflict = (Conflict) conflicts.get(path);
+                    if (conflict == null)
+                    {
+                        conflict = new Conflict(path, first.location);
+                        conflicts.put(path, conflict);
+                    }
+                    if (!conflict.locations.contains(location))
+                    {
+                        conflict.locations.add(location);
+                    }
+                }
+            }
+        }
+        return new ArrayList(conflicts.values());
+    }
+
+    private boolean isChecked(ZipIndex.Entry entry)
+    {
+        String path = entry.getName();
+        if (entry.isDirectory())
+        {
+            return false;
+        }
+        if (path.endsWith(".class"))
+        {
+            return true;
+        }
+        if (!this.resources)
+        {
+            return false;
+        }
+        if (path.startsWith("META-INF/"))
+        {
+            String upper = path.toUpperCase();
+            return !upper.equals("META-INF/MANIFEST.MF") && !upper.equals("META-INF/INDEX.LIST")
+                && !upper.endsWith(".SF") && !upper.endsWith(".RSA") && !upper.endsWith(".DSA")
+                && !path.startsWith("META-INF/maven/");
+        }
+        return true;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.uberwar;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.codehaus.cargo.module.merge.MergeException;
+import org.codehaus.cargo.module.merge.MergeProcessor;
+
+/**
+ * Runs the merges of an uberwar. Each file is merged by a single processor, and the merges of
+ * different files (say web.xml, a Spring context and a TLD) run concurrently, as they share no
+ * state.
+ * <p/>
+ * Each merge is handed its items up front, so that the source archives are only read from the
+ * calling thread, and {@link #run()} returns the merged files in scheduling order: the output
+ * does not depend on the number of threads.
+ *
+ * @version $Id$
+ */
+class MergeScheduler
+{
+    /**
+     * A merge processor with the items it merges.
+     */
+    private static class Task
+    {
+        MergeProcessor processor;
+
+        List items;
+
+        Task(MergeProcessor processor, List items)
+        {
+            this.processor = processor;
+            this.items = items;
+        }
+    }
+
+    private int threads;
+
+    /**
+     * {@link Task}s, by path of the merged file, in scheduling order.
+     */
+    private Map tasks = new LinkedHashMap();
+
+    /**
+     * @param threads the maximum number of merges run at the same time
+     */
+    MergeScheduler(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param path the path of the merged file, which must not be scheduled already
+     * @param processor the processor merging it
+     * @param items the content of the file in each source WAR (byte arrays), in merge order
+     */
+    void schedule(String path, MergeProcessor processor, List items)
+    {
+        if (this.tasks.containsKey(path))
+        {
+            throw new IllegalStateException("[" + path + "] is already merged");
+        }
+        this.tasks.put(path, new Task(processor, items));
+    }
+
+    /**
+     * Run all the merges.
+     *
+     * @return the content of each merged file (byte arrays), by path, in scheduling order.
+     *         Files whose merge returned nothing are left out.
+     * @throws MergeException if one of the merges fails
+     * @throws IOException if the result of a merge cannot be serialised
+     */
+    Map run() throws MergeException, IOException
+    {
+        Map results = new LinkedHashMap();
+        if (this.tasks.isEmpty())
+        {
+            return results;
+        }
+
+        ExecutorService executor =
+            Executors.newFixedThreadPool(Math.min(this.threads, this.tasks.size()));
+        try
+        {
+            Map futures = new LinkedHashMap();
+            for (Iterator i = this.tasks.entrySet().iterator(); i.hasNext();)
+            {
+                Map.Entry entry = (Map.Entry) i.next();
+                final String path = (String) entry.getKey();
+                final Task task = (Task) entry.getValue();
+                futures.put(path, executor.submit(new Callable()
+                {
+                    public Object call() throws MergeException, IOException
+                    {
+                        return merge(path, task);
+                    }
+                }));
+            }
+
+            for (Iterator i = futures.entrySet().iterator(); i.hasNext();)
+            {
+                Map.Entry future = (Map.Entry) i.next();
+                byte[] merged = get((Future) future.getValue());
+                if (merged != null)
+                {
+                    results.put(future.getKey(), merged);
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private static byte[] merge(String path, Task task) throws MergeException, IOException
+    {
+        for (Iterator i = task.items.iterator(); i.hasNext();)
+        {
+            task.processor.addMergeItem(new ByteArrayInputStream((byte[]) i.next()));
+        }
+        Object merged = task.processor.performMerge();
+        return merged == null ? null : StreamingWarAssembler.toBytes(path, merged);
+    }
+
+    private static byte[] get(Future future) throws MergeException, IOException
+    {
+        try
+        {
+            return (byte[]) future.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof MergeException)
+            {
+                throw (MergeException) cause;
+            }
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new MergeException("Merge failed", cause);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MergeException("Interrupted while merging");
+        }
+    }
+}
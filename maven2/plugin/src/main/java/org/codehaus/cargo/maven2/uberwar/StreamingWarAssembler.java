@@ -0,0 +1,652 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.uberwar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.cargo.maven2.util.Digests;
+import org.codehaus.cargo.maven2.util.RecordFiles;
+import org.codehaus.cargo.maven2.util.ZipIndex;
+import org.codehaus.cargo.maven2.util.ZipWriter;
+import org.codehaus.cargo.module.merge.MergeException;
+import org.codehaus.cargo.module.merge.MergeProcessor;
+import org.jdom.Document;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+
+/**
+ * Builds an uberwar in a single pass over its source archives.
+ * <p/>
+ * Rather than expanding every WAR and JAR into virtual files (as
+ * {@link org.codehaus.cargo.module.webapp.merge.WarArchiveMerger} does) and storing the result,
+ * each source archive is read once and its entries are written straight to the output
+ * archive. Only the files that have a {@link MergeProcessor} registered against
+ * them are buffered; they are handed to their processor as {@link InputStream}s, in WAR order,
+ * and the merged result is written once all the sources have been read.
+ * <p/>
+ * When the same entry appears in several WARs, the first WAR in the merge order wins.
+ * <p/>
+ * Copied entries are never decompressed: their compressed data is transferred as is from the
+ * source archive by a {@link ZipWriter}, and JARs are stored uncompressed. Only the merged
+ * files are deflated.
+ * <p/>
+ * Reading the source archives (listing WAR entries, buffering the files to merge, computing the
+ * CRC of the JARs) is done on a bounded pool of worker threads, see {@link #setThreads(int)}.
+ * Everything that depends on the merge order - merge items, duplicate resolution and the
+ * output itself - happens afterwards on the calling thread, so the generated WAR does not depend
+ * on the number of threads. The merges themselves are run by a {@link MergeScheduler}: merges
+ * of different files run concurrently on the same number of threads, and their results are
+ * written in the order the processors were added.
+ * <p/>
+ * When a manifest file is set (see {@link #setManifest(File, String)}) the build is incremental:
+ * an {@link UberWarManifest} recording the fingerprint of every source archive and the
+ * provenance of every entry is kept next to the WAR. If neither the sources nor the
+ * configuration changed the WAR is left alone; otherwise unchanged entries and merged files are
+ * copied from the previous WAR, and only the archives that changed are read again.
+ *
+ * @version $Id$
+ */
+public class StreamingWarAssembler
+{
+    /**
+     * Directory holding the JAR files of a web application.
+     */
+    public static final String LIB_DIRECTORY = "WEB-INF/lib/";
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private List wars = new ArrayList();
+
+    private List jars = new ArrayList();
+
+    /**
+     * Merge processors, indexed by the path of the file they merge.
+     */
+    private Map mergeProcessors = new LinkedHashMap();
+
+    private boolean mergeJarFiles = true;
+
+    private int threads = 1;
+
+    private File manifestFile;
+
+    private String configuration;
+
+    private Log log;
+
+    public StreamingWarAssembler(Log log)
+    {
+        this.log = log;
+    }
+
+    /**
+     * @param war a WAR file whose entries go into the uberwar. WARs are merged in the order they
+     *        are added.
+     */
+    public void addWar(File war)
+    {
+        this.wars.add(war);
+    }
+
+    /**
+     * @param jar a JAR file to put in the <code>WEB-INF/lib</code> directory of the uberwar
+     */
+    public void addJar(File jar)
+    {
+        this.jars.add(jar);
+    }
+
+    /**
+     * @param path the path (relative to the root of the WAR) of the file to merge
+     * @param processor the processor that merges every occurence of <code>path</code>
+     */
+    public void addMergeProcessor(String path, MergeProcessor processor)
+    {
+        if (this.mergeProcessors.put(path, processor) != null)
+        {
+            this.log.warn("More than one merge is defined for [" + path
+                + "], only the last one is used");
+        }
+    }
+
+    /**
+     * @param mergeJarFiles whether the <code>WEB-INF/lib</code> JARs of the source WARs should
+     *        be copied into the uberwar. This is switched off when the JARs are calculated from
+     *        the dependencies instead.
+     */
+    public void setMergeJarFiles(boolean mergeJarFiles)
+    {
+        this.mergeJarFiles = mergeJarFiles;
+    }
+
+    /**
+     * @param threads the maximum number of source archives read, or of files merged, at the
+     *        same time
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Make the build incremental.
+     *
+     * @param manifestFile the file recording how the WAR was built, read at the start of the
+     *        build and rewritten at the end
+     * @param configuration a key of everything that influences the WAR apart from the source
+     *        archives (merge descriptor, merge files, settings); when it changes the merged files
+     *        are merged again
+     */
+    public void setManifest(File manifestFile, String configuration)
+    {
+        this.manifestFile = manifestFile;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Assemble the uberwar. The WAR is written next to <code>warFile</code> first and renamed
+     * once complete, so that a failed merge never leaves a truncated WAR behind.
+     *
+     * @param warFile the WAR file to generate
+     * @throws IOException if a source archive cannot be read or the WAR cannot be written
+     * @throws MergeException if one of the merge processors fails
+     */
+    public void assemble(File warFile) throws IOException, MergeException
+    {
+        File parent = warFile.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+
+        UberWarManifest previous = null;
+        UberWarManifest manifest = null;
+        if (this.manifestFile != null)
+        {
+            previous = UberWarManifest.load(this.manifestFile);
+            if (previous == null || !previous.describes(warFile))
+            {
+                // Nothing can be reused, but the sources still have to be fingerprinted
+                previous = new UberWarManifest("");
+            }
+            manifest = new UberWarManifest(this.configuration);
+        }
+
+        List warScans = new ArrayList();
+        List jarScans = new ArrayList();
+        ZipIndex previousWar = null;
+        File tempFile = null;
+        try
+        {
+            scan(warScans, jarScans, previous);
+            if (manifest != null)
+            {
+                addInputs(manifest, warScans);
+                addInputs(manifest, jarScans);
+                if (previous.hasSameSources(manifest))
+                {
+                    this.log.info("[" + warFile + "] is up to date");
+                    if (!previous.hasSameDates(manifest))
+                    {
+                        // Record the new dates, so that the next builds don't hash the
+                        // archives again
+                        manifest.setOutputFrom(previous);
+                        manifest.store(this.manifestFile);
+                    }
+                    return;
+                }
+                if (previous.describes(warFile))
+                {
+                    // Not mapped, as the previous WAR gets replaced
+                    previousWar = new ZipIndex(warFile, false);
+                }
+            }
+            // A file of its own, so that concurrent builds never write to the same temporary file
+            tempFile = File.createTempFile(warFile.getName(), ".tmp", parent);
+            write(tempFile, warScans, jarScans, new Build(previous, previousWar, manifest));
+            if (previousWar != null)
+            {
+                previousWar.close();
+                previousWar = null;
+            }
+            RecordFiles.replace(tempFile, warFile);
+        }
+        finally
+        {
+            if (previousWar != null)
+            {
+                previousWar.close();
+            }
+            close(warScans);
+            if (tempFile != null)
+            {
+                tempFile.delete();
+            }
+        }
+
+        if (manifest != null)
+        {
+            manifest.setOutput(warFile);
+            manifest.store(this.manifestFile);
+        }
+    }
+
+    private static void addInputs(UberWarManifest manifest, List scans)
+    {
+        for (Iterator i = scans.iterator(); i.hasNext();)
+        {
+            manifest.addInput(((ArchiveScan) i.next()).getInput());
+        }
+    }
+
+    /**
+     * Ingestion stage: scan all the source archives on the worker pool. The scans are collected
+     * in merge order whatever order they complete in.
+     *
+     * @param previous the manifest of the previous build, or null if the build isn't incremental
+     */
+    private void scan(List warScans, List jarScans, final UberWarManifest previous)
+        throws IOException
+    {
+        final Set mergePaths = new HashSet(this.mergeProcessors.keySet());
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(this.threads, Math.max(1, this.wars.size() + this.jars.size())));
+        try
+        {
+            List warFutures = new ArrayList();
+            for (Iterator i = this.wars.iterator(); i.hasNext();)
+            {
+                final File war = (File) i.next();
+                warFutures.add(executor.submit(new Callable()
+                {
+                    public Object call() throws IOException
+                    {
+                        log.debug("Scanning entries of [" + war + "]");
+                        return ArchiveScan.scanWar(war, mergePaths, previous);
+                    }
+                }));
+            }
+
+            List jarFutures = new ArrayList();
+            for (Iterator i = this.jars.iterator(); i.hasNext();)
+            {
+                final File jar = (File) i.next();
+                jarFutures.add(executor.submit(new Callable()
+                {
+                    public Object call() throws IOException
+                    {
+                        return ArchiveScan.scanJar(jar, previous);
+                    }
+                }));
+            }
+
+            collect(warFutures, warScans);
+            collect(jarFutures, jarScans);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private void collect(List futures, List scans) throws IOException
+    {
+        IOException failure = null;
+        for (Iterator i = futures.iterator(); i.hasNext();)
+        {
+            Future future = (Future) i.next();
+            try
+            {
+                scans.add(future.get());
+            }
+            catch (ExecutionException e)
+            {
+                if (failure == null)
+                {
+                    failure = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                        : (IOException) new IOException(e.getCause().toString()).initCause(
+                            e.getCause());
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading the source archives");
+            }
+        }
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    /**
+     * What the output stage of an incremental build can reuse, and what it records.
+     */
+    private static class Build
+    {
+        private UberWarManifest previous;
+
+        private ZipIndex previousWar;
+
+        private UberWarManifest manifest;
+
+        Build(UberWarManifest previous, ZipIndex previousWar, UberWarManifest manifest)
+        {
+            this.previous = previous;
+            this.previousWar = previousWar;
+            this.manifest = manifest;
+        }
+
+        /**
+         * Record where an entry comes from.
+         *
+         * @return the entry of the previous WAR to copy instead of the source entry, or null
+         */
+        ZipIndex.Entry copied(String name, String origin)
+        {
+            if (this.manifest == null)
+            {
+                return null;
+            }
+            this.manifest.setOrigin(name, origin);
+            if (this.previousWar != null && origin.equals(this.previous.getOrigin(name)))
+            {
+                return this.previousWar.getEntry(name);
+            }
+            return null;
+        }
+
+        /**
+         * Record the contributors of a merged file.
+         *
+         * @return the entry of the previous WAR to copy instead of merging again, or null
+         */
+        ZipIndex.Entry merged(String name, List origins)
+        {
+            if (this.manifest == null)
+            {
+                return null;
+            }
+            StringBuffer key = new StringBuffer(this.manifest.getConfiguration());
+            for (Iterator i = origins.iterator(); i.hasNext();)
+            {
+                key.append('\n').append(i.next());
+            }
+            String signature = Digests.digest(key.toString(), Digests.SHA1);
+            this.manifest.setMergeSignature(name, signature);
+            if (this.previousWar != null && signature.equals(this.previous.getMergeSignature(name)))
+            {
+                return this.previousWar.getEntry(name);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Output stage: feed the merge processors and write the WAR, in merge order.
+     */
+    private void write(File tempFile, List warScans, List jarScans, Build build)
+        throws IOException, MergeException
+    {
+        Set written = new HashSet();
+        Map contributors = new HashMap();
+        Map mergeTimes = new HashMap();
+
+        ZipWriter out = new ZipWriter(tempFile);
+        try
+        {
+            for (Iterator i = warScans.iterator(); i.hasNext();)
+            {
+                ArchiveScan scan = (ArchiveScan) i.next();
+                copyWar(scan, out, written, contributors, mergeTimes, build);
+            }
+
+            for (Iterator i = jarScans.iterator(); i.hasNext();)
+            {
+                ArchiveScan scan = (ArchiveScan) i.next();
+                File jar = scan.getFile();
+                String name = LIB_DIRECTORY + jar.getName();
+                if (!written.add(name))
+                {
+                    this.log.debug("Skipping [" + jar + "] as " + name + " is already present");
+                    continue;
+                }
+
+                ZipIndex.Entry previousEntry = build.copied(name, UberWarManifest.origin(
+                    scan.getInput().path, scan.getCrc(), scan.getSize()));
+                if (previousEntry != null)
+                {
+                    out.copy(build.previousWar, previousEntry);
+                }
+                else
+                {
+                    out.putStored(name, jar.lastModified(), jar, scan.getCrc());
+                }
+            }
+
+            // Merges of different files are independent: run them concurrently, then write
+            // them in registration order so that the uberwar doesn't depend on the timing
+            MergeScheduler scheduler = new MergeScheduler(this.threads);
+            Map reused = new HashMap();
+            List paths = new ArrayList();
+            for (Iterator i = this.mergeProcessors.entrySet().iterator(); i.hasNext();)
+            {
+                Map.Entry mergeEntry = (Map.Entry) i.next();
+                String path = (String) mergeEntry.getKey();
+                List sources = (List) contributors.get(path);
+                if (sources == null)
+                {
+                    this.log.debug("No source WAR contains [" + path + "], nothing to merge");
+                    continue;
+                }
+                paths.add(path);
+
+                ZipIndex.Entry previousEntry = build.merged(path, sources);
+                if (previousEntry != null)
+                {
+                    this.log.debug("[" + path + "] is unchanged, reusing the previous merge");
+                    reused.put(path, previousEntry);
+                    continue;
+                }
+
+                // The source archives are read here, the workers only see the bytes
+                List items = new ArrayList();
+                for (Iterator j = warScans.iterator(); j.hasNext();)
+                {
+                    byte[] item = ((ArchiveScan) j.next()).getMergeItem(path);
+                    if (item != null)
+                    {
+                        items.add(item);
+                    }
+                }
+                scheduler.schedule(path, (MergeProcessor) mergeEntry.getValue(), items);
+            }
+
+            Map merged = scheduler.run();
+            for (Iterator i = paths.iterator(); i.hasNext();)
+            {
+                String path = (String) i.next();
+                ZipIndex.Entry previousEntry = (ZipIndex.Entry) reused.get(path);
+                if (previousEntry != null)
+                {
+                    out.copy(build.previousWar, previousEntry);
+                }
+                else if (merged.containsKey(path))
+                {
+                    // Dated like its latest source, so that the WAR is the same from one
+                    // build to the next
+                    out.putDeflated(path, ((Long) mergeTimes.get(path)).longValue(),
+                        (byte[]) merged.get(path));
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Copy the entries of a WAR that aren't already in the uberwar, and record which WARs
+     * contain the files to merge and the latest time of each of these files.
+     */
+    private void copyWar(ArchiveScan scan, ZipWriter out, Set written, Map contributors,
+        Map mergeTimes, Build build) throws IOException
+    {
+        File war = scan.getFile();
+        this.log.debug("Streaming entries of [" + war + "]");
+
+        for (Iterator i = scan.getEntries().iterator(); i.hasNext();)
+        {
+            ZipIndex.Entry entry = (ZipIndex.Entry) i.next();
+            String name = entry.getName();
+            String origin = UberWarManifest.origin(scan.getInput().path, entry.getCrc(),
+                entry.getSize());
+
+            if (this.mergeProcessors.containsKey(name))
+            {
+                List sources = (List) contributors.get(name);
+                if (sources == null)
+                {
+                    sources = new ArrayList();
+                    contributors.put(name, sources);
+                }
+                sources.add(origin);
+                Long time = (Long) mergeTimes.get(name);
+                if (time == null || entry.getTime() > time.longValue())
+                {
+                    mergeTimes.put(name, new Long(entry.getTime()));
+                }
+                continue;
+            }
+
+            if (!this.mergeJarFiles && isLibraryJar(name))
+            {
+                continue;
+            }
+
+            if (!written.add(name))
+            {
+                if (!entry.isDirectory())
+                {
+                    this.log.debug("Skipping " + name + " from [" + war
+                        + "] as it is already present");
+                }
+                continue;
+            }
+
+            ZipIndex.Entry previousEntry = build.copied(name, origin);
+            if (previousEntry != null)
+            {
+                out.copy(build.previousWar, previousEntry);
+            }
+            else
+            {
+                out.copy(scan.getIndex(), scan.getIndex().getEntry(name));
+            }
+        }
+    }
+
+    private static void close(List scans) throws IOException
+    {
+        for (Iterator i = scans.iterator(); i.hasNext();)
+        {
+            ((ArchiveScan) i.next()).close();
+        }
+    }
+
+    /**
+     * @param name the name of a WAR entry
+     * @return true if the entry is a JAR file in <code>WEB-INF/lib</code>
+     */
+    protected static boolean isLibraryJar(String name)
+    {
+        return name.startsWith(LIB_DIRECTORY) && name.endsWith(".jar");
+    }
+
+    /**
+     * Serialise the result of a merge processor.
+     *
+     * @param path the path of the merged file, used for error reporting
+     * @param merged the object returned by {@link MergeProcessor#performMerge()}
+     * @return the content of the merged file
+     * @throws IOException if the merged object cannot be serialised
+     */
+    protected static byte[] toBytes(String path, Object merged) throws IOException
+    {
+        if (merged instanceof byte[])
+        {
+            return (byte[]) merged;
+        }
+        else if (merged instanceof Document)
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            new XMLOutputter(Format.getPrettyFormat()).output((Document) merged, bytes);
+            return bytes.toByteArray();
+        }
+        else if (merged instanceof InputStream)
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            InputStream in = (InputStream) merged;
+            try
+            {
+                copy(in, bytes);
+            }
+            finally
+            {
+                in.close();
+            }
+            return bytes.toByteArray();
+        }
+        else if (merged instanceof String)
+        {
+            return ((String) merged).getBytes("UTF-8");
+        }
+
+        throw new IOException("Don't know how to store the merged " + path + " (a "
+            + merged.getClass().getName() + ")");
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException
+    {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            out.write(buffer, 0, read);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.uberwar;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.cargo.maven2.util.RecordFiles;
+import org.codehaus.cargo.maven2.util.ZipIndex;
+
+/**
+ * Record of how an uberwar was built, kept next to it so that the next build only rewrites what
+ * changed. It holds:
+ * <ul>
+ *   <li>a key of the merge configuration (descriptor, merge files, settings);</li>
+ *   <li>a fingerprint (size, date, SHA-1) of every source archive, in merge order, together
+ *       with the entry list of each WAR and the CRC of each JAR;</li>
+ *   <li>the provenance of every entry of the generated WAR, and a signature of the contributors
+ *       of every merged file.</li>
+ * </ul>
+ * The manifest is a tab separated text file, one record per line.
+ *
+ * @version $Id$
+ */
+class UberWarManifest
+{
+    private static final String HEADER = "# Cargo uberwar manifest, version 2";
+
+    /**
+     * Fingerprint of a source archive.
+     */
+    static class Input
+    {
+        String kind;
+
+        String path;
+
+        long length;
+
+        long lastModified;
+
+        String sha1;
+
+        long crc;
+
+        List entries = new ArrayList();
+    }
+
+    private String configuration;
+
+    private long outputLength = -1;
+
+    private long outputLastModified = -1;
+
+    private List inputs = new ArrayList();
+
+    /**
+     * Provenance of the copied entries: entry name to {@link #origin origin}.
+     */
+    private Map origins = new LinkedHashMap();
+
+    /**
+     * Merged files: entry name to signature of the contributors.
+     */
+    private Map merged = new LinkedHashMap();
+
+    UberWarManifest(String configuration)
+    {
+        this.configuration = configuration;
+    }
+
+    /**
+     * @param path the path of a source archive
+     * @param crc the CRC of the entry
+     * @param size the uncompressed size of the entry
+     * @return a key identifying an entry of a source archive
+     */
+    static String origin(String path, long crc, long size)
+    {
+        return path + '\t' + Long.toHexString(crc) + '\t' + size;
+    }
+
+    String getConfiguration()
+    {
+        return this.configuration;
+    }
+
+    List getInputs()
+    {
+        return this.inputs;
+    }
+
+    /**
+     * @param path the path of a source archive
+     * @param kind the kind of archive
+     * @return the fingerprint of <code>path</code> in this manifest, or null
+     */
+    Input getInput(String path, String kind)
+    {
+        for (Iterator i = this.inputs.iterator(); i.hasNext();)
+        {
+            Input input = (Input) i.next();
+            if (input.path.equals(path) && input.kind.equals(kind))
+            {
+                return input;
+            }
+        }
+        return null;
+    }
+
+    void addInput(Input input)
+    {
+        this.inputs.add(input);
+    }
+
+    String getOrigin(String name)
+    {
+        return (String) this.origins.get(name);
+    }
+
+    void setOrigin(String name, String origin)
+    {
+        this.origins.put(name, origin);
+    }
+
+    String getMergeSignature(String name)
+    {
+        return (String) this.merged.get(name);
+    }
+
+    void setMergeSignature(String name, String signature)
+    {
+        this.merged.put(name, signature);
+    }
+
+    /**
+     * @param warFile the generated WAR
+     * @return true if <code>warFile</code> is still the one this manifest describes
+     */
+    boolean describes(File warFile)
+    {
+        return warFile.isFile() && warFile.length() == this.outputLength
+            && warFile.lastModified() == this.outputLastModified;
+    }
+
+    void setOutput(File warFile)
+    {
+        this.outputLength = warFile.length();
+        this.outputLastModified = warFile.lastModified();
+    }
+
+    /**
+     * Describe the same WAR as <code>other</code>, which was built from the same sources.
+     *
+     * @param other the manifest of the build that wrote the WAR
+     */
+    void setOutputFrom(UberWarManifest other)
+    {
+        this.outputLength = other.outputLength;
+        this.outputLastModified = other.outputLastModified;
+        this.origins.putAll(other.origins);
+        this.merged.putAll(other.merged);
+    }
+
+    /**
+     * @param other a manifest with the same sources, see {@link #hasSameSources}
+     * @return true if the source archives of <code>other</code> also have the same sizes and
+     *         dates
+     */
+    boolean hasSameDates(UberWarManifest other)
+    {
+        for (int i = 0; i < this.inputs.size(); i++)
+        {
+            Input mine = (Input) this.inputs.get(i);
+            Input theirs = (Input) other.inputs.get(i);
+            if (mine.length != theirs.length || mine.lastModified != theirs.lastModified)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param other the manifest of the current build, before the WAR is written
+     * @return true if <code>other</code> has the same configuration and the same source archives
+     *         with the same content, in the same order
+     */
+    boolean hasSameSources(UberWarManifest other)
+    {
+        if (!this.configuration.equals(other.configuration)
+            || this.inputs.size() != other.inputs.size())
+        {
+            return false;
+        }
+        for (int i = 0; i < this.inputs.size(); i++)
+        {
+            Input mine = (Input) this.inputs.get(i);
+            Input theirs = (Input) other.inputs.get(i);
+            if (!mine.path.equals(theirs.path) || !mine.kind.equals(theirs.kind)
+                || !mine.sha1.equals(theirs.sha1))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param file the manifest file
+     * @return the manifest stored in <code>file</code>, or null if there is none or it cannot be
+     *         read, in which case the uberwar is built from scratch
+     */
+    static UberWarManifest load(File file)
+    {
+        return (UberWarManifest) RecordFiles.load(file, HEADER, new RecordFiles.Parser()
+        {
+            public Object parse(BufferedReader reader) throws IOException
+            {
+                UberWarManifest manifest = null;
+                Map inputsByIndex = new HashMap();
+                Input input = null;
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    String[] fields = line.split("\t", -1);
+                    String type = fields[0];
+                    if ("config".equals(type))
+                    {
+                        manifest = new UberWarManifest(fields[1]);
+                    }
+                    else if ("output".equals(type))
+                    {
+                        manifest.outputLength = Long.parseLong(fields[1]);
+                        manifest.outputLastModified = Long.parseLong(fields[2]);
+                    }
+                    else if ("input".equals(type))
+                    {
+                        input = new Input();
+                        input.kind = fields[1];
+                        input.length = Long.parseLong(fields[2]);
+                        input.lastModified = Long.parseLong(fields[3]);
+                        input.sha1 = fields[4];
+                        input.crc = Long.parseLong(fields[5], 16);
+                        input.path = fields[6];
+                        inputsByIndex.put(String.valueOf(manifest.inputs.size()), input.path);
+                        manifest.inputs.add(input);
+                    }
+                    else if ("entry".equals(type))
+                    {
+                        input.entries.add(new ZipIndex.Entry(fields[6],
+                            Integer.parseInt(fields[1]), (int) Long.parseLong(fields[5], 16),
+                            Long.parseLong(fields[2], 16), Long.parseLong(fields[4]),
+                            Long.parseLong(fields[3])));
+                    }
+                    else if ("copied".equals(type))
+                    {
+                        String path = (String) inputsByIndex.get(fields[1]);
+                        manifest.origins.put(fields[4], path + '\t' + fields[2] + '\t'
+                            + fields[3]);
+                    }
+                    else if ("merged".equals(type))
+                    {
+                        manifest.merged.put(fields[2], fields[1]);
+                    }
+                }
+                return manifest;
+            }
+        });
+    }
+
+    /**
+     * Store the manifest.
+     *
+     * @param file the manifest file
+     * @throws IOException if the manifest cannot be written
+     */
+    void store(File file) throws IOException
+    {
+        RecordFiles.store(file, HEADER, new RecordFiles.Printer()
+        {
+            public void print(Writer writer) throws IOException
+            {
+                writer.write("config\t" + configuration + "\n");
+                writer.write("output\t" + outputLength + "\t" + outputLastModified + "\n");
+
+                Map indexes = new HashMap();
+                for (Iterator i = inputs.iterator(); i.hasNext();)
+                {
+                    Input input = (Input) i.next();
+                    indexes.put(input.path, String.valueOf(indexes.size()));
+                    writer.write("input\t" + input.kind + "\t" + input.length + "\t"
+                        + input.lastModified + "\t" + input.sha1 + "\t"
+                        + Long.toHexString(input.crc) + "\t" + input.path + "\n");
+                    for (Iterator j = input.entries.iterator(); j.hasNext();)
+                    {
+                        ZipIndex.Entry entry = (ZipIndex.Entry) j.next();
+                        writer.write("entry\t" + entry.getMethod() + "\t"
+                            + Long.toHexString(entry.getCrc()) + "\t" + entry.getSize() + "\t"
+                            + entry.getCompressedSize() + "\t"
+                            + Integer.toHexString(entry.getDosTime()) + "\t" + entry.getName()
+                            + "\n");
+                    }
+                }
+
+                for (Iterator i = origins.entrySet().iterator(); i.hasNext();)
+                {
+                    Map.Entry origin = (Map.Entry) i.next();
+                    String[] fields = ((String) origin.getValue()).split("\t");
+                    writer.write("copied\t" + indexes.get(fields[0]) + "\t" + fields[1] + "\t"
+                        + fields[2] + "\t" + origin.getKey() + "\n");
+                }
+
+                for (Iterator i = merged.entrySet().iterator(); i.hasNext();)
+                {
+                    Map.Entry merge = (Map.Entry) i.next();
+                    writer.write("merged\t" + merge.getValue() + "\t" + merge.getKey() + "\n");
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Helpers for starting containers from an AppCDS archive of their classpath, so that the JVM
+ * maps pre-parsed class data instead of loading and verifying every class again. The first run
+ * dumps the archive when the JVM exits (<code>-XX:ArchiveClassesAtExit</code>, Java 13 and
+ * later) and the next runs use it (<code>-XX:SharedArchiveFile</code>). Older JVMs refuse to
+ * start with the first option, so check {@link #isSupported(String)} before adding it.
+ * <p/>
+ * An archive is only valid for the classpath and JVM it was dumped with, and the JVM silently
+ * ignores a mismatching one, down to a JAR rebuilt at the same path. Archives are therefore named
+ * after a digest of the paths, sizes and dates of everything they depend on, so that a changed
+ * classpath dumps a new archive instead of never sharing again.
+ *
+ * @version $Id$
+ */
+public final class ClassDataSharing
+{
+    private static final String DUMP_OPTION = "-XX:ArchiveClassesAtExit=";
+
+    private static final String USE_OPTION = "-XX:SharedArchiveFile=";
+
+    /**
+     * The first Java version with <code>-XX:ArchiveClassesAtExit</code>.
+     */
+    private static final int MINIMUM_VERSION = 13;
+
+    private ClassDataSharing()
+    {
+        // Utility class
+    }
+
+    /**
+     * @param directory the directory of the archives
+     * @param containerId the id of the container
+     * @param classpath the paths of what the archive depends on: the classpath entries, the
+     *        container home, the Java home, in a stable order
+     * @return the archive for the current content of <code>classpath</code>, which may not exist
+     *         yet
+     */
+    public static File getArchive(File directory, String containerId, List classpath)
+    {
+        StringBuffer key = new StringBuffer();
+        for (Iterator i = classpath.iterator(); i.hasNext();)
+        {
+            String path = (String) i.next();
+            key.append(path).append('\n');
+            appendStamps(key, new File(path), "");
+        }
+        return new File(directory, containerId + "-"
+            + Digests.digest(key.toString(), Digests.SHA1).substring(0, 12) + ".jsa");
+    }
+
+    /**
+     * Delete the archives of a container other than <code>archive</code>: they were dumped for
+     * a classpath that has changed since.
+     *
+     * @param archive the current archive of the container
+     * @param containerId the id of the container
+     */
+    public static void deleteOtherArchives(File archive, String containerId)
+    {
+        File[] files = archive.getParentFile().listFiles();
+        for (int i = 0; files != null && i < files.length; i++)
+        {
+            String name = files[i].getName();
+            // The same container id followed by another digest
+            if (name.startsWith(containerId + "-") && name.endsWith(".jsa")
+                && name.length() == archive.getName().length() && !files[i].equals(archive))
+            {
+                files[i].delete();
+            }
+        }
+    }
+
+    /**
+     * Append the size and date of <code>file</code>, or of the JARs and the modules image under
+     * it if it is a directory such as a container or Java home.
+     */
+    private static void appendStamps(StringBuffer key, File file, String name)
+    {
+        if (file.isFile())
+        {
+            key.append(name).append('\t').append(file.length()).append('\t')
+                .append(file.lastModified()).append('\n');
+        }
+        else
+        {
+            File[] children = file.listFiles();
+            if (children == null)
+            {
+                return;
+            }
+            Arrays.sort(children);
+            for (int i = 0; i < children.length; i++)
+            {
+                String childName = name + "/" + children[i].getName();
+                if (children[i].isDirectory() || children[i].getName().endsWith(".jar")
+                    || children[i].getName().equals("modules"))
+                {
+                    appendStamps(key, children[i], childName);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param archive the archive
+     * @return the JVM argument using <code>archive</code> if it exists, or dumping it at exit
+     */
+    public static String getJvmArg(File archive)
+    {
+        return (archive.isFile() ? USE_OPTION : DUMP_OPTION) + archive.getAbsolutePath();
+    }
+
+    /**
+     * @param jvmArgs JVM arguments, or null
+     * @param archive the archive
+     * @return <code>jvmArgs</code> with the argument of {@link #getJvmArg(File)}, unless they
+     *         already configure class data sharing themselves
+     */
+    public static String addJvmArg(String jvmArgs, File archive)
+    {
+        if (jvmArgs == null || jvmArgs.trim().length() == 0)
+        {
+            return getJvmArg(archive);
+        }
+        if (isConfigured(jvmArgs))
+        {
+            return jvmArgs;
+        }
+        return jvmArgs + " " + getJvmArg(archive);
+    }
+
+    /**
+     * @param javaHome the Java home of the JVM
+     * @return true if the JVM of <code>javaHome</code> is known to support dynamic archives
+     */
+    public static boolean isSupported(String javaHome)
+    {
+        return getFeatureVersion(javaHome) >= MINIMUM_VERSION;
+    }
+
+    /**
+     * @param javaHome a Java home
+     * @return the feature version of the JVM of <code>javaHome</code>, such as 8 or 17, or -1 if
+     *         it is not known
+     */
+    public static int getFeatureVersion(String javaHome)
+    {
+        if (new File(javaHome).getAbsoluteFile().equals(
+            new File(System.getProperty("java.home")).getAbsoluteFile()))
+        {
+            return parseFeatureVersion(System.getProperty("java.specification.version"));
+        }
+
+        // The release file of a JDK 8 is in the parent of its java.home
+        File release = new File(javaHome, "release");
+        if (!release.isFile())
+        {
+            release = new File(new File(javaHome).getParentFile(), "release");
+        }
+        Properties properties = new Properties();
+        try
+        {
+            InputStream in = new FileInputStream(release);
+            try
+            {
+                properties.load(in);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            return -1;
+        }
+        String version = properties.getProperty("JAVA_VERSION");
+        if (version != null && version.startsWith("\"") && version.endsWith("\""))
+        {
+            version = version.substring(1, version.length() - 1);
+        }
+        return parseFeatureVersion(version);
+    }
+
+    /**
+     * @param version a Java version, such as <code>1.8.0_202</code> or <code>17.0.2</code>
+     * @return the feature version of <code>version</code>, or -1 if it cannot be parsed
+     */
+    static int parseFeatureVersion(String version)
+    {
+        if (version == null)
+        {
+            return -1;
+        }
+        if (version.startsWith("1."))
+        {
+            version = version.substring(2);
+        }
+        int end = 0;
+        while (end < version.length() && Character.isDigit(version.charAt(end)))
+        {
+            end++;
+        }
+        if (end == 0)
+        {
+            return -1;
+        }
+        return Integer.parseInt(version.substring(0, end));
+    }
+
+    /**
+     * @return true if the running JVM was started with an AppCDS archive, or will dump one
+     */
+    public static boolean isEnabledInThisJvm()
+    {
+        List arguments = ManagementFactory.getRuntimeMXBean().getInputArguments();
+        for (Iterator i = arguments.iterator(); i.hasNext();)
+        {
+            if (isConfigured((String) i.next()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param archive the archive
+     * @return how to make the Maven JVM, which runs embedded containers, dump or use
+     *         <code>archive</code>
+     */
+    public static String getMavenOptsAdvice(File archive)
+    {
+        return "Embedded containers run in the Maven JVM, which must be started with class data "
+            + "sharing: create [" + archive.getParent() + "] and run once with MAVEN_OPTS=\""
+            + DUMP_OPTION + archive.getAbsolutePath()
+            + "\" to create the archive, then with MAVEN_OPTS=\"" + USE_OPTION
+            + archive.getAbsolutePath() + "\" to use it";
+    }
+
+    private static boolean isConfigured(String jvmArgs)
+    {
+        return jvmArgs.indexOf(DUMP_OPTION) != -1 || jvmArgs.indexOf(USE_OPTION) != -1;
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Helpers for computing the message digests used to fingerprint files and content.
+ *
+ * @version $Id$
+ */
+public final class Digests
+{
+    /**
+     * Digest algorithm used for fingerprints unless stated otherwise.
+     */
+    public static final String SHA1 = "SHA-1";
+
+    /**
+     * Digest algorithm used for content checksums.
+     */
+    public static final String SHA256 = "SHA-256";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Digests()
+    {
+        // Utility class
+    }
+
+    /**
+     * @param algorithm the name of a digest algorithm supported by every JVM, such as
+     *        {@link #SHA1}
+     * @return a new digest for <code>algorithm</code>
+     */
+    public static MessageDigest newDigest(String algorithm)
+    {
+        try
+        {
+            return MessageDigest.getInstance(algorithm);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("Digest algorithm " + algorithm
+                + " is not available");
+        }
+    }
+
+    /**
+     * @param file the file to digest
+     * @param algorithm the digest algorithm
+     * @return the hexadecimal digest of the content of <code>file</code>
+     * @throws IOException if the file cannot be read
+     */
+    public static String digest(File file, String algorithm) throws IOException
+    {
+        MessageDigest digest = newDigest(algorithm);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, read);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Digest a file that may be large. A file of up to <code>chunkSize</code> bytes is digested
+     * like {@link #digest(File, String)}. A larger file is split in chunks of
+     * <code>chunkSize</code> bytes which are digested in parallel, and the result is the digest
+     * of the chunk digests: it identifies the content as well, but is not the plain digest of
+     * the file.
+     *
+     * @param file the file to digest
+     * @param algorithm the digest algorithm
+     * @param chunkSize the size of the chunks of a large file
+     * @param threads the number of chunks digested at the same time
+     * @return the hexadecimal digest of the content of <code>file</code>
+     * @throws IOException if the file cannot be read
+     */
+    public static String digest(File file, String algorithm, long chunkSize, int threads)
+        throws IOException
+    {
+        long length = file.length();
+        if (length <= chunkSize || threads <= 1)
+        {
+            return digest(file, algorithm, chunkSize, (ExecutorService) null);
+        }
+
+        int chunks = (int) ((length + chunkSize - 1) / chunkSize);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunks));
+        try
+        {
+            return digest(file, algorithm, chunkSize, executor);
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Digest a file that may be large, like {@link #digest(File, String, long, int)}, on a pool
+     * of threads of the caller. The chunk digests never wait for one another, so the pool can be
+     * shared by files digested at the same time, as long as their own threads are not in it.
+     *
+     * @param file the file to digest
+     * @param algorithm the digest algorithm
+     * @param chunkSize the size of the chunks of a large file
+     * @param executor where to digest the chunks, or null to digest them one after the other
+     *        on the calling thread
+     * @return the hexadecimal digest of the content of <code>file</code>
+     * @throws IOException if the file cannot be read
+     */
+    public static String digest(final File file, final String algorithm, final long chunkSize,
+        ExecutorService executor) throws IOException
+    {
+        final long length = file.length();
+        if (length <= chunkSize)
+        {
+            return digest(file, algorithm);
+        }
+
+        int chunks = (int) ((length + chunkSize - 1) / chunkSize);
+        MessageDigest digest = newDigest(algorithm);
+        if (executor == null)
+        {
+            for (int i = 0; i < chunks; i++)
+            {
+                long position = i * chunkSize;
+                digest.update(digest(file, algorithm, position,
+                    Math.min(chunkSize, length - position)));
+            }
+            return toHex(digest.digest());
+        }
+
+        List futures = new ArrayList();
+        try
+        {
+            for (int i = 0; i < chunks; i++)
+            {
+                final long position = i * chunkSize;
+                futures.add(executor.submit(new Callable()
+                {
+                    public Object call() throws IOException
+                    {
+                        return digest(file, algorithm, position,
+                            Math.min(chunkSize, length - position));
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++)
+            {
+                digest.update((byte[]) ((Future) futures.get(i)).get());
+            }
+            return toHex(digest.digest());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while digesting " + file);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Cannot digest " + file + ": " + e.getCause());
+        }
+        finally
+        {
+            // Stop the chunks not digested yet when giving up, the pool may be shared
+            for (int i = 0; i < futures.size(); i++)
+            {
+                ((Future) futures.get(i)).cancel(false);
+            }
+        }
+    }
+
+    /**
+     * @return the digest of <code>length</code> bytes of <code>file</code>, read from
+     *         <code>position</code> through a buffer of its own
+     */
+    private static byte[] digest(File file, String algorithm, long position, long length)
+        throws IOException
+    {
+        MessageDigest digest = newDigest(algorithm);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = in.getChannel();
+            long end = position + length;
+            while (position < end)
+            {
+                buffer.clear();
+                buffer.limit((int) Math.min(BUFFER_SIZE, end - position));
+                int read = channel.read(buffer, position);
+                if (read == -1)
+                {
+                    throw new IOException(file + " was truncated while being digested");
+                }
+                digest.update(buffer.array(), 0, read);
+                position += read;
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @param content the content to digest
+     * @param algorithm the digest algorithm
+     * @return the hexadecimal digest of <code>content</code>
+     */
+    public static String digest(byte[] content, String algorithm)
+    {
+        return toHex(newDigest(algorithm).digest(content));
+    }
+
+    /**
+     * @param content the text to digest, encoded in UTF-8
+     * @param algorithm the digest algorithm
+     * @return the hexadecimal digest of <code>content</code>
+     */
+    public static String digest(String content, String algorithm)
+    {
+        try
+        {
+            return digest(content.getBytes("UTF-8"), algorithm);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException("UTF-8 is not supported");
+        }
+    }
+
+    /**
+     * @param bytes a digest
+     * @return <code>bytes</code> in lower case hexadecimal
+     */
+    public static String toHex(byte[] bytes)
+    {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Helpers for the small text files the plugin keeps between builds: manifests, markers, caches
+ * and lock files. Such a file is UTF-8 text, starts with a header naming its format and version,
+ * and holds one tab separated record per line.
+ * <p/>
+ * These files only save work, so a file that is missing, of another format or version, or that
+ * cannot be parsed is simply not used. A file is replaced by renaming a complete temporary file
+ * over it, so that neither an interrupted build nor a concurrent one ever sees it half written.
+ *
+ * @version $Id$
+ */
+public final class RecordFiles
+{
+    /**
+     * Reads the records of a file.
+     */
+    public interface Parser
+    {
+        /**
+         * @param reader the records, after the header
+         * @return what the records hold, or null if they cannot be used
+         * @throws IOException if the records cannot be read
+         */
+        Object parse(BufferedReader reader) throws IOException;
+    }
+
+    /**
+     * Writes the records of a file.
+     */
+    public interface Printer
+    {
+        /**
+         * @param writer where to write the records, after the header
+         * @throws IOException if the records cannot be written
+         */
+        void print(Writer writer) throws IOException;
+    }
+
+    private RecordFiles()
+    {
+        // Utility class
+    }
+
+    /**
+     * @param file the file to read
+     * @param header the first line the file must have
+     * @param parser the reader of the records
+     * @return what <code>parser</code> returns, or null if <code>file</code> is missing, has
+     *         another header, cannot be read or cannot be parsed
+     */
+    public static Object load(File file, String header, Parser parser)
+    {
+        if (!file.isFile())
+        {
+            return null;
+        }
+
+        try
+        {
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try
+            {
+                if (!header.equals(reader.readLine()))
+                {
+                    return null;
+                }
+                return parser.parse(reader);
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (RuntimeException e)
+        {
+            // Corrupt file: do the work it would have saved
+            return null;
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Replace a file with a header and the records of <code>printer</code>.
+     *
+     * @param file the file to write
+     * @param header the first line of the file
+     * @param printer the writer of the records
+     * @throws IOException if the file cannot be written
+     */
+    public static void store(File file, String header, Printer printer) throws IOException
+    {
+        File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        // A file of its own, so that concurrent builds never write to the same temporary file
+        File tempFile = File.createTempFile(file.getName(), ".tmp", parent);
+        try
+        {
+            Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+            try
+            {
+                writer.write(header + "\n");
+                printer.print(writer);
+            }
+            finally
+            {
+                writer.close();
+            }
+            replace(tempFile, file);
+        }
+        finally
+        {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Rename <code>source</code> over <code>target</code>. Where the platform replaces the
+     * target in the rename, as POSIX systems do, readers see either the old or the new file.
+     * Elsewhere the target is deleted first, which leaves a short window without it.
+     *
+     * @param source the complete new file
+     * @param target the file to replace, which may not exist
+     * @throws IOException if <code>target</code> cannot be replaced
+     */
+    public static void replace(File source, File target) throws IOException
+    {
+        if (source.renameTo(target))
+        {
+            return;
+        }
+        if (target.exists() && !target.delete())
+        {
+            throw new IOException("Cannot replace [" + target + "]");
+        }
+        if (!source.renameTo(target))
+        {
+            throw new IOException("Cannot rename [" + source + "] to [" + target + "]");
+        }
+    }
+}
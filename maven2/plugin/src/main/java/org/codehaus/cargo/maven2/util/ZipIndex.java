@@ -0,0 +1,611 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Index of a ZIP archive built from its central directory. Unlike {@link java.util.zip.ZipFile}
+ * it tells where the compressed data of each entry is, so that entries can be copied to another
+ * archive without being inflated and deflated again (see {@link ZipWriter#copy}).
+ * <p/>
+ * Only the central directory is read when the index is created, through a memory mapping by
+ * default; local headers are read when the data of an entry is needed. Listing the entries,
+ * checking whether an entry exists and finding the files to merge are done in memory, so one
+ * index of an archive serves all the lookups made while building an uberwar. ZIP64 archives and
+ * archives spanning several disks are not supported.
+ *
+ * @version $Id$
+ */
+public class ZipIndex
+{
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    static final int END_SIGNATURE = 0x06054b50;
+
+    static final int LOCAL_HEADER_SIZE = 30;
+
+    static final int CENTRAL_HEADER_SIZE = 46;
+
+    static final int END_SIZE = 22;
+
+    /**
+     * General purpose flag telling that the sizes and CRC follow the data.
+     */
+    static final int FLAG_DATA_DESCRIPTOR = 0x08;
+
+    /**
+     * General purpose flag telling that the name is encoded in UTF-8 rather than in CP437.
+     */
+    static final int FLAG_UTF8 = 0x800;
+
+    /**
+     * The characters of the bytes 0x80 to 0xff in CP437, the encoding of names without
+     * {@link #FLAG_UTF8}; the lower bytes are ASCII.
+     */
+    private static final String CP437_HIGH =
+        "\u00c7\u00fc\u00e9\u00e2\u00e4\u00e0\u00e5\u00e7"
+        + "\u00ea\u00eb\u00e8\u00ef\u00ee\u00ec\u00c4\u00c5"
+        + "\u00c9\u00e6\u00c6\u00f4\u00f6\u00f2\u00fb\u00f9"
+        + "\u00ff\u00d6\u00dc\u00a2\u00a3\u00a5\u20a7\u0192"
+        + "\u00e1\u00ed\u00f3\u00fa\u00f1\u00d1\u00aa\u00ba"
+        + "\u00bf\u2310\u00ac\u00bd\u00bc\u00a1\u00ab\u00bb"
+        + "\u2591\u2592\u2593\u2502\u2524\u2561\u2562\u2556"
+        + "\u2555\u2563\u2551\u2557\u255d\u255c\u255b\u2510"
+        + "\u2514\u2534\u252c\u251c\u2500\u253c\u255e\u255f"
+        + "\u255a\u2554\u2569\u2566\u2560\u2550\u256c\u2567"
+        + "\u2568\u2564\u2565\u2559\u2558\u2552\u2553\u256b"
+        + "\u256a\u2518\u250c\u2588\u2584\u258c\u2590\u2580"
+        + "\u03b1\u00df\u0393\u03c0\u03a3\u03c3\u00b5\u03c4"
+        + "\u03a6\u0398\u03a9\u03b4\u221e\u03c6\u03b5\u2229"
+        + "\u2261\u00b1\u2265\u2264\u2320\u2321\u00f7\u2248"
+        + "\u00b0\u2219\u00b7\u221a\u207f\u00b2\u25a0\u00a0";
+
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    /**
+     * How many bytes are kept from the end of a compressed nested archive to find its central
+     * directory.
+     */
+    static final int NESTED_TAIL_SIZE = 1024 * 1024;
+
+    /**
+     * The size of the chunks of compressed data read when inflating an entry.
+     */
+    private static final int INFLATE_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * An entry of the central directory.
+     */
+    public static class Entry
+    {
+        String name;
+
+        int flags;
+
+        int method;
+
+        int dosTime;
+
+        long crc;
+
+        long compressedSize;
+
+        long size;
+
+        long localHeaderOffset;
+
+        Entry()
+        {
+        }
+
+        /**
+         * Describe an entry without reading it from an archive, for instance from a previous
+         * index that was saved.
+         */
+        public Entry(String name, int method, int dosTime, long crc, long compressedSize,
+            long size)
+        {
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+
+        public String getName()
+        {
+            return this.name;
+        }
+
+        /**
+         * @return {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+         */
+        public int getMethod()
+        {
+            return this.method;
+        }
+
+        public long getCrc()
+        {
+            return this.crc;
+        }
+
+        public long getCompressedSize()
+        {
+            return this.compressedSize;
+        }
+
+        public long getSize()
+        {
+            return this.size;
+        }
+
+        /**
+         * @return the modification time of the entry, in milliseconds
+         */
+        public long getTime()
+        {
+            return ZipWriter.fromDosTime(this.dosTime);
+        }
+
+        /**
+         * @return the modification time of the entry, in MS-DOS format as stored in the archive
+         */
+        public int getDosTime()
+        {
+            return this.dosTime;
+        }
+
+        public boolean isDirectory()
+        {
+            return this.name.endsWith("/");
+        }
+    }
+
+    private File file;
+
+    private RandomAccessFile raf;
+
+    private List entries;
+
+    private Map entriesByName;
+
+    private boolean mapped;
+
+    /**
+     * Index an archive, mapping its central directory in memory.
+     *
+     * @param file the ZIP archive to index
+     * @throws IOException if the archive cannot be read or is not a ZIP archive
+     */
+    public ZipIndex(File file) throws IOException
+    {
+        this(file, true);
+    }
+
+    /**
+     * @param file the ZIP archive to index
+     * @param mapped whether the central directory is mapped in memory or read into the heap. A
+     *        mapping is only released when it is garbage collected, and on some platforms the
+     *        archive cannot be deleted or replaced until then: archives that are about to be
+     *        overwritten should not be mapped.
+     * @throws IOException if the archive cannot be read or is not a ZIP archive
+     */
+    public ZipIndex(File file, boolean mapped) throws IOException
+    {
+        this.file = file;
+        this.mapped = mapped;
+        this.raf = new RandomAccessFile(file, "r");
+        try
+        {
+            readCentralDirectory();
+        }
+        catch (IOException e)
+        {
+            this.raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Random access to the bytes of an archive.
+     */
+    private interface Source
+    {
+        /**
+         * @return a little endian buffer holding <code>size</code> bytes of the archive
+         */
+        ByteBuffer load(long position, int size) throws IOException;
+    }
+
+    private void readCentralDirectory() throws IOException
+    {
+        final FileChannel channel = this.raf.getChannel();
+        this.entries = readCentralDirectory(String.valueOf(this.file), channel.size(),
+            new Source()
+            {
+                public ByteBuffer load(long position, int size) throws IOException
+                {
+                    return ZipIndex.this.load(channel, position, size);
+                }
+            });
+        this.entriesByName = new HashMap(this.entries.size() * 2);
+        for (int i = 0; i < this.entries.size(); i++)
+        {
+            Entry entry = (Entry) this.entries.get(i);
+            if (!this.entriesByName.containsKey(entry.name))
+            {
+                this.entriesByName.put(entry.name, entry);
+            }
+        }
+    }
+
+    private static List readCentralDirectory(String description, long length, Source source)
+        throws IOException
+    {
+        int tailSize = (int) Math.min(length, END_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = source.load(length - tailSize, tailSize);
+
+        int end = -1;
+        for (int i = tailSize - END_SIZE; i >= 0; i--)
+        {
+            if (tail.getInt(i) == END_SIGNATURE)
+            {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1)
+        {
+            throw new IOException("[" + description + "] is not a ZIP archive");
+        }
+
+        int count = tail.getShort(end + 10) & 0xffff;
+        long directorySize = tail.getInt(end + 12) & 0xffffffffL;
+        long directoryOffset = tail.getInt(end + 16) & 0xffffffffL;
+        if (count == 0xffff || directoryOffset == 0xffffffffL)
+        {
+            throw new IOException("[" + description
+                + "] is a ZIP64 archive, which is not supported");
+        }
+
+        ByteBuffer directory = source.load(directoryOffset, (int) directorySize);
+        List entries = new ArrayList(count);
+        int position = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE)
+            {
+                throw new IOException("Corrupt central directory in [" + description + "]");
+            }
+            Entry entry = new Entry();
+            entry.flags = directory.getShort(position + 8) & 0xffff;
+            entry.method = directory.getShort(position + 10) & 0xffff;
+            entry.dosTime = directory.getInt(position + 12);
+            entry.crc = directory.getInt(position + 16) & 0xffffffffL;
+            entry.compressedSize = directory.getInt(position + 20) & 0xffffffffL;
+            entry.size = directory.getInt(position + 24) & 0xffffffffL;
+            int nameLength = directory.getShort(position + 28) & 0xffff;
+            int extraLength = directory.getShort(position + 30) & 0xffff;
+            int commentLength = directory.getShort(position + 32) & 0xffff;
+            entry.localHeaderOffset = directory.getInt(position + 42) & 0xffffffffL;
+
+            byte[] name = new byte[nameLength];
+            directory.position(position + CENTRAL_HEADER_SIZE);
+            directory.get(name);
+            entry.name = decode(name, (entry.flags & FLAG_UTF8) != 0);
+
+            entries.add(entry);
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * @param name the bytes of an entry name
+     * @param utf8 whether the name is encoded in UTF-8, as told by {@link #FLAG_UTF8}, rather
+     *        than in CP437
+     */
+    static String decode(byte[] name, boolean utf8)
+    {
+        if (utf8)
+        {
+            try
+            {
+                return new String(name, "UTF-8");
+            }
+            catch (UnsupportedEncodingException e)
+            {
+                throw new IllegalStateException("UTF-8 is not supported");
+            }
+        }
+
+        // CP437 is not among the charsets every JVM supports
+        char[] chars = new char[name.length];
+        for (int i = 0; i < name.length; i++)
+        {
+            int b = name[i] & 0xff;
+            chars[i] = b < 0x80 ? (char) b : CP437_HIGH.charAt(b - 0x80);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return a little endian buffer holding <code>size</code> bytes of the archive, mapped if
+     *         the index is
+     */
+    private ByteBuffer load(FileChannel channel, long position, int size) throws IOException
+    {
+        if (this.mapped)
+        {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, size)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return read(channel, position, size);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size)
+        throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) == -1)
+            {
+                throw new IOException("Unexpected end of ZIP archive");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public File getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * @return the {@link Entry} list, in central directory order
+     */
+    public List getEntries()
+    {
+        return Collections.unmodifiableList(this.entries);
+    }
+
+    /**
+     * @param name the name of an entry
+     * @return the first entry called <code>name</code>, or null if there is none
+     */
+    public Entry getEntry(String name)
+    {
+        return (Entry) this.entriesByName.get(name);
+    }
+
+    /**
+     * @param name the name of an entry
+     * @return true if the archive contains an entry called <code>name</code>
+     */
+    public boolean contains(String name)
+    {
+        return this.entriesByName.containsKey(name);
+    }
+
+    /**
+     * @return a channel on the archive, for copying compressed data
+     */
+    public FileChannel getChannel()
+    {
+        return this.raf.getChannel();
+    }
+
+    /**
+     * @param entry an entry of this archive
+     * @return the position of the (compressed) data of <code>entry</code> in the archive
+     * @throws IOException if the local header of the entry cannot be read
+     */
+    public long getDataOffset(Entry entry) throws IOException
+    {
+        ByteBuffer header = read(getChannel(), entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE)
+        {
+            throw new IOException("Corrupt local header for " + entry.name + " in ["
+                + this.file + "]");
+        }
+        int nameLength = header.getShort(26) & 0xffff;
+        int extraLength = header.getShort(28) & 0xffff;
+        return entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    /**
+     * @param entry an entry of this archive
+     * @return the uncompressed content of <code>entry</code>
+     * @throws IOException if the entry cannot be read or is corrupt
+     */
+    public byte[] read(Entry entry) throws IOException
+    {
+        if (entry.method == ZipEntry.STORED)
+        {
+            return read(getChannel(), getDataOffset(entry), (int) entry.compressedSize).array();
+        }
+        return inflate(entry, 0);
+    }
+
+    /**
+     * Inflate a compressed entry, reading its data by chunks and keeping only the end of its
+     * content.
+     *
+     * @param entry a compressed entry of this archive
+     * @param offset where the kept content starts in the uncompressed entry
+     * @return the uncompressed content of <code>entry</code> from <code>offset</code> on
+     * @throws IOException if the entry cannot be read or is corrupt
+     */
+    private byte[] inflate(Entry entry, long offset) throws IOException
+    {
+        if (entry.method != ZipEntry.DEFLATED)
+        {
+            throw new IOException("Unsupported compression method " + entry.method + " for "
+                + entry.name + " in [" + this.file + "]");
+        }
+        if (entry.size - offset > Integer.MAX_VALUE)
+        {
+            throw new IOException("Entry " + entry.name + " in [" + this.file
+                + "] is too large");
+        }
+
+        FileChannel channel = getChannel();
+        long position = getDataOffset(entry);
+        long end = position + entry.compressedSize;
+        byte[] input = new byte[(int) Math.min(entry.compressedSize, INFLATE_CHUNK_SIZE)];
+        byte[] skipped = new byte[(int) Math.min(offset, INFLATE_CHUNK_SIZE)];
+        byte[] content = new byte[(int) (entry.size - offset)];
+        Inflater inflater = new Inflater(true);
+        try
+        {
+            long inflated = 0;
+            while (inflated < entry.size && !inflater.finished())
+            {
+                if (inflater.needsInput())
+                {
+                    if (position == end)
+                    {
+                        break;
+                    }
+                    ByteBuffer chunk = ByteBuffer.wrap(input, 0,
+                        (int) Math.min(input.length, end - position));
+                    if (channel.read(chunk, position) == -1)
+                    {
+                        throw new IOException("Unexpected end of ZIP archive");
+                    }
+                    position += chunk.position();
+                    inflater.setInput(input, 0, chunk.position());
+                }
+
+                int read;
+                if (inflated < offset)
+                {
+                    read = inflater.inflate(skipped, 0,
+                        (int) Math.min(skipped.length, offset - inflated));
+                }
+                else
+                {
+                    read = inflater.inflate(content, (int) (inflated - offset),
+                        (int) (entry.size - inflated));
+                }
+                if (read == 0 && inflater.needsDictionary())
+                {
+                    break;
+                }
+                inflated += read;
+            }
+            if (inflated != entry.size)
+            {
+                throw new IOException("Truncated entry " + entry.name + " in [" + this.file
+                    + "]");
+            }
+            return content;
+        }
+        catch (DataFormatException e)
+        {
+            throw (IOException) new IOException("Corrupt entry " + entry.name + " in ["
+                + this.file + "]").initCause(e);
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
+    /**
+     * List the entries of an archive nested in this one, such as a JAR in a WAR. The central
+     * directory of a stored archive is read in place. A compressed one is inflated as a stream
+     * of which only the last {@link #NESTED_TAIL_SIZE} bytes are kept, and inflated again from
+     * the start of its central directory when that directory does not fit in them.
+     *
+     * @param entry an entry of this archive which is itself a ZIP archive
+     * @return the {@link Entry} list of the nested archive, in central directory order
+     * @throws IOException if the entry cannot be read or is not a ZIP archive
+     */
+    public List readNestedEntries(final Entry entry) throws IOException
+    {
+        String description = this.file + "!" + entry.name;
+        final long length = entry.size;
+        if (entry.method != ZipEntry.STORED)
+        {
+            return readCentralDirectory(description, length, new Source()
+            {
+                private long tailOffset = length;
+
+                private byte[] tail;
+
+                public ByteBuffer load(long position, int size) throws IOException
+                {
+                    if (position < 0 || position + size > length)
+                    {
+                        throw new IOException("Unexpected end of ZIP archive");
+                    }
+                    if (position < this.tailOffset)
+                    {
+                        this.tailOffset = Math.min(position,
+                            length - Math.min(length, NESTED_TAIL_SIZE));
+                        this.tail = inflate(entry, this.tailOffset);
+                    }
+                    return ByteBuffer.wrap(this.tail, (int) (position - this.tailOffset), size)
+                        .slice().order(ByteOrder.LITTLE_ENDIAN);
+                }
+            });
+        }
+
+        final long dataOffset = getDataOffset(entry);
+        return readCentralDirectory(description, length, new Source()
+        {
+            public ByteBuffer load(long position, int size) throws IOException
+            {
+                if (position < 0 || position + size > length)
+                {
+                    throw new IOException("Unexpected end of ZIP archive");
+                }
+                return read(getChannel(), dataOffset + position, size);
+            }
+        });
+    }
+
+    public void close() throws IOException
+    {
+        this.raf.close();
+    }
+}
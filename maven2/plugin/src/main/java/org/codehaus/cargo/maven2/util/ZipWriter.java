@@ -0,0 +1,384 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes a ZIP archive whose entries are mostly copied from other archives.
+ * <p/>
+ * {@link #copy(ZipIndex, ZipIndex.Entry)} copies the compressed data of an entry as is, with
+ * {@link FileChannel#transferTo}, together with the CRC and sizes found in the central directory
+ * of the source: nothing is inflated nor deflated again. Files added with
+ * {@link #putStored(String, long, File, long)} are transferred the same way. Only the content
+ * given to {@link #putDeflated(String, long, byte[])} is compressed.
+ * <p/>
+ * Entries are written without data descriptors, and the archive must fit in the original ZIP
+ * format (no more than 65535 entries, less than 4GB).
+ *
+ * @version $Id$
+ */
+public class ZipWriter
+{
+    private static final int VERSION = 20;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final long MAX_OFFSET = 0xffffffffL;
+
+    private static final int MAX_ENTRIES = 0xffff;
+
+    private FileOutputStream out;
+
+    private FileChannel channel;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    private long position;
+
+    private List entries = new ArrayList();
+
+    /**
+     * @param file the archive to create
+     * @throws IOException if the archive cannot be created
+     */
+    public ZipWriter(File file) throws IOException
+    {
+        this.out = new FileOutputStream(file);
+        this.channel = this.out.getChannel();
+    }
+
+    /**
+     * Copy an entry of another archive without decompressing it.
+     *
+     * @param source the archive holding <code>entry</code>
+     * @param entry the entry to copy
+     * @throws IOException if the entry cannot be read or written
+     */
+    public void copy(ZipIndex source, ZipIndex.Entry entry) throws IOException
+    {
+        ZipIndex.Entry copy = newEntry(entry.name, entry.method, entry.dosTime);
+        copy.flags |= entry.flags & ~(ZipIndex.FLAG_DATA_DESCRIPTOR | ZipIndex.FLAG_UTF8);
+        copy.crc = entry.crc;
+        copy.compressedSize = entry.compressedSize;
+        copy.size = entry.size;
+        writeLocalHeader(copy);
+        transfer(source.getChannel(), source.getDataOffset(entry), entry.compressedSize);
+    }
+
+    /**
+     * @param name the name of the directory, ending with <code>/</code>
+     * @param time the modification time of the directory
+     * @throws IOException if the entry cannot be written
+     */
+    public void putDirectory(String name, long time) throws IOException
+    {
+        writeLocalHeader(newEntry(name, ZipEntry.STORED, toDosTime(time)));
+    }
+
+    /**
+     * Store a file without compressing it.
+     *
+     * @param name the name of the entry
+     * @param time the modification time of the entry
+     * @param file the file to store
+     * @param crc the CRC of the content of <code>file</code>
+     * @throws IOException if the file cannot be read or the entry cannot be written
+     */
+    public void putStored(String name, long time, File file, long crc) throws IOException
+    {
+        ZipIndex.Entry entry = newEntry(name, ZipEntry.STORED, toDosTime(time));
+        entry.crc = crc;
+        entry.size = file.length();
+        entry.compressedSize = entry.size;
+        writeLocalHeader(entry);
+
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            transfer(in.getChannel(), 0, entry.size);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Compress and store some content.
+     *
+     * @param name the name of the entry
+     * @param time the modification time of the entry
+     * @param content the uncompressed content of the entry
+     * @throws IOException if the entry cannot be written
+     */
+    public void putDeflated(String name, long time, byte[] content) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 2 + 64);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try
+        {
+            deflater.setInput(content);
+            deflater.finish();
+            byte[] chunk = new byte[BUFFER_SIZE];
+            while (!deflater.finished())
+            {
+                int length = deflater.deflate(chunk);
+                compressed.write(chunk, 0, length);
+            }
+        }
+        finally
+        {
+            deflater.end();
+        }
+
+        ZipIndex.Entry entry = newEntry(name, ZipEntry.DEFLATED, toDosTime(time));
+        entry.crc = crc.getValue();
+        entry.size = content.length;
+        entry.compressedSize = compressed.size();
+        writeLocalHeader(entry);
+        write(compressed.toByteArray());
+    }
+
+    /**
+     * Write the central directory and close the archive.
+     *
+     * @throws IOException if the central directory cannot be written
+     */
+    public void close() throws IOException
+    {
+        try
+        {
+            long directoryOffset = this.position;
+            for (Iterator i = this.entries.iterator(); i.hasNext();)
+            {
+                ZipIndex.Entry entry = (ZipIndex.Entry) i.next();
+                byte[] name = encode(entry.name);
+                reserve(ZipIndex.CENTRAL_HEADER_SIZE);
+                this.buffer.putInt(ZipIndex.CENTRAL_HEADER_SIGNATURE);
+                this.buffer.putShort((short) VERSION);
+                this.buffer.putShort((short) VERSION);
+                this.buffer.putShort((short) entry.flags);
+                this.buffer.putShort((short) entry.method);
+                this.buffer.putInt(entry.dosTime);
+                this.buffer.putInt((int) entry.crc);
+                this.buffer.putInt((int) entry.compressedSize);
+                this.buffer.putInt((int) entry.size);
+                this.buffer.putShort((short) name.length);
+                // Extra field, comment, disk number, internal attributes
+                this.buffer.putShort((short) 0);
+                this.buffer.putShort((short) 0);
+                this.buffer.putShort((short) 0);
+                this.buffer.putShort((short) 0);
+                // External attributes: MS-DOS directory flag
+                this.buffer.putInt(entry.isDirectory() ? 0x10 : 0);
+                this.buffer.putInt((int) entry.localHeaderOffset);
+                this.position += ZipIndex.CENTRAL_HEADER_SIZE;
+                write(name);
+            }
+            long directorySize = this.position - directoryOffset;
+            checkOffset(this.position);
+
+            reserve(ZipIndex.END_SIZE);
+            this.buffer.putInt(ZipIndex.END_SIGNATURE);
+            this.buffer.putShort((short) 0);
+            this.buffer.putShort((short) 0);
+            this.buffer.putShort((short) this.entries.size());
+            this.buffer.putShort((short) this.entries.size());
+            this.buffer.putInt((int) directorySize);
+            this.buffer.putInt((int) directoryOffset);
+            this.buffer.putShort((short) 0);
+            this.position += ZipIndex.END_SIZE;
+            flush();
+        }
+        finally
+        {
+            this.out.close();
+        }
+    }
+
+    private ZipIndex.Entry newEntry(String name, int method, int dosTime) throws IOException
+    {
+        if (this.entries.size() == MAX_ENTRIES)
+        {
+            throw new IOException("Too many entries for a ZIP archive");
+        }
+        checkOffset(this.position);
+
+        ZipIndex.Entry entry = new ZipIndex.Entry();
+        entry.name = name;
+        entry.method = method;
+        entry.dosTime = dosTime;
+        entry.flags = isAscii(name) ? 0 : ZipIndex.FLAG_UTF8;
+        entry.localHeaderOffset = this.position;
+        this.entries.add(entry);
+        return entry;
+    }
+
+    private void writeLocalHeader(ZipIndex.Entry entry) throws IOException
+    {
+        byte[] name = encode(entry.name);
+        reserve(ZipIndex.LOCAL_HEADER_SIZE);
+        this.buffer.putInt(ZipIndex.LOCAL_HEADER_SIGNATURE);
+        this.buffer.putShort((short) VERSION);
+        this.buffer.putShort((short) entry.flags);
+        this.buffer.putShort((short) entry.method);
+        this.buffer.putInt(entry.dosTime);
+        this.buffer.putInt((int) entry.crc);
+        this.buffer.putInt((int) entry.compressedSize);
+        this.buffer.putInt((int) entry.size);
+        this.buffer.putShort((short) name.length);
+        this.buffer.putShort((short) 0);
+        this.position += ZipIndex.LOCAL_HEADER_SIZE;
+        write(name);
+    }
+
+    private void transfer(FileChannel source, long offset, long count) throws IOException
+    {
+        flush();
+        long transferred = 0;
+        while (transferred < count)
+        {
+            long done = source.transferTo(offset + transferred, count - transferred,
+                this.channel);
+            if (done <= 0)
+            {
+                throw new IOException("Unexpected end of data while copying a ZIP entry");
+            }
+            transferred += done;
+        }
+        this.position += count;
+    }
+
+    private void write(byte[] bytes) throws IOException
+    {
+        if (bytes.length > this.buffer.remaining())
+        {
+            flush();
+            this.channel.write(ByteBuffer.wrap(bytes));
+        }
+        else
+        {
+            this.buffer.put(bytes);
+        }
+        this.position += bytes.length;
+    }
+
+    private void reserve(int size) throws IOException
+    {
+        if (this.buffer.remaining() < size)
+        {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException
+    {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining())
+        {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    private static void checkOffset(long offset) throws IOException
+    {
+        if (offset > MAX_OFFSET)
+        {
+            throw new IOException("ZIP archive larger than 4GB, which is not supported");
+        }
+    }
+
+    private static boolean isAscii(String name)
+    {
+        for (int i = 0; i < name.length(); i++)
+        {
+            if (name.charAt(i) > 0x7f)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] encode(String name)
+    {
+        try
+        {
+            return name.getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException("UTF-8 is not supported");
+        }
+    }
+
+    /**
+     * @param time a time in milliseconds
+     * @return <code>time</code> in MS-DOS format, as stored in ZIP headers
+     */
+    static int toDosTime(long time)
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980)
+        {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+            | calendar.get(Calendar.DAY_OF_MONTH) << 16
+            | calendar.get(Calendar.HOUR_OF_DAY) << 11 | calendar.get(Calendar.MINUTE) << 5
+            | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    /**
+     * @param dosTime a time in MS-DOS format
+     * @return <code>dosTime</code> in milliseconds
+     */
+    static long fromDosTime(int dosTime)
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(((dosTime >> 25) & 0x7f) + 1980, ((dosTime >> 21) & 0x0f) - 1,
+            (dosTime >> 16) & 0x1f, (dosTime >> 11) & 0x1f, (dosTime >> 5) & 0x3f,
+            (dosTime << 1) & 0x3e);
+        return calendar.getTimeInMillis();
+    }
+}
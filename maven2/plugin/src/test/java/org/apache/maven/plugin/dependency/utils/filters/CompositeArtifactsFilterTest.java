@@ -0,0 +1,261 @@
+package org.apache.maven.plugin.dependency.utils.filters;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.shared.artifact.filter.collection.ArtifactFilterException;
+import org.apache.maven.shared.artifact.filter.collection.ArtifactIdFilter;
+import org.apache.maven.shared.artifact.filter.collection.ArtifactsFilter;
+import org.apache.maven.shared.artifact.filter.collection.ClassifierFilter;
+import org.apache.maven.shared.artifact.filter.collection.GroupIdFilter;
+import org.apache.maven.shared.artifact.filter.collection.ScopeFilter;
+import org.apache.maven.shared.artifact.filter.collection.TransitivityFilter;
+import org.apache.maven.shared.artifact.filter.collection.TypeFilter;
+
+/**
+ * Unit tests for {@link CompositeArtifactsFilter}, checking each criterion against the
+ * collection filter it replaces.
+ *
+ * @version $Id$
+ */
+public class CompositeArtifactsFilterTest
+    extends TestCase
+{
+
+    private static final String[] SCOPES = { "", Artifact.SCOPE_COMPILE, Artifact.SCOPE_PROVIDED,
+        Artifact.SCOPE_RUNTIME, Artifact.SCOPE_SYSTEM, Artifact.SCOPE_TEST };
+
+    private Set artifacts;
+
+    private Artifact direct;
+
+    protected void setUp()
+    {
+        artifacts = new LinkedHashSet();
+        direct = createArtifact( "org.codehaus.cargo", "cargo-core", "1.0", Artifact.SCOPE_COMPILE, "jar", null );
+        artifacts.add( direct );
+        artifacts.add( createArtifact( "org.codehaus.cargo", "cargo-core", "1.0", Artifact.SCOPE_COMPILE, "jar",
+                                       "sources" ) );
+        artifacts.add( createArtifact( "org.codehaus", "plexus", "1.1", Artifact.SCOPE_RUNTIME, "jar", null ) );
+        artifacts.add( createArtifact( "org.codehausen", "other", "1.0", Artifact.SCOPE_PROVIDED, "war", null ) );
+        artifacts.add( createArtifact( "org.apache", "servlet", "2.4", Artifact.SCOPE_SYSTEM, "jar", null ) );
+        artifacts.add( createArtifact( "junit", "junit", "3.8.1", Artifact.SCOPE_TEST, "jar", null ) );
+        artifacts.add( createArtifact( "org.example", "unscoped", "1.0", null, "jar", "jdk14" ) );
+    }
+
+    public void testNoCriteriaReturnsTheSameSet()
+        throws Exception
+    {
+        CompositeArtifactsFilter filter = new CompositeArtifactsFilter();
+        filter.setTransitivity( new HashSet(), false );
+        filter.setScope( "", "" );
+        filter.setTypes( "", "" );
+
+        assertSame( artifacts, filter.filter( artifacts ) );
+    }
+
+    public void testTransitivityMatchesTransitivityFilter()
+    {
+        Set directDependencies = new HashSet();
+        // an equal artifact, as the direct dependencies of a project are other instances
+        directDependencies.add( createArtifact( "org.codehaus.cargo", "cargo-core", "1.0", Artifact.SCOPE_COMPILE,
+                                                "jar", null ) );
+        directDependencies.add( createArtifact( "org.codehaus", "plexus", "1.0", Artifact.SCOPE_RUNTIME, "jar",
+                                                null ) );
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            boolean excludeTransitive = i == 1;
+            CompositeArtifactsFilter filter = new CompositeArtifactsFilter();
+            filter.setTransitivity( directDependencies, excludeTransitive );
+            assertSameArtifacts( new TransitivityFilter( directDependencies, excludeTransitive ), filter );
+        }
+
+        // neither the sources of cargo-core nor plexus 1.1 are the direct dependencies
+        CompositeArtifactsFilter filter = new CompositeArtifactsFilter();
+        filter.setTransitivity( directDependencies, true );
+        assertEquals( 1, filter.filter( artifacts ).size() );
+        assertTrue( filter.filter( artifacts ).contains( direct ) );
+    }
+
+    public void testScopesMatchScopeFilter()
+        throws Exception
+    {
+        for ( int i = 0; i < SCOPES.length; i++ )
+        {
+            CompositeArtifactsFilter filter = new CompositeArtifactsFilter();
+            filter.setScope( SCOPES[i], "" );
+            assertSameArtifacts( new ScopeFilter( SCOPES[i], "" ), filter );
+
+            if ( !Artifact.SCOPE_TEST.equals( SCOPES[i] ) )
+            {
+                filter = new CompositeArtifactsFilter();
+                filter.setScope( "", SCOPES[i] );
+                assertSameArtifacts( new ScopeFilter( "", SCOPES[i] ), filter );
+            }
+        }
+    }
+
+    public void testUnscopedArtifactsMatchScopeFilter()
+        throws Exception
+    {
+        Artifact unscoped = createArtifact( "org.example", "unscoped", "1.0", null, "jar", "jdk14" );
+        Set single = new HashSet();
+        single.add( unscoped );
+
+        for ( int i = 1; i < SCOPES.length; i++ )
+        {
+            CompositeArtifactsFilter filter = new CompositeArtifactsFilter();
+            filter.setScope( SCOPES[i], "" );
+            assertEquals( SCOPES[i], new ScopeFilter( SCOPES[i], "" ).filter( single ).contains( unscoped ),
+                          filter.isArtifactIncluded( unscoped ) );
+        }
+        // excluding runtime also excludes the unscoped artifacts, excluding provided does not
+        CompositeArtifactsFilter filter = new CompositeArtifactsFilter();
+        filter.setScope( "", Artifact.SCOPE_RUNTIME );
+        assertFalse( filter.isArtifactIncluded( unscoped ) );
+        filter.setScope( "", Artifact.SCOPE_PROVIDED );
+        assertTrue( filter.isArtifactIncluded( unscoped ) );
+    }
+
+    public void testExcludedScopeIsIgnoredWithAnIncludedScope()
+        throws Exception
+    {
+        CompositeArtifactsFilter filter = new CompositeArtifactsFilter();
+        filter.setScope( Artifact.SCOPE_RUNTIME, Artifact.SCOPE_COMPILE );
+        assertSameArtifacts( new ScopeFilter( Artifact.SCOPE_RUNTIME, Artifact.SCOPE_COMPILE ), filter );
+
+        filter.setScope( Artifact.SCOPE_COMPILE, Artifact.SCOPE_TEST );
+        assertSameArtifacts( new ScopeFilter( Artifact.SCOPE_COMPILE, Artifact.SCOPE_TEST ), filter );
+    }
+
+    public void testExcludingTestScopeFails()
+    {
+        try
+        {
+            new CompositeArtifactsFilter().setScope( "", Artifact.SCOPE_TEST );
+            fail( "Excluding the test scope excludes everything" );
+        }
+        catch ( ArtifactFilterException expected )
+        {
+            // expected
+        }
+    }
+
+    public void testUnknownScopeFails()
+    {
+        try
+        {
+            new CompositeArtifactsFilter().setScope( "everything", "" );
+            fail( "Unknown scope" );
+        }
+        catch ( ArtifactFilterException expected )
+        {
+            // expected
+        }
+    }
+
+    public void testTypesMatchTypeFilter()
+    {
+        CompositeArtifactsFilter filter = new CompositeArtifactsFilter();
+        filter.setTypes( "war", "" );
+        assertSameArtifacts( new TypeFilter( "war", "" ), filter );
+        filter.setTypes( "", "war" );
+        assertSameArtifacts( new TypeFilter( "", "war" ), filter );
+        filter.setTypes( "jar,war", "war" );
+        assertSameArtifacts( new TypeFilter( "jar,war", "war" ), filter );
+    }
+
+    public void testClassifiersMatchClassifierFilter()
+    {
+        CompositeArtifactsFilter filter = new CompositeArtifactsFilter();
+        filter.setClassifiers( "sources,jdk14", "" );
+        assertSameArtifacts( new ClassifierFilter( "sources,jdk14", "" ), filter );
+        // artifacts without a classifier are never excluded
+        filter.setClassifiers( "", "sources" );
+        assertSameArtifacts( new ClassifierFilter( "", "sources" ), filter );
+    }
+
+    public void testGroupIdsMatchGroupIdFilterPrefixes()
+    {
+        CompositeArtifactsFilter filter = new CompositeArtifactsFilter();
+        filter.setGroupIds( "org.codehaus", "" );
+        assertSameArtifacts( new GroupIdFilter( "org.codehaus", "" ), filter );
+        // org.codehaus also matches org.codehausen, as GroupIdFilter compares prefixes
+        assertEquals( 4, filter.filter( artifacts ).size() );
+
+        filter.setGroupIds( "org", "org.codehaus.cargo" );
+        assertSameArtifacts( new GroupIdFilter( "org", "org.codehaus.cargo" ), filter );
+    }
+
+    public void testArtifactIdsMatchArtifactIdFilter()
+    {
+        CompositeArtifactsFilter filter = new CompositeArtifactsFilter();
+        filter.setArtifactIds( "cargo-core,junit", "" );
+        assertSameArtifacts( new ArtifactIdFilter( "cargo-core,junit", "" ), filter );
+        filter.setArtifactIds( "", "cargo" );
+        assertSameArtifacts( new ArtifactIdFilter( "", "cargo" ), filter );
+    }
+
+    public void testCriteriaAreCombined()
+        throws Exception
+    {
+        CompositeArtifactsFilter filter = new CompositeArtifactsFilter();
+        filter.setScope( Artifact.SCOPE_COMPILE, "" );
+        filter.setTypes( "jar", "" );
+        filter.setGroupIds( "org.codehaus", "" );
+        filter.setClassifiers( "", "sources" );
+
+        Set expected = new ClassifierFilter( "", "sources" ).filter(
+            new GroupIdFilter( "org.codehaus", "" ).filter(
+                new TypeFilter( "jar", "" ).filter(
+                    new ScopeFilter( Artifact.SCOPE_COMPILE, "" ).filter( artifacts ) ) ) );
+        assertEquals( expected, filter.filter( artifacts ) );
+        assertEquals( 1, expected.size() );
+    }
+
+    private void assertSameArtifacts( ArtifactsFilter expected, CompositeArtifactsFilter actual )
+    {
+        try
+        {
+            assertEquals( new HashSet( expected.filter( artifacts ) ), new HashSet( actual.filter( artifacts ) ) );
+        }
+        catch ( ArtifactFilterException e )
+        {
+            fail( e.getMessage() );
+        }
+    }
+
+    private static Artifact createArtifact( String groupId, String artifactId, String version, String scope,
+                                            String type, String classifier )
+    {
+        return new DefaultArtifact( groupId, artifactId, VersionRange.createFromVersion( version ), scope, type,
+                                    classifier, new DefaultArtifactHandler( type ) );
+    }
+}
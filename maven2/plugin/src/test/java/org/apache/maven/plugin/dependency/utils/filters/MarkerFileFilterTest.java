@@ -0,0 +1,264 @@
+package org.apache.maven.plugin.dependency.utils.filters;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.dependency.fromConfiguration.ArtifactItem;
+import org.apache.maven.plugin.dependency.utils.markers.MarkerHandler;
+import org.apache.maven.plugin.dependency.utils.markers.SourcesFileMarkerHandler;
+import org.apache.maven.shared.artifact.filter.collection.ArtifactFilterException;
+
+/**
+ * Unit tests for {@link MarkerFileFilter#filterMarkers(Set, int)}.
+ *
+ * @version $Id$
+ */
+public class MarkerFileFilterTest
+    extends TestCase
+{
+
+    private static final int ARTIFACTS = 20;
+
+    private File directory;
+
+    private Set artifacts;
+
+    private Set marked;
+
+    protected void setUp()
+        throws Exception
+    {
+        directory = File.createTempFile( "markers", "" );
+        directory.delete();
+        directory.mkdirs();
+
+        // every third artifact is marked, in an order that is not sorted
+        artifacts = new LinkedHashSet();
+        marked = new HashSet();
+        SourcesFileMarkerHandler handler = new SourcesFileMarkerHandler( directory );
+        for ( int i = ARTIFACTS; i > 0; i-- )
+        {
+            Artifact artifact = createArtifact( "artifact" + i );
+            artifacts.add( artifact );
+            if ( i % 3 == 0 )
+            {
+                marked.add( artifact );
+                handler.setArtifact( artifact );
+                handler.setResolved( i % 2 == 0 );
+                handler.setMarker();
+            }
+        }
+    }
+
+    protected void tearDown()
+    {
+        File[] files = directory.listFiles();
+        for ( int i = 0; files != null && i < files.length; i++ )
+        {
+            files[i].delete();
+        }
+        directory.delete();
+    }
+
+    public void testMarkedArtifactsAreSkippedInOrder()
+        throws Exception
+    {
+        SourcesFileMarkerHandler handler = new SourcesFileMarkerHandler( directory );
+        MarkerFileFilter filter = new MarkerFileFilter( false, false, false, handler );
+
+        for ( int threads = 1; threads <= 4; threads++ )
+        {
+            MarkerFilterResult result = filter.filterMarkers( artifacts, threads );
+            assertSplit( result );
+        }
+    }
+
+    public void testResultMatchesTheArtifactByArtifactFilter()
+        throws Exception
+    {
+        SourcesFileMarkerHandler handler = new SourcesFileMarkerHandler( directory );
+        MarkerFileFilter filter = new MarkerFileFilter( false, false, false, handler );
+
+        Set included = filter.filterMarkers( artifacts, 3 ).getIncluded();
+        Artifact[] all = (Artifact[]) artifacts.toArray( new Artifact[artifacts.size()] );
+        for ( int i = 0; i < all.length; i++ )
+        {
+            assertEquals( all[i].getArtifactId(), filter.isArtifactIncluded( new ArtifactItem( all[i] ) ),
+                          included.contains( all[i] ) );
+        }
+    }
+
+    public void testOverWriteReleasesIncludesEverything()
+        throws Exception
+    {
+        MarkerFileFilter filter = new MarkerFileFilter( true, false, false, new SourcesFileMarkerHandler( directory ) );
+
+        MarkerFilterResult result = filter.filterMarkers( artifacts, 4 );
+        assertEquals( new ArrayList( artifacts ), new ArrayList( result.getIncluded() ) );
+        assertTrue( result.getSkipped().isEmpty() );
+    }
+
+    public void testHandlerWithoutBulkLookupIsUsedOneArtifactAtATime()
+        throws Exception
+    {
+        RecordingHandler handler = new RecordingHandler();
+        MarkerFileFilter filter = new MarkerFileFilter( false, false, true, handler );
+
+        for ( int threads = 1; threads <= 4; threads++ )
+        {
+            assertSplit( filter.filterMarkers( artifacts, threads ) );
+        }
+        assertEquals( 1, handler.maximumCallers );
+        // isMarkerOlder is only asked for the marked artifacts
+        assertEquals( 4 * ( ARTIFACTS + marked.size() ), handler.calls );
+    }
+
+    public void testHandlerFailureIsReported()
+    {
+        RecordingHandler handler = new RecordingHandler();
+        handler.failure = new MojoExecutionException( "Cannot read markers" );
+        MarkerFileFilter filter = new MarkerFileFilter( false, false, false, handler );
+
+        try
+        {
+            filter.filterMarkers( artifacts, 4 );
+            fail( "The handler failed" );
+        }
+        catch ( ArtifactFilterException e )
+        {
+            assertEquals( "Cannot read markers", e.getMessage() );
+            assertSame( handler.failure, e.getCause() );
+        }
+    }
+
+    private void assertSplit( MarkerFilterResult result )
+    {
+        List included = new ArrayList();
+        List skipped = new ArrayList();
+        Artifact[] all = (Artifact[]) artifacts.toArray( new Artifact[artifacts.size()] );
+        for ( int i = 0; i < all.length; i++ )
+        {
+            ( marked.contains( all[i] ) ? skipped : included ).add( all[i] );
+        }
+        assertEquals( included, new ArrayList( result.getIncluded() ) );
+        assertEquals( skipped, new ArrayList( result.getSkipped() ) );
+    }
+
+    private static Artifact createArtifact( String artifactId )
+    {
+        return new DefaultArtifact( "org.example", artifactId, VersionRange.createFromVersion( "1.0" ),
+                                    Artifact.SCOPE_COMPILE, "jar", null, new DefaultArtifactHandler( "jar" ) );
+    }
+
+    /**
+     * A handler that cannot check markers in bulk, and records how it is called.
+     */
+    private class RecordingHandler
+        implements MarkerHandler
+    {
+        private Artifact artifact;
+
+        private int callers;
+
+        int maximumCallers;
+
+        int calls;
+
+        MojoExecutionException failure;
+
+        public boolean isMarkerSet()
+            throws MojoExecutionException
+        {
+            Artifact current = enter();
+            try
+            {
+                if ( failure != null )
+                {
+                    throw failure;
+                }
+                return marked.contains( current );
+            }
+            finally
+            {
+                leave();
+            }
+        }
+
+        public boolean isMarkerOlder( Artifact theArtifact )
+        {
+            Artifact current = enter();
+            try
+            {
+                assertSame( current, theArtifact );
+                return false;
+            }
+            finally
+            {
+                leave();
+            }
+        }
+
+        public void setMarker()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean clearMarker()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setArtifact( Artifact theArtifact )
+        {
+            this.artifact = theArtifact;
+        }
+
+        private Artifact enter()
+        {
+            synchronized ( this )
+            {
+                callers++;
+                calls++;
+                maximumCallers = Math.max( maximumCallers, callers );
+            }
+            // leave time for another thread to change the current artifact
+            Thread.yield();
+            return artifact;
+        }
+
+        private synchronized void leave()
+        {
+            callers--;
+        }
+    }
+}
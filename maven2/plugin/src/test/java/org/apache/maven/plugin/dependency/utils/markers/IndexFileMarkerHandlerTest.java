@@ -0,0 +1,278 @@
+package org.apache.maven.plugin.dependency.utils.markers;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.plugin.dependency.fromConfiguration.ArtifactItem;
+import org.apache.maven.plugin.dependency.utils.filters.MarkerFilterResult;
+import org.apache.maven.plugin.dependency.utils.filters.ResolveFileFilter;
+
+/**
+ * Unit tests for {@link IndexFileMarkerHandler}.
+ *
+ * @version $Id$
+ */
+public class IndexFileMarkerHandlerTest
+    extends TestCase
+{
+
+    private static final long TIME = 1000000000000L;
+
+    private File indexFile;
+
+    protected void setUp()
+        throws Exception
+    {
+        File directory = File.createTempFile( "markers", "" );
+        directory.delete();
+        this.indexFile = new File( directory, IndexFileMarkerHandler.INDEX_FILE_NAME );
+    }
+
+    protected void tearDown()
+    {
+        File[] files = this.indexFile.getParentFile().listFiles();
+        for ( int i = 0; files != null && i < files.length; i++ )
+        {
+            files[i].delete();
+        }
+        this.indexFile.getParentFile().delete();
+    }
+
+    public void testMissingIndexHasNoMarkers()
+        throws Exception
+    {
+        IndexFileMarkerHandler handler = new IndexFileMarkerHandler( this.indexFile );
+        handler.setArtifact( createArtifact( "first" ) );
+
+        assertFalse( handler.isMarkerSet() );
+        assertTrue( handler.isMarkerOlder( handler.getArtifact() ) );
+    }
+
+    public void testMarkersSurviveFlush()
+        throws Exception
+    {
+        IndexFileMarkerHandler handler = new IndexFileMarkerHandler( this.indexFile );
+        handler.setArtifact( createArtifact( "first" ) );
+        handler.setMarker();
+        handler.setArtifact( createArtifact( "second" ) );
+        handler.setMarker();
+        handler.flush();
+
+        IndexFileMarkerHandler reloaded = new IndexFileMarkerHandler( this.indexFile );
+        reloaded.setArtifact( createArtifact( "second" ) );
+        assertTrue( reloaded.isMarkerSet() );
+        reloaded.setArtifact( createArtifact( "third" ) );
+        assertFalse( reloaded.isMarkerSet() );
+    }
+
+    public void testClearedMarkerIsNotFlushedAgain()
+        throws Exception
+    {
+        IndexFileMarkerHandler handler = new IndexFileMarkerHandler( this.indexFile );
+        handler.setArtifact( createArtifact( "first" ) );
+        handler.setMarker();
+        handler.flush();
+        assertTrue( handler.clearMarker() );
+        handler.flush();
+
+        IndexFileMarkerHandler reloaded = new IndexFileMarkerHandler( this.indexFile );
+        reloaded.setArtifact( createArtifact( "first" ) );
+        assertFalse( reloaded.isMarkerSet() );
+    }
+
+    public void testFlushReplacesTheIndexWithoutLeavingTemporaryFiles()
+        throws Exception
+    {
+        IndexFileMarkerHandler handler = new IndexFileMarkerHandler( this.indexFile );
+        handler.setArtifact( createArtifact( "first" ) );
+        handler.setMarker();
+        handler.flush();
+        handler.setArtifact( createArtifact( "second" ) );
+        handler.setMarker();
+        handler.flush();
+
+        assertEquals( 1, this.indexFile.getParentFile().list().length );
+    }
+
+    public void testCorruptIndexHasNoMarkers()
+        throws Exception
+    {
+        IndexFileMarkerHandler handler = new IndexFileMarkerHandler( this.indexFile );
+        handler.setArtifact( createArtifact( "first" ) );
+        handler.setMarker();
+        handler.flush();
+        write( this.indexFile, "# Marker index, version 1\norg.example:first:jar:1.0\tresolved\tnot a time\n" );
+
+        IndexFileMarkerHandler reloaded = new IndexFileMarkerHandler( this.indexFile );
+        reloaded.setArtifact( createArtifact( "first" ) );
+        assertFalse( reloaded.isMarkerSet() );
+    }
+
+    public void testIndexOfAnotherFormatHasNoMarkers()
+        throws Exception
+    {
+        write( this.indexFile, "org.example:first:jar:1.0\tresolved\t0\n" );
+
+        IndexFileMarkerHandler handler = new IndexFileMarkerHandler( this.indexFile );
+        handler.setArtifact( createArtifact( "first" ) );
+        assertFalse( handler.isMarkerSet() );
+    }
+
+    public void testResolveFileFilterSkipsMarkedArtifacts()
+        throws Exception
+    {
+        Artifact marked = createArtifact( "marked" );
+        Artifact unresolved = createArtifact( "unresolved" );
+        Artifact unmarked = createArtifact( "unmarked" );
+
+        IndexFileMarkerHandler handler = new IndexFileMarkerHandler( this.indexFile, true );
+        handler.setArtifact( marked );
+        handler.setMarker();
+        handler.setResolved( false );
+        handler.setArtifact( unresolved );
+        handler.setMarker();
+        handler.flush();
+
+        // a marker counts whichever way the artifact was resolved, as with the sources markers
+        ResolveFileFilter filter = new ResolveFileFilter( new IndexFileMarkerHandler( this.indexFile ) );
+        assertFalse( filter.isArtifactIncluded( new ArtifactItem( marked ) ) );
+        assertFalse( filter.isArtifactIncluded( new ArtifactItem( unresolved ) ) );
+        assertTrue( filter.isArtifactIncluded( new ArtifactItem( unmarked ) ) );
+
+        Set artifacts = new LinkedHashSet();
+        artifacts.add( marked );
+        artifacts.add( unmarked );
+        artifacts.add( unresolved );
+        MarkerFilterResult result = filter.filterMarkers( artifacts, 2 );
+        assertEquals( 1, result.getIncluded().size() );
+        assertTrue( result.getIncluded().contains( unmarked ) );
+        assertEquals( 2, result.getSkipped().size() );
+    }
+
+    public void testChecksumModeTrustsAnUnchangedSizeAndDate()
+        throws Exception
+    {
+        Artifact artifact = createArtifact( "first", "content" );
+        IndexFileMarkerHandler handler = createChecksumHandler( artifact );
+        handler.setMarker();
+
+        // same size and date: the file is not hashed again, so even new content goes unnoticed
+        rewrite( artifact.getFile(), "CONTENT", TIME );
+        assertFalse( handler.isMarkerOlder( artifact ) );
+    }
+
+    public void testChecksumModeHashesAFileWithAnotherDate()
+        throws Exception
+    {
+        Artifact artifact = createArtifact( "first", "content" );
+        IndexFileMarkerHandler handler = createChecksumHandler( artifact );
+        handler.setMarker();
+
+        rewrite( artifact.getFile(), "content", TIME + 10000 );
+        assertFalse( handler.isMarkerOlder( artifact ) );
+
+        rewrite( artifact.getFile(), "CONTENT", TIME + 20000 );
+        assertTrue( handler.isMarkerOlder( artifact ) );
+    }
+
+    public void testChecksumModeRemembersTheDateOfUnchangedContent()
+        throws Exception
+    {
+        Artifact artifact = createArtifact( "first", "content" );
+        IndexFileMarkerHandler handler = createChecksumHandler( artifact );
+        handler.setMarker();
+        rewrite( artifact.getFile(), "content", TIME + 10000 );
+        assertFalse( handler.isMarkerOlder( artifact ) );
+        handler.flush();
+
+        // the new date was recorded with the checksum, so the file is not hashed again
+        IndexFileMarkerHandler reloaded = createChecksumHandler( artifact );
+        rewrite( artifact.getFile(), "CONTENT", TIME + 10000 );
+        assertFalse( reloaded.isMarkerOlder( artifact ) );
+    }
+
+    public void testChecksumModeSeesAnotherSizeWithoutHashing()
+        throws Exception
+    {
+        Artifact artifact = createArtifact( "first", "content" );
+        IndexFileMarkerHandler handler = createChecksumHandler( artifact );
+        handler.setMarker();
+
+        rewrite( artifact.getFile(), "more content", TIME );
+        assertTrue( handler.isMarkerOlder( artifact ) );
+    }
+
+    private IndexFileMarkerHandler createChecksumHandler( Artifact artifact )
+    {
+        IndexFileMarkerHandler handler = new IndexFileMarkerHandler( this.indexFile, true );
+        handler.setChecksums( true );
+        handler.setArtifact( artifact );
+        return handler;
+    }
+
+    private Artifact createArtifact( String artifactId, String content )
+        throws IOException
+    {
+        Artifact artifact = createArtifact( artifactId );
+        File file = new File( this.indexFile.getParentFile(), artifactId + ".jar" );
+        rewrite( file, content, TIME );
+        artifact.setFile( file );
+        return artifact;
+    }
+
+    private static void rewrite( File file, String content, long lastModified )
+        throws IOException
+    {
+        write( file, content );
+        file.setLastModified( lastModified );
+    }
+
+    static Artifact createArtifact( String artifactId )
+    {
+        return new DefaultArtifact( "org.example", artifactId, VersionRange.createFromVersion( "1.0" ),
+                                    Artifact.SCOPE_COMPILE, "jar", null, new DefaultArtifactHandler( "jar" ) );
+    }
+
+    static void write( File file, String content )
+        throws IOException
+    {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream( file );
+        try
+        {
+            out.write( content.getBytes( "UTF-8" ) );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
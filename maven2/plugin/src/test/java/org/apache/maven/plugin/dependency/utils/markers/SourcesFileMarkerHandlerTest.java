@@ -0,0 +1,172 @@
+package org.apache.maven.plugin.dependency.utils.markers;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * Unit tests for the marker lookup of {@link DefaultFileMarkerHandler} and the marker file names
+ * of {@link SourcesFileMarkerHandler}.
+ *
+ * @version $Id$
+ */
+public class SourcesFileMarkerHandlerTest
+    extends TestCase
+{
+
+    private static final long TIME = 1000000000000L;
+
+    private File directory;
+
+    private Artifact artifact;
+
+    protected void setUp()
+        throws Exception
+    {
+        directory = File.createTempFile( "markers", "" );
+        directory.delete();
+        directory.mkdirs();
+
+        artifact = IndexFileMarkerHandlerTest.createArtifact( "first" );
+        File file = new File( directory, "first.jar" );
+        IndexFileMarkerHandlerTest.write( file, "content" );
+        file.setLastModified( TIME );
+        artifact.setFile( file );
+    }
+
+    protected void tearDown()
+    {
+        File[] files = directory.listFiles();
+        for ( int i = 0; files != null && i < files.length; i++ )
+        {
+            files[i].delete();
+        }
+        directory.delete();
+    }
+
+    public void testMarkerFileNamesStartWithTheCurrentState()
+    {
+        SourcesFileMarkerHandler handler = new SourcesFileMarkerHandler( directory );
+        handler.setResolved( true );
+        String[] names = handler.getMarkerFileNames( artifact );
+        assertEquals( 2, names.length );
+        assertEquals( "org.example-first-jar-1.0.resolved", names[0] );
+        assertEquals( "org.example-first-jar-1.0.unresolved", names[1] );
+
+        handler.setResolved( false );
+        names = handler.getMarkerFileNames( artifact );
+        assertEquals( "org.example-first-jar-1.0.unresolved", names[0] );
+        assertEquals( "org.example-first-jar-1.0.resolved", names[1] );
+    }
+
+    public void testLookupSeesTheMarkersOfEitherState()
+        throws Exception
+    {
+        Artifact other = IndexFileMarkerHandlerTest.createArtifact( "other" );
+        SourcesFileMarkerHandler handler = new SourcesFileMarkerHandler( artifact, directory, false );
+        handler.setMarker();
+
+        handler.setResolved( true );
+        MarkerLookup lookup = handler.getMarkerLookup();
+        assertTrue( lookup.isMarkerSet( artifact ) );
+        assertFalse( lookup.isMarkerSet( other ) );
+        assertEquals( handler.isMarkerSet(), lookup.isMarkerSet( artifact ) );
+    }
+
+    public void testLookupPrefersTheMarkerOfTheCurrentState()
+        throws Exception
+    {
+        SourcesFileMarkerHandler handler = new SourcesFileMarkerHandler( artifact, directory, true );
+        handler.setMarker();
+        handler.getMarkerFile( true ).setLastModified( TIME - 10000 );
+        // both markers exist, as if written by another handler: setMarker would clear the other
+        File unresolved = handler.getMarkerFile( false );
+        IndexFileMarkerHandlerTest.write( unresolved, "" );
+        unresolved.setLastModified( TIME + 10000 );
+
+        // the .resolved marker is older than the artifact, the .unresolved one is not
+        assertTrue( handler.getMarkerLookup().isMarkerOlder( artifact ) );
+        assertTrue( handler.isMarkerOlder( artifact ) );
+
+        handler.setResolved( false );
+        assertFalse( handler.getMarkerLookup().isMarkerOlder( artifact ) );
+        assertFalse( handler.isMarkerOlder( artifact ) );
+    }
+
+    public void testLookupFallsBackToTheMarkerOfTheOtherState()
+        throws Exception
+    {
+        SourcesFileMarkerHandler handler = new SourcesFileMarkerHandler( artifact, directory, false );
+        handler.setMarker();
+        handler.getMarkerFile( false ).setLastModified( TIME + 10000 );
+
+        handler.setResolved( true );
+        assertFalse( handler.getMarkerLookup().isMarkerOlder( artifact ) );
+        assertEquals( handler.isMarkerOlder( artifact ), handler.getMarkerLookup().isMarkerOlder( artifact ) );
+    }
+
+    public void testMissingMarkerIsOlder()
+        throws Exception
+    {
+        SourcesFileMarkerHandler handler = new SourcesFileMarkerHandler( artifact, directory, true );
+
+        assertFalse( handler.getMarkerLookup().isMarkerSet( artifact ) );
+        assertTrue( handler.getMarkerLookup().isMarkerOlder( artifact ) );
+    }
+
+    public void testLookupListsTheDirectoryOnce()
+        throws Exception
+    {
+        SourcesFileMarkerHandler handler = new SourcesFileMarkerHandler( artifact, directory, true );
+        MarkerLookup lookup = handler.getMarkerLookup();
+        handler.setMarker();
+
+        // the marker was set after the listing
+        assertFalse( lookup.isMarkerSet( artifact ) );
+        assertTrue( handler.getMarkerLookup().isMarkerSet( artifact ) );
+    }
+
+    public void testMissingDirectoryHasNoMarkers()
+        throws Exception
+    {
+        SourcesFileMarkerHandler handler = new SourcesFileMarkerHandler( new File( directory, "missing" ) );
+
+        assertFalse( handler.getMarkerLookup().isMarkerSet( artifact ) );
+    }
+
+    public void testDefaultHandlerLooksUpItsSingleMarker()
+        throws Exception
+    {
+        DefaultFileMarkerHandler handler = new DefaultFileMarkerHandler( artifact, directory );
+        assertFalse( handler.getMarkerLookup().isMarkerSet( artifact ) );
+        handler.setMarker();
+        handler.getMarkerFile().setLastModified( TIME - 10000 );
+
+        MarkerLookup lookup = handler.getMarkerLookup();
+        assertTrue( lookup.isMarkerSet( artifact ) );
+        assertTrue( lookup.isMarkerOlder( artifact ) );
+        handler.getMarkerFile().setLastModified( TIME + 10000 );
+        assertFalse( lookup.isMarkerOlder( artifact ) );
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link CargodepsMarker}.
+ *
+ * @version $Id$
+ */
+public class CargodepsMarkerTest extends TestCase
+{
+    private File pom;
+
+    protected void setUp() throws Exception
+    {
+        this.pom = File.createTempFile("app-1.0", ".pom");
+        this.pom.deleteOnExit();
+        CargodepsMarker.getFile(this.pom).deleteOnExit();
+    }
+
+    public void testStoreAndLoad() throws Exception
+    {
+        CargodepsMarker marker = new CargodepsMarker("abc123");
+        marker.addWar("org.example", "first", "1.0");
+        marker.addWar("org.example", "second", "2.0-SNAPSHOT");
+        marker.store(this.pom);
+
+        CargodepsMarker loaded = CargodepsMarker.load(this.pom);
+        assertEquals("abc123", loaded.getChecksum());
+        assertEquals(2, loaded.getWars().size());
+        assertTrue(Arrays.equals(new String[] {"org.example", "second", "2.0-SNAPSHOT"},
+            (String[]) loaded.getWars().get(1)));
+    }
+
+    public void testMarkerIsIgnoredWithoutThePom() throws Exception
+    {
+        new CargodepsMarker("abc123").store(this.pom);
+        this.pom.delete();
+
+        assertNull(CargodepsMarker.load(this.pom));
+    }
+}
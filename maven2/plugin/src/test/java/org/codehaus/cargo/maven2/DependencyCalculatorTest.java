@@ -0,0 +1,393 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.installer.ArtifactInstaller;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.DefaultArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.dependency.utils.DependencyStatusSets;
+import org.apache.maven.plugin.dependency.utils.markers.IndexFileMarkerHandler;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectBuilder;
+import org.codehaus.cargo.maven2.util.Digests;
+import org.jmock.Mock;
+import org.jmock.MockObjectTestCase;
+import org.jmock.core.Constraint;
+
+/**
+ * Unit tests for {@link DependencyCalculator}: the walk of the WAR dependency graph and the
+ * markers of the calculated dependencies. The graph is <code>first -&gt; second, third</code>
+ * and <code>second -&gt; third</code>, with current cargodeps POMs, so that it is walked from the
+ * cargodeps markers alone.
+ *
+ * @version $Id$
+ */
+public class DependencyCalculatorTest extends MockObjectTestCase
+{
+    private File repository;
+
+    private ArtifactRepository localRepository;
+
+    private Artifact first;
+
+    private Artifact second;
+
+    private Artifact third;
+
+    /**
+     * The cargodeps artifact of each WAR, by artifactId.
+     */
+    private Map cargodepsArtifacts = new HashMap();
+
+    protected void setUp() throws Exception
+    {
+        this.repository = File.createTempFile("repository", "");
+        this.repository.delete();
+        this.localRepository = new DefaultArtifactRepository("local",
+            this.repository.toURL().toString(), new DefaultRepositoryLayout());
+
+        this.first = createArtifact("org.example", "first", "1.0");
+        this.second = createArtifact("org.example", "second", "1.0");
+        // A snapshot, so that it is resolved every time it is prepared
+        this.third = createArtifact("org.example", "third", "1.0-SNAPSHOT");
+
+        installWar(this.first, new Artifact[] {this.second, this.third});
+        installWar(this.second, new Artifact[] {this.third});
+        installWar(this.third, new Artifact[0]);
+        this.third.setFile(getFile(this.third));
+    }
+
+    protected void tearDown()
+    {
+        delete(this.repository);
+    }
+
+    public void testEachWarIsPreparedOnce() throws Exception
+    {
+        DependencyCalculator calculator = createCalculator(4);
+
+        // third is reached through both first and second, but only resolved once
+        calculator.fixupRepositoryArtifacts(Collections.singletonList(this.first));
+
+        assertEquals(3, calculator.getCargodepsPoms().size());
+    }
+
+    public void testDependenciesAreInstalledFirstWhateverTheThreads() throws Exception
+    {
+        List expected = new ArrayList();
+        expected.add(getFile(getCargodepsArtifact(this.third)));
+        expected.add(getFile(getCargodepsArtifact(this.second)));
+        expected.add(getFile(getCargodepsArtifact(this.first)));
+
+        for (int threads = 1; threads <= 4; threads++)
+        {
+            DependencyCalculator calculator = createCalculator(threads);
+            calculator.fixupRepositoryArtifacts(Collections.singletonList(this.first));
+            assertEquals(expected, calculator.getCargodepsPoms());
+        }
+    }
+
+    public void testMarkedDependenciesAreSkippedByTheNextCalculation() throws Exception
+    {
+        File markers = new File(this.repository, "markers");
+        MavenProject project = createProject(new String[] {"one", "two"});
+
+        DependencyCalculator calculator = createMarkingCalculator(markers);
+        assertEquals(2, calculator.calculate(project, markers).getResolvedDependencies().size());
+
+        // Calculating the files marks the dependencies, in one index file
+        assertEquals(getFiles(project), calculator.calculateFiles(project));
+        assertTrue(new File(markers, IndexFileMarkerHandler.INDEX_FILE_NAME).isFile());
+
+        DependencyStatusSets next = createMarkingCalculator(markers).calculate(project, markers);
+        assertEquals(0, next.getResolvedDependencies().size());
+        assertEquals(project.getArtifacts(), next.getSkippedDependencies());
+
+        // The skipped dependencies are still part of the files
+        assertEquals(getFiles(project), createMarkingCalculator(markers).calculateFiles(project));
+    }
+
+    public void testNewDependenciesAreNotSkipped() throws Exception
+    {
+        File markers = new File(this.repository, "markers");
+        createMarkingCalculator(markers).calculateFiles(createProject(new String[] {"one"}));
+
+        MavenProject project = createProject(new String[] {"one", "two"});
+        DependencyStatusSets next = createMarkingCalculator(markers).calculate(project, markers);
+        assertEquals(1, next.getResolvedDependencies().size());
+        assertEquals("two",
+            ((Artifact) next.getResolvedDependencies().iterator().next()).getArtifactId());
+    }
+
+    public void testNothingIsMarkedWithoutMarkersDirectory() throws Exception
+    {
+        MavenProject project = createProject(new String[] {"one", "two"});
+        DependencyCalculator calculator = createMarkingCalculator(null);
+        assertEquals(getFiles(project), calculator.calculateFiles(project));
+        assertEquals(2, calculator.calculate(project, null).getResolvedDependencies().size());
+    }
+
+    public void testChecksumMarkersOnlyProcessChangedContent() throws Exception
+    {
+        File markers = new File(this.repository, "markers");
+        MavenProject project = createProject(new String[] {"touched", "edited", "resized"});
+        createChecksumCalculator(markers, 1).calculateFiles(project);
+
+        File touched = new File(this.repository, "lib/touched.jar");
+        touched.setLastModified(touched.lastModified() + 10000);
+        File edited = new File(this.repository, "lib/edited.jar");
+        write(edited, "EDITED");
+        edited.setLastModified(edited.lastModified() + 10000);
+        write(new File(this.repository, "lib/resized.jar"), "resized, and longer");
+
+        DependencyCalculator calculator = createChecksumCalculator(markers, 1);
+        DependencyStatusSets next = calculator.calculate(project, markers);
+        assertEquals(getArtifactIds(new String[] {"edited", "resized"}),
+            getArtifactIds(next.getResolvedDependencies()));
+        assertEquals(getArtifactIds(new String[] {"touched"}),
+            getArtifactIds(next.getSkippedDependencies()));
+
+        // The changed files are marked again, with their new checksums
+        calculator.calculateFiles(project);
+        next = createChecksumCalculator(markers, 1).calculate(project, markers);
+        assertEquals(0, next.getResolvedDependencies().size());
+    }
+
+    /**
+     * Files larger than a chunk are hashed in chunks on the pool shared by the markers.
+     */
+    public void testChecksumMarkersOfLargeFiles() throws Exception
+    {
+        File markers = new File(this.repository, "markers");
+        MavenProject project = createProject(new String[] {"large", "small"});
+        File large = new File(this.repository, "lib/large.jar");
+        byte[] content = new byte[9 * 1024 * 1024];
+        write(large, content);
+        createChecksumCalculator(markers, 4).calculateFiles(project);
+
+        // Same size, other content in the second chunk
+        content[content.length - 1] = 1;
+        write(large, content);
+        large.setLastModified(large.lastModified() + 10000);
+
+        DependencyStatusSets next = createChecksumCalculator(markers, 4).calculate(project,
+            markers);
+        assertEquals(getArtifactIds(new String[] {"large"}),
+            getArtifactIds(next.getResolvedDependencies()));
+    }
+
+    /**
+     * The WARs are neither resolved twice nor built, as their cargodeps POMs are current, nor
+     * installed again.
+     */
+    private DependencyCalculator createCalculator(int threads)
+    {
+        Mock mockFactory = mock(ArtifactFactory.class);
+        stubCreation(mockFactory, this.first);
+        stubCreation(mockFactory, this.second);
+        stubCreation(mockFactory, this.third);
+
+        Mock mockResolver = mock(ArtifactResolver.class);
+        mockResolver.expects(once()).method("resolve").with(same(this.third), ANYTHING,
+            same(this.localRepository));
+
+        DependencyCalculator calculator = new DependencyCalculator(
+            (ArtifactFactory) mockFactory.proxy(), (ArtifactResolver) mockResolver.proxy(),
+            this.localRepository, new ArrayList(),
+            (MavenProjectBuilder) mock(MavenProjectBuilder.class).proxy(),
+            (ArtifactInstaller) mock(ArtifactInstaller.class).proxy(), null, null);
+        calculator.setThreads(threads);
+        return calculator;
+    }
+
+    /**
+     * A calculator that only filters the dependencies of a project, without any Maven component.
+     */
+    private DependencyCalculator createMarkingCalculator(File markers)
+    {
+        DependencyCalculator calculator = new DependencyCalculator(null, null,
+            this.localRepository, new ArrayList(), null, null, null, null);
+        calculator.setLog(new SystemStreamLog());
+        calculator.setMarkersDirectory(markers);
+        return calculator;
+    }
+
+    private DependencyCalculator createChecksumCalculator(File markers, int threads)
+    {
+        DependencyCalculator calculator = createMarkingCalculator(markers);
+        calculator.setChecksumMarkers(true);
+        calculator.setThreads(threads);
+        return calculator;
+    }
+
+    /**
+     * @return a project with a resolved JAR dependency per artifactId
+     */
+    private MavenProject createProject(String[] artifactIds) throws IOException
+    {
+        Set artifacts = new HashSet();
+        for (int i = 0; i < artifactIds.length; i++)
+        {
+            Artifact artifact = new DefaultArtifact("org.example", artifactIds[i],
+                VersionRange.createFromVersion("1.0"), Artifact.SCOPE_COMPILE, "jar", null,
+                new DefaultArtifactHandler("jar"));
+            File file = new File(this.repository, "lib/" + artifactIds[i] + ".jar");
+            if (!file.isFile())
+            {
+                write(file, artifactIds[i]);
+            }
+            artifact.setFile(file);
+            artifacts.add(artifact);
+        }
+
+        MavenProject project = new MavenProject(new Model());
+        project.setDependencyArtifacts(artifacts);
+        project.setArtifacts(artifacts);
+        return project;
+    }
+
+    private static Set getArtifactIds(String[] artifactIds)
+    {
+        return new HashSet(Arrays.asList(artifactIds));
+    }
+
+    private static Set getArtifactIds(Set artifacts)
+    {
+        Set artifactIds = new HashSet();
+        for (Iterator i = artifacts.iterator(); i.hasNext();)
+        {
+            artifactIds.add(((Artifact) i.next()).getArtifactId());
+        }
+        return artifactIds;
+    }
+
+    private static Set getFiles(MavenProject project)
+    {
+        Set files = new HashSet();
+        for (Iterator i = project.getArtifacts().iterator(); i.hasNext();)
+        {
+            files.add(((Artifact) i.next()).getFile());
+        }
+        return files;
+    }
+
+    private void stubCreation(Mock mockFactory, Artifact artifact)
+    {
+        mockFactory.stubs().method("createArtifactWithClassifier").with(new Constraint[] {
+            eq(artifact.getGroupId()), eq(artifact.getArtifactId()), eq(artifact.getVersion()),
+            eq("pom"), NULL}).will(returnValue(artifact));
+        mockFactory.stubs().method("createArtifactWithClassifier").with(new Constraint[] {
+            eq(artifact.getGroupId() + ".cargodeps"), eq(artifact.getArtifactId()),
+            eq(artifact.getVersion()), eq("pom"), NULL}).will(
+                returnValue(getCargodepsArtifact(artifact)));
+    }
+
+    /**
+     * Put the POM of a WAR in the repository, with a current cargodeps POM.
+     */
+    private void installWar(Artifact war, Artifact[] dependencies) throws IOException
+    {
+        File pom = getFile(war);
+        write(pom, "<project><artifactId>" + war.getArtifactId() + "</artifactId></project>");
+
+        File installedPom = getFile(getCargodepsArtifact(war));
+        write(installedPom, "<project/>");
+        CargodepsMarker marker = new CargodepsMarker(Digests.digest(pom, Digests.SHA1));
+        for (int i = 0; i < dependencies.length; i++)
+        {
+            marker.addWar(dependencies[i].getGroupId(), dependencies[i].getArtifactId(),
+                dependencies[i].getVersion());
+        }
+        marker.store(installedPom);
+    }
+
+    private File getFile(Artifact artifact)
+    {
+        return new File(this.repository, this.localRepository.pathOf(artifact));
+    }
+
+    private Artifact getCargodepsArtifact(Artifact artifact)
+    {
+        String key = artifact.getArtifactId();
+        if (!this.cargodepsArtifacts.containsKey(key))
+        {
+            this.cargodepsArtifacts.put(key, createArtifact(artifact.getGroupId() + ".cargodeps",
+                artifact.getArtifactId(), artifact.getVersion()));
+        }
+        return (Artifact) this.cargodepsArtifacts.get(key);
+    }
+
+    private static Artifact createArtifact(String groupId, String artifactId, String version)
+    {
+        return new DefaultArtifact(groupId, artifactId, VersionRange.createFromVersion(version),
+            null, "pom", null, new DefaultArtifactHandler("pom"));
+    }
+
+    private static void write(File file, String content) throws IOException
+    {
+        write(file, content.getBytes("UTF-8"));
+    }
+
+    private static void write(File file, byte[] content) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(content);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        for (int i = 0; children != null && i < children.length; i++)
+        {
+            delete(children[i]);
+        }
+        file.delete();
+    }
+}
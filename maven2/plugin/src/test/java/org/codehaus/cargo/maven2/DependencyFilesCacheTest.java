@@ -0,0 +1,66 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2;
+
+import java.io.File;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link DependencyFilesCache}.
+ *
+ * @version $Id$
+ */
+public class DependencyFilesCacheTest extends TestCase
+{
+    private File cache;
+
+    private File jar;
+
+    protected void setUp() throws Exception
+    {
+        this.cache = File.createTempFile("uberwar", ".uberwar-dependencies");
+        this.cache.deleteOnExit();
+        this.jar = File.createTempFile("dependency", ".jar");
+        this.jar.deleteOnExit();
+    }
+
+    public void testFilesAreReusedForTheSameKey() throws Exception
+    {
+        Set files = new LinkedHashSet();
+        files.add(this.jar);
+        DependencyFilesCache.store(this.cache, "key", files);
+
+        assertEquals(files, DependencyFilesCache.load(this.cache, "key"));
+        assertNull(DependencyFilesCache.load(this.cache, "other key"));
+    }
+
+    public void testCacheIsIgnoredWhenAFileIsMissing() throws Exception
+    {
+        Set files = new LinkedHashSet();
+        files.add(this.jar);
+        DependencyFilesCache.store(this.cache, "key", files);
+        this.jar.delete();
+
+        assertNull(DependencyFilesCache.load(this.cache, "key"));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * Unit tests for {@link LogWriter}.
+ *
+ * @version $Id$
+ */
+public class LogWriterTest extends TestCase
+{
+    /**
+     * Log that records its debug messages.
+     */
+    private static class RecordingLog extends SystemStreamLog
+    {
+        List messages = new ArrayList();
+
+        public void debug(CharSequence content)
+        {
+            this.messages.add(content.toString());
+        }
+    }
+
+    public void testEachLineIsLoggedOnce() throws Exception
+    {
+        RecordingLog log = new RecordingLog();
+        LogWriter writer = new LogWriter(log);
+        writer.write("\nfirst\nsec");
+        writer.write("ond\nlast");
+        writer.close();
+
+        assertEquals(4, log.messages.size());
+        assertEquals("", log.messages.get(0));
+        assertEquals("first", log.messages.get(1));
+        assertEquals("second", log.messages.get(2));
+        assertEquals("last", log.messages.get(3));
+    }
+}
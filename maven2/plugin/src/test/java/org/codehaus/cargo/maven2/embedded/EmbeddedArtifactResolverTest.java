@@ -0,0 +1,52 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.embedded;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link EmbeddedArtifactResolver}.
+ *
+ * @version $Id$
+ */
+public class EmbeddedArtifactResolverTest extends TestCase
+{
+    private EmbeddedArtifactResolver resolver =
+        new EmbeddedArtifactResolver(null, null, null, null);
+
+    public void testJettyContainersAreSupported()
+    {
+        assertTrue(this.resolver.isSupported("jetty4x"));
+        assertTrue(this.resolver.isSupported("jetty5x"));
+        assertTrue(this.resolver.isSupported("jetty6x"));
+        assertFalse(this.resolver.isSupported("tomcat5x"));
+    }
+
+    public void testArtifactsAreListedInClasspathOrder() throws Exception
+    {
+        List artifacts = this.resolver.getArtifacts("jetty6x");
+
+        assertEquals(18, artifacts.size());
+        assertEquals("org.mortbay.jetty:jsp-api-2.0:6.1.1rc1", artifacts.get(0));
+        assertEquals("log4j:log4j:1.2.14", artifacts.get(17));
+    }
+}
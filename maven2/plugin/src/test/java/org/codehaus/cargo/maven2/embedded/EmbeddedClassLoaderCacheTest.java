@@ -0,0 +1,89 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.embedded;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link EmbeddedClassLoaderCache}.
+ *
+ * @version $Id$
+ */
+public class EmbeddedClassLoaderCacheTest extends TestCase
+{
+    private List files;
+
+    protected void setUp() throws Exception
+    {
+        EmbeddedClassLoaderCache.clear();
+        File jar = File.createTempFile("container", ".jar");
+        jar.deleteOnExit();
+        this.files = new ArrayList();
+        this.files.add(jar);
+    }
+
+    protected void tearDown()
+    {
+        EmbeddedClassLoaderCache.clear();
+    }
+
+    public void testSameArtifactsShareClassLoader() throws Exception
+    {
+        ClassLoader first = EmbeddedClassLoaderCache.getClassLoader("jetty6x", this.files, null);
+
+        assertSame(first, EmbeddedClassLoaderCache.getClassLoader("jetty6x", this.files, null));
+    }
+
+    public void testOtherContainerOrParentGetsOwnClassLoader() throws Exception
+    {
+        ClassLoader first = EmbeddedClassLoaderCache.getClassLoader("jetty6x", this.files, null);
+
+        assertNotSame(first,
+            EmbeddedClassLoaderCache.getClassLoader("jetty5x", this.files, null));
+        assertNotSame(first, EmbeddedClassLoaderCache.getClassLoader("jetty6x", this.files,
+            getClass().getClassLoader()));
+    }
+
+    public void testChangedArtifactGetsNewClassLoader() throws Exception
+    {
+        ClassLoader first = EmbeddedClassLoaderCache.getClassLoader("jetty6x", this.files, null);
+        FileOutputStream out = new FileOutputStream((File) this.files.get(0));
+        out.write(1);
+        out.close();
+
+        assertNotSame(first, EmbeddedClassLoaderCache.getClassLoader("jetty6x", this.files, null));
+    }
+
+    public void testResolvedFilesAreForgottenWhenOneIsDeleted() throws Exception
+    {
+        EmbeddedClassLoaderCache.putResolvedFiles("jetty6x", "/repository", this.files);
+        assertEquals(this.files,
+            EmbeddedClassLoaderCache.getResolvedFiles("jetty6x", "/repository"));
+        assertNull(EmbeddedClassLoaderCache.getResolvedFiles("jetty6x", "/other"));
+
+        ((File) this.files.get(0)).delete();
+        assertNull(EmbeddedClassLoaderCache.getResolvedFiles("jetty6x", "/repository"));
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.embedded;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Unit tests for {@link IndexedClassLoader}.
+ *
+ * @version $Id$
+ */
+public class IndexedClassLoaderTest extends TestCase
+{
+    /**
+     * Class loaded from a jar by the tests.
+     */
+    public static class Sample
+    {
+        public String toString()
+        {
+            return "sample";
+        }
+    }
+
+    private static final String SAMPLE = Sample.class.getName().replace('.', '/') + ".class";
+
+    private File first;
+
+    private File second;
+
+    private File directory;
+
+    protected void setUp() throws Exception
+    {
+        byte[] sample = readSample();
+
+        this.first = createJar(new String[] {"config/shared.properties"},
+            new byte[][] {"first".getBytes()});
+        this.second = createJar(new String[] {SAMPLE, "config/shared.properties"},
+            new byte[][] {sample, "second".getBytes()});
+        this.directory = File.createTempFile("classes", "");
+        this.directory.delete();
+        write(new File(this.directory, "config/dir.txt"), "directory".getBytes());
+    }
+
+    public void testClassesAreDefinedFromIndexedJars() throws Exception
+    {
+        IndexedClassLoader loader = createLoader();
+        Class sample = loader.loadClass(Sample.class.getName());
+
+        assertSame(loader, sample.getClassLoader());
+        assertEquals("sample", sample.newInstance().toString());
+        assertNotNull(sample.getPackage());
+    }
+
+    public void testResourcesAreFoundInClasspathOrder() throws Exception
+    {
+        IndexedClassLoader loader = createLoader();
+
+        assertEquals("first", read(loader.getResource("config/shared.properties")));
+        List resources = Collections.list(loader.getResources("config/shared.properties"));
+        assertEquals(2, resources.size());
+        assertEquals("second", read((URL) resources.get(1)));
+        assertNull(loader.getResource("config/missing.properties"));
+    }
+
+    public void testDirectoriesAreSearchedToo() throws Exception
+    {
+        IndexedClassLoader loader = createLoader();
+
+        assertEquals("directory", read(loader.getResource("config/dir.txt")));
+        assertEquals(3, loader.getURLs().length);
+        assertEquals(this.directory.toURL(), loader.getURLs()[2]);
+    }
+
+    public void testDirectoryBeforeAJarIsSearchedFirst() throws Exception
+    {
+        File classes = File.createTempFile("classes", "");
+        classes.delete();
+        write(new File(classes, "config/shared.properties"), "directory".getBytes());
+        write(new File(classes, SAMPLE), readSample());
+        IndexedClassLoader loader = new IndexedClassLoader(new URL[] {classes.toURL(),
+            this.first.toURL(), this.second.toURL()}, null);
+
+        assertEquals("directory", read(loader.getResource("config/shared.properties")));
+        List resources = Collections.list(loader.getResources("config/shared.properties"));
+        assertEquals(3, resources.size());
+        assertEquals("first", read((URL) resources.get(1)));
+        assertEquals("second", read((URL) resources.get(2)));
+
+        Class sample = loader.loadClass(Sample.class.getName());
+        assertSame(loader, sample.getClassLoader());
+        assertEquals(classes.toURL(),
+            sample.getProtectionDomain().getCodeSource().getLocation());
+        assertNotNull(sample.getPackage());
+    }
+
+    public void testDirectoriesOfJarsAreFound() throws Exception
+    {
+        File jar = createJar(new String[] {"org/", "org/foo/", "org/foo/bar/",
+            "org/foo/bar/Thing.txt"}, new byte[][] {{}, {}, {}, "thing".getBytes()});
+        IndexedClassLoader loader = new IndexedClassLoader(new URL[] {this.first.toURL(),
+            jar.toURL()}, null);
+
+        assertNotNull(loader.getResource("org/foo/"));
+        assertNotNull(loader.getResource("org/foo/bar/"));
+        assertEquals(1, Collections.list(loader.getResources("org/")).size());
+        assertEquals(1, Collections.list(loader.getResources("org/foo/")).size());
+        assertNull(loader.getResource("org/baz/"));
+        assertEquals("thing", read(loader.getResource("org/foo/bar/Thing.txt")));
+    }
+
+    private IndexedClassLoader createLoader() throws Exception
+    {
+        return new IndexedClassLoader(new URL[] {this.first.toURL(), this.second.toURL(),
+            this.directory.toURL()}, null);
+    }
+
+    private static File createJar(String[] names, byte[][] contents) throws IOException
+    {
+        File jar = File.createTempFile("indexed", ".jar");
+        jar.deleteOnExit();
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar));
+        for (int i = 0; i < names.length; i++)
+        {
+            zip.putNextEntry(new ZipEntry(names[i]));
+            zip.write(contents[i]);
+        }
+        zip.close();
+        return jar;
+    }
+
+    private static byte[] readSample() throws IOException
+    {
+        InputStream in = Sample.class.getClassLoader().getResourceAsStream(SAMPLE);
+        try
+        {
+            return IOUtil.toByteArray(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static void write(File file, byte[] content) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(content);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static String read(URL url) throws IOException
+    {
+        InputStream in = url.openStream();
+        try
+        {
+            return IOUtil.toString(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.embedded;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link ResolvedArtifactsLockFile}.
+ *
+ * @version $Id$
+ */
+public class ResolvedArtifactsLockFileTest extends TestCase
+{
+    private File lockFile;
+
+    private File jar;
+
+    protected void setUp() throws Exception
+    {
+        this.lockFile = File.createTempFile("jetty6x", ".lock");
+        this.lockFile.deleteOnExit();
+        this.jar = File.createTempFile("jetty", ".jar");
+        this.jar.deleteOnExit();
+    }
+
+    public void testFilesAreReusedForTheSameArtifacts() throws Exception
+    {
+        List files = new ArrayList();
+        files.add(this.jar);
+        List artifacts = Collections.singletonList("org.mortbay.jetty:jetty:6.1.1rc1");
+        ResolvedArtifactsLockFile.store(this.lockFile, artifacts, files);
+
+        assertEquals(files, ResolvedArtifactsLockFile.load(this.lockFile, artifacts));
+        assertNull(ResolvedArtifactsLockFile.load(this.lockFile,
+            Collections.singletonList("org.mortbay.jetty:jetty:6.1.2")));
+    }
+
+    public void testLockFileIsIgnoredWhenAFileIsMissing() throws Exception
+    {
+        List files = new ArrayList();
+        files.add(this.jar);
+        List artifacts = Collections.singletonList("org.mortbay.jetty:jetty:6.1.1rc1");
+        ResolvedArtifactsLockFile.store(this.lockFile, artifacts, files);
+        this.jar.delete();
+
+        assertNull(ResolvedArtifactsLockFile.load(this.lockFile, artifacts));
+    }
+}
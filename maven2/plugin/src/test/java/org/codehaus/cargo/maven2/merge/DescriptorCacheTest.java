@@ -0,0 +1,84 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.merge;
+
+import junit.framework.TestCase;
+
+import org.jdom.Element;
+
+/**
+ * Unit tests for {@link DescriptorCache}.
+ *
+ * @version $Id$
+ */
+public class DescriptorCacheTest extends TestCase
+{
+    private static final byte[] FILTER = "<filter><filter-name>f</filter-name></filter>".getBytes();
+
+    protected void setUp()
+    {
+        DescriptorCache.clear();
+    }
+
+    protected void tearDown()
+    {
+        DescriptorCache.clear();
+    }
+
+    public void testSameContentIsParsedOnce() throws Exception
+    {
+        DescriptorCache.Parsed parsed = DescriptorCache.getWebXml(FILTER);
+
+        assertSame(parsed, DescriptorCache.getWebXml((byte[]) FILTER.clone()));
+        assertNotSame(parsed, DescriptorCache.getWebXml("<servlet/>".getBytes()));
+    }
+
+    public void testCachedDocumentIsClonedNotShared() throws Exception
+    {
+        DescriptorCache.Parsed parsed = DescriptorCache.getWebXml(FILTER);
+        Element first = parsed.getRootElement();
+        first.setAttribute("changed", "true");
+
+        Element second = DescriptorCache.getWebXml(FILTER).getRootElement();
+        assertNotSame(first, second);
+        assertEquals("filter", second.getName());
+        assertNull(second.getAttributeValue("changed"));
+    }
+
+    public void testLeastRecentlyUsedDescriptorsAreForgotten() throws Exception
+    {
+        DescriptorCache.Parsed filter = DescriptorCache.getWebXml(FILTER);
+        DescriptorCache.Parsed first = DescriptorCache.getWebXml(getServlet(0));
+        for (int i = 1; i < DescriptorCache.MAX_ENTRIES; i++)
+        {
+            DescriptorCache.getWebXml(getServlet(i));
+            // filter is used all along, so it is never the eldest
+            assertSame(filter, DescriptorCache.getWebXml(FILTER));
+        }
+
+        assertSame(filter, DescriptorCache.getWebXml(FILTER));
+        assertNotSame(first, DescriptorCache.getWebXml(getServlet(0)));
+    }
+
+    private static byte[] getServlet(int i)
+    {
+        return ("<servlet><servlet-name>s" + i + "</servlet-name></servlet>").getBytes();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.merge;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.codehaus.cargo.util.CargoException;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
+
+/**
+ * Unit tests for the parsing of <code>&lt;strategy&gt;</code> nodes by {@link MergeWebXml}.
+ *
+ * @version $Id$
+ */
+public class MergeWebXmlTest extends TestCase
+{
+    private MergeWebXml mergeWebXml = new MergeWebXml(null);
+
+    public void testSimpleStrategies() throws Exception
+    {
+        assertSame(StreamingWebXmlMerger.Strategy.PRESERVE,
+            makeStreamingStrategy("<strategy name='preserve'/>"));
+        assertSame(StreamingWebXmlMerger.Strategy.OVERWRITE,
+            makeStreamingStrategy("<strategy name='Overwrite'/>"));
+    }
+
+    public void testChooseByNameStrategy() throws Exception
+    {
+        StreamingWebXmlMerger.Strategy strategy = makeStreamingStrategy(
+            "<strategy name='ChooseByName'>"
+            + "<default><strategy name='Preserve'/></default>"
+            + "<choice name='a'><strategy name='Overwrite'/></choice>"
+            + "<choice name='b'><strategy name='ChooseByName'>"
+            + "<default><strategy name='Overwrite'/></default></strategy></choice>"
+            + "</strategy>");
+
+        assertTrue(strategy instanceof StreamingWebXmlMerger.ChooseByName);
+        assertSame(StreamingWebXmlMerger.Strategy.OVERWRITE, strategy.resolve("a"));
+        assertSame(StreamingWebXmlMerger.Strategy.OVERWRITE, strategy.resolve("b"));
+        assertSame(StreamingWebXmlMerger.Strategy.PRESERVE, strategy.resolve("c"));
+    }
+
+    public void testUnknownStrategyIsRejected() throws Exception
+    {
+        try
+        {
+            makeStreamingStrategy("<strategy name='Merge'/>");
+            fail("Unknown strategy");
+        }
+        catch (CargoException expected)
+        {
+            assertTrue(expected.getMessage().indexOf("Merge") != -1);
+        }
+
+        try
+        {
+            makeStreamingStrategy("<default/>");
+            fail("Not a strategy");
+        }
+        catch (CargoException expected)
+        {
+            // expected
+        }
+    }
+
+    private StreamingWebXmlMerger.Strategy makeStreamingStrategy(String xml) throws Exception
+    {
+        Xpp3Dom config = Xpp3DomBuilder.build(new StringReader(xml));
+        return this.mergeWebXml.makeStreamingStrategy(config);
+    }
+}
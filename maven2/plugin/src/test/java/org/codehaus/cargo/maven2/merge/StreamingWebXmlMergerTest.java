@@ -0,0 +1,143 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.merge;
+
+import java.io.ByteArrayInputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link StreamingWebXmlMerger}.
+ *
+ * @version $Id$
+ */
+public class StreamingWebXmlMergerTest extends TestCase
+{
+    private static final String DOCTYPE = "<!DOCTYPE web-app PUBLIC "
+        + "\"-//Sun Microsystems, Inc.//DTD Web Application 2.3//EN\" "
+        + "\"http://java.sun.com/dtd/web-app_2_3.dtd\">";
+
+    private static final String FIRST = "<?xml version=\"1.0\"?>" + DOCTYPE + "<web-app>"
+        + "<servlet-mapping><servlet-name>a</servlet-name><url-pattern>/a</url-pattern>"
+        + "</servlet-mapping>"
+        + "<servlet><servlet-name>a</servlet-name><servlet-class>A1</servlet-class></servlet>"
+        + "<servlet><servlet-name>b</servlet-name><servlet-class>B1</servlet-class></servlet>"
+        + "<filter><filter-name>f</filter-name><filter-class>F1</filter-class>"
+        + "<init-param><param-name>p1</param-name><param-value>1</param-value></init-param>"
+        + "</filter>"
+        + "<welcome-file-list><welcome-file>first.jsp</welcome-file></welcome-file-list>"
+        + "</web-app>";
+
+    private static final String SECOND = "<web-app xmlns=\"http://java.sun.com/xml/ns/j2ee\">"
+        + "<welcome-file-list><welcome-file>second.jsp</welcome-file></welcome-file-list>"
+        + "<servlet><servlet-name>a</servlet-name><servlet-class>A2</servlet-class></servlet>"
+        + "<servlet><servlet-name>b</servlet-name><servlet-class>B2</servlet-class></servlet>"
+        + "<filter><filter-name>f</filter-name><filter-class>F2</filter-class>"
+        + "<init-param><param-name>p2</param-name><param-value>2</param-value></init-param>"
+        + "</filter>"
+        + "<context-param><param-name>c</param-name><param-value>x &amp; y</param-value>"
+        + "</context-param>"
+        + "<servlet-mapping><servlet-name>a</servlet-name><url-pattern>/a2</url-pattern>"
+        + "</servlet-mapping>"
+        + "</web-app>";
+
+    public void testFirstDescriptorWinsByDefault() throws Exception
+    {
+        String merged = merge(new StreamingWebXmlMerger());
+
+        assertTrue(merged.indexOf("A1") != -1);
+        assertTrue(merged.indexOf("A2") == -1);
+        assertTrue(merged.indexOf("F2") == -1);
+        assertTrue(merged.indexOf("first.jsp") != -1);
+        assertTrue(merged.indexOf("second.jsp") == -1);
+    }
+
+    public void testElementsWithoutIdentifierAreAllKept() throws Exception
+    {
+        String merged = merge(new StreamingWebXmlMerger());
+
+        assertTrue(merged.indexOf("/a<") != -1);
+        assertTrue(merged.indexOf("/a2<") != -1);
+        assertTrue(merged.indexOf("x &amp; y") != -1);
+    }
+
+    public void testElementsAreWrittenInDescriptorOrder() throws Exception
+    {
+        String merged = merge(new StreamingWebXmlMerger());
+
+        assertTrue(merged.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + DOCTYPE));
+        assertTrue(merged.indexOf("<context-param>") < merged.indexOf("<filter>"));
+        assertTrue(merged.indexOf("<filter>") < merged.indexOf("<servlet>"));
+        assertTrue(merged.indexOf("<servlet>") < merged.indexOf("<servlet-mapping>"));
+        assertTrue(merged.indexOf("<servlet-mapping>") < merged.indexOf("<welcome-file-list>"));
+        assertTrue(merged.trim().endsWith("</web-app>"));
+    }
+
+    public void testOverwrite() throws Exception
+    {
+        StreamingWebXmlMerger merger = new StreamingWebXmlMerger();
+        merger.setStrategy("servlet", StreamingWebXmlMerger.Strategy.OVERWRITE);
+        String merged = merge(merger);
+
+        assertTrue(merged.indexOf("A2") != -1);
+        assertTrue(merged.indexOf("A1") == -1);
+        // The first servlet keeps its position
+        assertTrue(merged.indexOf("A2") < merged.indexOf("B2"));
+    }
+
+    public void testChooseByName() throws Exception
+    {
+        StreamingWebXmlMerger.ChooseByName strategy =
+            new StreamingWebXmlMerger.ChooseByName(StreamingWebXmlMerger.Strategy.PRESERVE);
+        strategy.addStrategyForName("b", StreamingWebXmlMerger.Strategy.OVERWRITE);
+        StreamingWebXmlMerger merger = new StreamingWebXmlMerger();
+        merger.setStrategy("servlet", strategy);
+        String merged = merge(merger);
+
+        assertTrue(merged.indexOf("A1") != -1);
+        assertTrue(merged.indexOf("B2") != -1);
+        assertTrue(merged.indexOf("B1") == -1);
+    }
+
+    public void testNodeMerge() throws Exception
+    {
+        StreamingWebXmlMerger merger = new StreamingWebXmlMerger();
+        merger.setStrategy("filter", new StreamingWebXmlMerger.NodeMerge("<filter>"
+            + "<filter-name>$left:filter-name</filter-name>"
+            + "<filter-class>$right:filter-class</filter-class>"
+            + "<init-param>$left:init-param</init-param>"
+            + "<init-param>$right:init-param</init-param>"
+            + "</filter>"));
+        String merged = merge(merger);
+
+        assertTrue(merged.indexOf("<filter><filter-name>f</filter-name>"
+            + "<filter-class>F2</filter-class>"
+            + "<init-param><param-name>p1</param-name><param-value>1</param-value></init-param>"
+            + "<init-param><param-name>p2</param-name><param-value>2</param-value></init-param>"
+            + "</filter>") != -1);
+    }
+
+    private static String merge(StreamingWebXmlMerger merger) throws Exception
+    {
+        merger.addMergeItem(new ByteArrayInputStream(FIRST.getBytes("UTF-8")));
+        merger.addMergeItem(new ByteArrayInputStream(SECOND.getBytes("UTF-8")));
+        return new String((byte[]) merger.performMerge(), "UTF-8");
+    }
+}
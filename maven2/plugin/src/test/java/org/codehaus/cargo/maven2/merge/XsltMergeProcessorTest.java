@@ -0,0 +1,115 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.merge;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import javax.xml.transform.Templates;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link XsltMergeProcessor} and {@link XsltTemplatesCache}.
+ *
+ * @version $Id$
+ */
+public class XsltMergeProcessorTest extends TestCase
+{
+    private static final String STYLESHEET = "<xsl:stylesheet version=\"1.0\" "
+        + "xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+        + "<xsl:template match=\"/merge\"><list>"
+        + "<xsl:copy-of select=\"left/list/*\"/><xsl:copy-of select=\"right/list/*\"/>"
+        + "</list></xsl:template></xsl:stylesheet>";
+
+    private File stylesheet;
+
+    protected void setUp() throws Exception
+    {
+        this.stylesheet = File.createTempFile("merge", ".xsl");
+        this.stylesheet.deleteOnExit();
+        write(this.stylesheet, STYLESHEET);
+    }
+
+    protected void tearDown()
+    {
+        XsltTemplatesCache.clear();
+    }
+
+    public void testItemsAreFoldedPairwise() throws Exception
+    {
+        XsltMergeProcessor processor =
+            new XsltMergeProcessor(XsltTemplatesCache.getTemplates(this.stylesheet));
+        processor.addMergeItem(stream("<list><item>1</item></list>"));
+        processor.addMergeItem(stream("<?xml version=\"1.0\"?><!-- two --><list><item>2</item>"
+            + "</list>"));
+        processor.addMergeItem(stream("<list><item>3</item></list>"));
+
+        String merged = new String((byte[]) processor.performMerge(), "UTF-8");
+        assertTrue(merged, merged.indexOf(
+            "<list><item>1</item><item>2</item><item>3</item></list>") != -1);
+    }
+
+    public void testSingleItemIsReturnedUnchanged() throws Exception
+    {
+        XsltMergeProcessor processor =
+            new XsltMergeProcessor(XsltTemplatesCache.getTemplates(this.stylesheet));
+        processor.addMergeItem(stream("<list/>"));
+
+        assertEquals("<list/>", new String((byte[]) processor.performMerge(), "UTF-8"));
+    }
+
+    public void testTemplatesAreCompiledOnce() throws Exception
+    {
+        Templates templates = XsltTemplatesCache.getTemplates(this.stylesheet);
+        assertSame(templates, XsltTemplatesCache.getTemplates(
+            new File(this.stylesheet.getParentFile(), this.stylesheet.getName())));
+    }
+
+    public void testTemplatesAreCompiledAgainWhenTheStylesheetChanges() throws Exception
+    {
+        Templates templates = XsltTemplatesCache.getTemplates(this.stylesheet);
+        write(this.stylesheet, STYLESHEET + " ");
+        this.stylesheet.setLastModified(this.stylesheet.lastModified() + 2000);
+
+        assertNotSame(templates, XsltTemplatesCache.getTemplates(this.stylesheet));
+    }
+
+    private static ByteArrayInputStream stream(String xml) throws IOException
+    {
+        return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+    }
+
+    private static void write(File file, String content) throws IOException
+    {
+        Writer writer = new FileWriter(file);
+        try
+        {
+            writer.write(content);
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+}
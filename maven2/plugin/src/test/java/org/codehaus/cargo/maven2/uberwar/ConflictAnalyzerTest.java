@@ -0,0 +1,118 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.uberwar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * Unit tests for {@link ConflictAnalyzer}.
+ *
+ * @version $Id$
+ */
+public class ConflictAnalyzerTest extends TestCase
+{
+    private File war;
+
+    protected void setUp() throws Exception
+    {
+        byte[] first = createJar(new String[] {"a/A.class", "A1", "a/B.class", "B",
+            "config.properties", "x=1", "META-INF/MANIFEST.MF", "first"});
+        byte[] second = createJar(new String[] {"a/A.class", "A2", "a/B.class", "B",
+            "config.properties", "x=2", "META-INF/MANIFEST.MF", "second"});
+
+        this.war = File.createTempFile("conflicts", ".war");
+        this.war.deleteOnExit();
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(this.war));
+        put(zip, "WEB-INF/classes/a/B.class", "B".getBytes(), false);
+        put(zip, "WEB-INF/classes/a/C.class", "C1".getBytes(), false);
+        // One JAR is stored, as the streaming assembler does, the other one is compressed
+        put(zip, "WEB-INF/lib/first.jar", first, true);
+        put(zip, "WEB-INF/lib/second.jar", second, false);
+        put(zip, "WEB-INF/lib/third.jar", createJar(new String[] {"a/C.class", "C2"}), true);
+        zip.close();
+    }
+
+    public void testDifferentClassesAreReported() throws Exception
+    {
+        List conflicts = new ConflictAnalyzer(new SystemStreamLog()).analyze(this.war);
+
+        assertEquals(2, conflicts.size());
+        ConflictAnalyzer.Conflict conflict = (ConflictAnalyzer.Conflict) conflicts.get(0);
+        assertEquals("a/A.class", conflict.getPath());
+        assertEquals(Arrays.asList(new String[] {"WEB-INF/lib/first.jar",
+            "WEB-INF/lib/second.jar"}), conflict.getLocations());
+        conflict = (ConflictAnalyzer.Conflict) conflicts.get(1);
+        assertEquals("a/C.class", conflict.getPath());
+        assertEquals(Arrays.asList(new String[] {"WEB-INF/classes", "WEB-INF/lib/third.jar"}),
+            conflict.getLocations());
+    }
+
+    public void testResourcesAreCheckedOnDemand() throws Exception
+    {
+        ConflictAnalyzer analyzer = new ConflictAnalyzer(new SystemStreamLog());
+        analyzer.setThreads(4);
+        analyzer.setResources(true);
+        List conflicts = analyzer.analyze(this.war);
+
+        assertEquals(3, conflicts.size());
+        assertEquals("config.properties",
+            ((ConflictAnalyzer.Conflict) conflicts.get(1)).getPath());
+    }
+
+    private static byte[] createJar(String[] entries) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        for (int i = 0; i < entries.length; i += 2)
+        {
+            put(zip, entries[i], entries[i + 1].getBytes(), false);
+        }
+        zip.close();
+        return bytes.toByteArray();
+    }
+
+    private static void put(ZipOutputStream zip, String name, byte[] content, boolean stored)
+        throws IOException
+    {
+        ZipEntry entry = new ZipEntry(name);
+        if (stored)
+        {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCrc(crc.getValue());
+        }
+        zip.putNextEntry(entry);
+        zip.write(content);
+    }
+}
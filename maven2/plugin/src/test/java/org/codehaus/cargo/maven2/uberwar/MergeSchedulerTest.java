@@ -0,0 +1,248 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.uberwar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.codehaus.cargo.module.merge.MergeException;
+import org.codehaus.cargo.module.merge.MergeProcessor;
+
+/**
+ * Unit tests for {@link MergeScheduler}.
+ *
+ * @version $Id$
+ */
+public class MergeSchedulerTest extends TestCase
+{
+    private static final int MERGES = 6;
+
+    /**
+     * Concatenates its items, after waiting for a while.
+     */
+    private static class ConcatenatingProcessor implements MergeProcessor
+    {
+        private final long delay;
+
+        private final ByteArrayOutputStream merged = new ByteArrayOutputStream();
+
+        ConcatenatingProcessor(long delay)
+        {
+            this.delay = delay;
+        }
+
+        public void addMergeItem(Object item) throws MergeException
+        {
+            try
+            {
+                InputStream in = (InputStream) item;
+                for (int b = in.read(); b != -1; b = in.read())
+                {
+                    this.merged.write(b);
+                }
+            }
+            catch (IOException e)
+            {
+                throw new MergeException("Cannot read item", e);
+            }
+        }
+
+        public Object performMerge() throws MergeException
+        {
+            try
+            {
+                Thread.sleep(this.delay);
+            }
+            catch (InterruptedException e)
+            {
+                throw new MergeException("Interrupted");
+            }
+            return this.merged.toByteArray();
+        }
+    }
+
+    /**
+     * Fails in {@link #performMerge()} with the given exception.
+     */
+    private static class FailingProcessor implements MergeProcessor
+    {
+        private final Exception failure;
+
+        FailingProcessor(Exception failure)
+        {
+            this.failure = failure;
+        }
+
+        public void addMergeItem(Object item)
+        {
+            // Nothing to read
+        }
+
+        public Object performMerge() throws MergeException
+        {
+            if (this.failure instanceof MergeException)
+            {
+                throw (MergeException) this.failure;
+            }
+            if (this.failure instanceof RuntimeException)
+            {
+                throw (RuntimeException) this.failure;
+            }
+            // Fails when the result is serialised
+            final IOException failure = (IOException) this.failure;
+            return new InputStream()
+            {
+                public int read() throws IOException
+                {
+                    throw failure;
+                }
+            };
+        }
+    }
+
+    public void testResultsAreInSchedulingOrderWhateverTheThreads() throws Exception
+    {
+        List expectedPaths = new ArrayList();
+        for (int i = 0; i < MERGES; i++)
+        {
+            expectedPaths.add("file" + i + ".xml");
+        }
+
+        for (int threads = 1; threads <= 4; threads++)
+        {
+            MergeScheduler scheduler = new MergeScheduler(threads);
+            for (int i = 0; i < MERGES; i++)
+            {
+                // The first merges are the slowest, so they finish last with several threads
+                scheduler.schedule("file" + i + ".xml",
+                    new ConcatenatingProcessor((MERGES - i) * 10),
+                    Arrays.asList(new byte[][] {("a" + i).getBytes(), ("b" + i).getBytes()}));
+            }
+
+            Map results = scheduler.run();
+            assertEquals(expectedPaths, new ArrayList(results.keySet()));
+            for (int i = 0; i < MERGES; i++)
+            {
+                byte[] merged = (byte[]) results.get("file" + i + ".xml");
+                assertEquals("a" + i + "b" + i, new String(merged));
+            }
+        }
+    }
+
+    public void testEmptyMergeIsLeftOut() throws Exception
+    {
+        MergeScheduler scheduler = new MergeScheduler(2);
+        scheduler.schedule("empty.xml", new MergeProcessor()
+        {
+            public void addMergeItem(Object item)
+            {
+                // Nothing to merge
+            }
+
+            public Object performMerge()
+            {
+                return null;
+            }
+        }, Collections.EMPTY_LIST);
+        scheduler.schedule("full.xml", new ConcatenatingProcessor(0),
+            Collections.singletonList("full".getBytes()));
+
+        Map results = scheduler.run();
+        assertEquals(Collections.singleton("full.xml"), results.keySet());
+    }
+
+    public void testNothingScheduled() throws Exception
+    {
+        assertTrue(new MergeScheduler(4).run().isEmpty());
+    }
+
+    public void testPathIsMergedOnce()
+    {
+        MergeScheduler scheduler = new MergeScheduler(2);
+        scheduler.schedule("web.xml", new ConcatenatingProcessor(0), Collections.EMPTY_LIST);
+        try
+        {
+            scheduler.schedule("web.xml", new ConcatenatingProcessor(0), Collections.EMPTY_LIST);
+            fail("web.xml has a processor already");
+        }
+        catch (IllegalStateException expected)
+        {
+            // expected
+        }
+    }
+
+    public void testMergeExceptionIsUnwrapped() throws Exception
+    {
+        MergeException failure = new MergeException("Cannot merge");
+        try
+        {
+            runWithFailure(failure);
+            fail("The merge failed");
+        }
+        catch (MergeException e)
+        {
+            assertSame(failure, e);
+        }
+    }
+
+    public void testIOExceptionIsUnwrapped() throws Exception
+    {
+        IOException failure = new IOException("Cannot serialise");
+        try
+        {
+            runWithFailure(failure);
+            fail("The merge failed");
+        }
+        catch (IOException e)
+        {
+            assertSame(failure, e);
+        }
+    }
+
+    public void testRuntimeExceptionIsUnwrapped() throws Exception
+    {
+        IllegalArgumentException failure = new IllegalArgumentException("Bad item");
+        try
+        {
+            runWithFailure(failure);
+            fail("The merge failed");
+        }
+        catch (IllegalArgumentException e)
+        {
+            assertSame(failure, e);
+        }
+    }
+
+    private void runWithFailure(Exception failure) throws MergeException, IOException
+    {
+        MergeScheduler scheduler = new MergeScheduler(2);
+        scheduler.schedule("first.xml", new ConcatenatingProcessor(0), Collections.EMPTY_LIST);
+        scheduler.schedule("failing.xml", new FailingProcessor(failure), Collections.EMPTY_LIST);
+        scheduler.run();
+    }
+}
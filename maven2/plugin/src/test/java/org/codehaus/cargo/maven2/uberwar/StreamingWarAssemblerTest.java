@@ -0,0 +1,410 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.uberwar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.cargo.module.merge.MergeException;
+import org.codehaus.cargo.module.merge.MergeProcessor;
+
+/**
+ * Unit tests for {@link StreamingWarAssembler}.
+ *
+ * @version $Id$
+ */
+public class StreamingWarAssemblerTest extends TestCase
+{
+    /**
+     * Merge processor that concatenates the text of every item it is given.
+     */
+    public static class ConcatenatingMergeProcessor implements MergeProcessor
+    {
+        private StringBuffer merged = new StringBuffer();
+
+        boolean performed;
+
+        public void addMergeItem(Object mergeItem) throws MergeException
+        {
+            try
+            {
+                this.merged.append(read((InputStream) mergeItem));
+            }
+            catch (IOException e)
+            {
+                throw new MergeException("Cannot read merge item", e);
+            }
+        }
+
+        public Object performMerge()
+        {
+            this.performed = true;
+            return this.merged.toString();
+        }
+    }
+
+    /**
+     * The modification time of the entries of the source archives, an even number of seconds as
+     * ZIP files only keep those.
+     */
+    private static final long ENTRY_TIME = new GregorianCalendar(2007, 0, 1).getTimeInMillis();
+
+    private File war1;
+
+    private File war2;
+
+    private File jar;
+
+    private File output;
+
+    protected void setUp() throws Exception
+    {
+        this.war1 = createArchive("war1", new String[] {"index.jsp", "first",
+            "WEB-INF/merged.txt", "one", "WEB-INF/lib/a.jar", "a"});
+        this.war2 = createArchive("war2", new String[] {"index.jsp", "second",
+            "other.jsp", "other", "WEB-INF/merged.txt", "two"});
+        this.jar = createArchive("lib", new String[] {"Foo.class", "foo"});
+        this.output = File.createTempFile("uberwar", ".war");
+        this.output.deleteOnExit();
+    }
+
+    public void testFirstWarWinsForDuplicateEntries() throws Exception
+    {
+        StreamingWarAssembler assembler = createAssembler();
+        assembler.assemble(this.output);
+
+        assertEquals("first", readEntry(this.output, "index.jsp"));
+        assertEquals("other", readEntry(this.output, "other.jsp"));
+        assertEquals("a", readEntry(this.output, "WEB-INF/lib/a.jar"));
+    }
+
+    public void testJarsAreAddedToLibDirectory() throws Exception
+    {
+        StreamingWarAssembler assembler = createAssembler();
+        assembler.assemble(this.output);
+
+        assertNotNull(readEntry(this.output, "WEB-INF/lib/" + this.jar.getName()));
+    }
+
+    public void testMergedFilesAreMergedInWarOrder() throws Exception
+    {
+        StreamingWarAssembler assembler = createAssembler();
+        assembler.addMergeProcessor("WEB-INF/merged.txt", new ConcatenatingMergeProcessor());
+        assembler.assemble(this.output);
+
+        assertEquals("onetwo", readEntry(this.output, "WEB-INF/merged.txt"));
+    }
+
+    public void testWarJarsAreSkippedWhenNotMergingJarFiles() throws Exception
+    {
+        StreamingWarAssembler assembler = createAssembler();
+        assembler.setMergeJarFiles(false);
+        assembler.assemble(this.output);
+
+        assertNull(readEntry(this.output, "WEB-INF/lib/a.jar"));
+    }
+
+    public void testOutputDoesNotDependOnThreadCount() throws Exception
+    {
+        StreamingWarAssembler assembler = createAssembler();
+        assembler.addMergeProcessor("WEB-INF/merged.txt", new ConcatenatingMergeProcessor());
+        assembler.assemble(this.output);
+        byte[] serial = readBytes(this.output);
+
+        assembler = createAssembler();
+        assembler.setThreads(4);
+        assembler.addMergeProcessor("WEB-INF/merged.txt", new ConcatenatingMergeProcessor());
+        assembler.assemble(this.output);
+
+        assertTrue(Arrays.equals(serial, readBytes(this.output)));
+        assertEquals("onetwo", readEntry(this.output, "WEB-INF/merged.txt"));
+    }
+
+    public void testMergedFilesAreDatedLikeTheirLatestSource() throws Exception
+    {
+        this.war2 = createArchive("war2", new String[] {"WEB-INF/merged.txt", "two"},
+            ENTRY_TIME + 3600000);
+        StreamingWarAssembler assembler = createAssembler();
+        assembler.addMergeProcessor("WEB-INF/merged.txt", new ConcatenatingMergeProcessor());
+        assembler.assemble(this.output);
+
+        ZipFile zip = new ZipFile(this.output);
+        try
+        {
+            assertEquals(ENTRY_TIME + 3600000, zip.getEntry("WEB-INF/merged.txt").getTime());
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+    public void testIndependentMergesAreWrittenInRegistrationOrder() throws Exception
+    {
+        StreamingWarAssembler assembler = createAssembler();
+        assembler.setThreads(4);
+        assembler.addMergeProcessor("WEB-INF/merged.txt", new ConcatenatingMergeProcessor());
+        assembler.addMergeProcessor("index.jsp", new ConcatenatingMergeProcessor());
+        assembler.assemble(this.output);
+
+        List entries = listEntries(this.output);
+        assertEquals("WEB-INF/merged.txt", entries.get(entries.size() - 2));
+        assertEquals("index.jsp", entries.get(entries.size() - 1));
+        assertEquals("onetwo", readEntry(this.output, "WEB-INF/merged.txt"));
+        assertEquals("firstsecond", readEntry(this.output, "index.jsp"));
+    }
+
+    public void testIncrementalBuildDoesNotMergeUnchangedSources() throws Exception
+    {
+        assembleIncrementally();
+        ConcatenatingMergeProcessor processor = assembleIncrementally();
+
+        assertFalse(processor.performed);
+        assertEquals("onetwo", readEntry(this.output, "WEB-INF/merged.txt"));
+    }
+
+    public void testIncrementalBuildMergesChangedWarAgain() throws Exception
+    {
+        assembleIncrementally();
+        File changed = createArchive("war2", new String[] {"index.jsp", "second",
+            "other.jsp", "changed", "WEB-INF/merged.txt", "three"});
+        assertTrue(changed.renameTo(this.war2));
+        ConcatenatingMergeProcessor processor = assembleIncrementally();
+
+        assertTrue(processor.performed);
+        assertEquals("onethree", readEntry(this.output, "WEB-INF/merged.txt"));
+        assertEquals("changed", readEntry(this.output, "other.jsp"));
+        assertEquals("first", readEntry(this.output, "index.jsp"));
+    }
+
+    public void testIncrementalBuildReusesMergedFilesWhenOnlyJarChanged() throws Exception
+    {
+        assembleIncrementally();
+        File changed = createArchive("lib", new String[] {"Foo.class", "foo", "Bar.class", "bar"});
+        assertTrue(changed.renameTo(this.jar));
+        ConcatenatingMergeProcessor processor = assembleIncrementally();
+
+        assertFalse(processor.performed);
+        assertEquals("onetwo", readEntry(this.output, "WEB-INF/merged.txt"));
+        ZipFile zip = new ZipFile(this.output);
+        try
+        {
+            assertEquals(this.jar.length(),
+                zip.getEntry("WEB-INF/lib/" + this.jar.getName()).getSize());
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+    public void testUpToDateBuildRecordsNewDatesOfSources() throws Exception
+    {
+        assembleIncrementally();
+        long built = this.output.lastModified();
+        this.war1.setLastModified(this.war1.lastModified() + 10000);
+        ConcatenatingMergeProcessor processor = assembleIncrementally();
+
+        assertFalse(processor.performed);
+        assertEquals(built, this.output.lastModified());
+        UberWarManifest manifest = UberWarManifest.load(
+            new File(this.output.getPath() + ".manifest"));
+        assertEquals(this.war1.lastModified(),
+            manifest.getInput(this.war1.getAbsolutePath(), ArchiveScan.WAR).lastModified);
+
+        // The refreshed manifest still describes the merges of the WAR
+        File changed = createArchive("lib", new String[] {"Foo.class", "foo", "Bar.class", "bar"});
+        assertTrue(changed.renameTo(this.jar));
+        assertFalse(assembleIncrementally().performed);
+        assertEquals("onetwo", readEntry(this.output, "WEB-INF/merged.txt"));
+    }
+
+    public void testTemporaryFileIsDeletedWhenMergeFails() throws Exception
+    {
+        StreamingWarAssembler assembler = createAssembler();
+        assembler.addMergeProcessor("WEB-INF/merged.txt", new MergeProcessor()
+        {
+            public void addMergeItem(Object mergeItem)
+            {
+            }
+
+            public Object performMerge() throws MergeException
+            {
+                throw new MergeException("Cannot merge");
+            }
+        });
+        try
+        {
+            assembler.assemble(this.output);
+            fail("The merge should have failed");
+        }
+        catch (MergeException expected)
+        {
+            // expected
+        }
+
+        String[] names = this.output.getParentFile().list();
+        for (int i = 0; i < names.length; i++)
+        {
+            assertFalse(names[i], names[i].startsWith(this.output.getName())
+                && names[i].endsWith(".tmp"));
+        }
+    }
+
+    private ConcatenatingMergeProcessor assembleIncrementally() throws Exception
+    {
+        File manifest = new File(this.output.getPath() + ".manifest");
+        manifest.deleteOnExit();
+        ConcatenatingMergeProcessor processor = new ConcatenatingMergeProcessor();
+        StreamingWarAssembler assembler = createAssembler();
+        assembler.addMergeProcessor("WEB-INF/merged.txt", processor);
+        assembler.setManifest(manifest, "config");
+        assembler.assemble(this.output);
+        return processor;
+    }
+
+    private StreamingWarAssembler createAssembler()
+    {
+        StreamingWarAssembler assembler = new StreamingWarAssembler(new SystemStreamLog());
+        assembler.addWar(this.war1);
+        assembler.addWar(this.war2);
+        assembler.addJar(this.jar);
+        return assembler;
+    }
+
+    /**
+     * @param prefix the prefix of the temporary file
+     * @param entries alternating entry names and entry contents
+     * @return the created archive
+     */
+    static File createArchive(String prefix, String[] entries) throws IOException
+    {
+        return createArchive(prefix, entries, ENTRY_TIME);
+    }
+
+    /**
+     * @param prefix the prefix of the temporary file
+     * @param entries alternating entry names and entry contents
+     * @param time the modification time of the entries
+     * @return the created archive
+     */
+    static File createArchive(String prefix, String[] entries, long time) throws IOException
+    {
+        File archive = File.createTempFile(prefix, ".zip");
+        archive.deleteOnExit();
+
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+        for (int i = 0; i < entries.length; i += 2)
+        {
+            ZipEntry entry = new ZipEntry(entries[i]);
+            entry.setTime(time);
+            zip.putNextEntry(entry);
+            zip.write(entries[i + 1].getBytes());
+        }
+        zip.close();
+        return archive;
+    }
+
+    /**
+     * @return the content of an entry of <code>archive</code> or null if there is no such entry
+     */
+    static String readEntry(File archive, String name) throws IOException
+    {
+        ZipFile zip = new ZipFile(archive);
+        try
+        {
+            ZipEntry entry = zip.getEntry(name);
+            return entry == null ? null : read(zip.getInputStream(entry));
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+    /**
+     * @return the entry names of <code>archive</code>, in archive order
+     */
+    static List listEntries(File archive) throws IOException
+    {
+        List names = new ArrayList();
+        ZipFile zip = new ZipFile(archive);
+        try
+        {
+            for (Enumeration e = zip.entries(); e.hasMoreElements();)
+            {
+                names.add(((ZipEntry) e.nextElement()).getName());
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+        return names;
+    }
+
+    static byte[] readBytes(File file) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                bytes.write(buffer, 0, read);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    static String read(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            bytes.write(buffer, 0, read);
+        }
+        in.close();
+        return bytes.toString();
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link ClassDataSharing}.
+ *
+ * @version $Id$
+ */
+public class ClassDataSharingTest extends TestCase
+{
+    private File directory;
+
+    protected void setUp() throws Exception
+    {
+        this.directory = File.createTempFile("cds", "");
+        this.directory.delete();
+        this.directory.mkdirs();
+        this.directory.deleteOnExit();
+    }
+
+    public void testArchiveDependsOnClasspath()
+    {
+        List classpath = new ArrayList();
+        classpath.add("/opt/tomcat");
+        File archive = ClassDataSharing.getArchive(this.directory, "tomcat5x", classpath);
+
+        assertEquals(archive, ClassDataSharing.getArchive(this.directory, "tomcat5x", classpath));
+        classpath.add("/repository/extra.jar");
+        assertFalse(archive.equals(
+            ClassDataSharing.getArchive(this.directory, "tomcat5x", classpath)));
+    }
+
+    public void testArchiveDependsOnRebuiltFiles() throws Exception
+    {
+        File home = new File(this.directory, "tomcat");
+        File homeJar = new File(home, "lib/catalina.jar");
+        homeJar.getParentFile().mkdirs();
+        write(homeJar, "catalina");
+        File extraJar = new File(this.directory, "extra-1.0-SNAPSHOT.jar");
+        write(extraJar, "extra");
+
+        List classpath = new ArrayList();
+        classpath.add(home.getPath());
+        classpath.add(extraJar.getPath());
+        File archive = ClassDataSharing.getArchive(this.directory, "tomcat5x", classpath);
+
+        // A snapshot rebuilt at the same path
+        write(extraJar, "extra, rebuilt");
+        File rebuilt = ClassDataSharing.getArchive(this.directory, "tomcat5x", classpath);
+        assertFalse(archive.equals(rebuilt));
+
+        // A JAR of the home replaced with one of the same size
+        write(homeJar, "CATALINA");
+        homeJar.setLastModified(homeJar.lastModified() + 10000);
+        assertFalse(rebuilt.equals(
+            ClassDataSharing.getArchive(this.directory, "tomcat5x", classpath)));
+
+        homeJar.delete();
+        homeJar.getParentFile().delete();
+        home.delete();
+        extraJar.delete();
+    }
+
+    public void testOtherArchivesOfTheContainerAreDeleted() throws Exception
+    {
+        File stale = new File(this.directory, "tomcat5x-0123456789ab.jsa");
+        File other = new File(this.directory, "jetty6x-0123456789ab.jsa");
+        File archive = new File(this.directory, "tomcat5x-ba9876543210.jsa");
+        assertTrue(stale.createNewFile());
+        assertTrue(other.createNewFile());
+        assertTrue(archive.createNewFile());
+
+        ClassDataSharing.deleteOtherArchives(archive, "tomcat5x");
+        assertFalse(stale.exists());
+        assertTrue(other.exists());
+        assertTrue(archive.exists());
+
+        other.delete();
+        archive.delete();
+    }
+
+    public void testArchiveIsDumpedFirstThenUsed() throws Exception
+    {
+        File archive = new File(this.directory, "tomcat5x.jsa");
+        archive.deleteOnExit();
+
+        assertEquals("-Xmx256m -XX:ArchiveClassesAtExit=" + archive.getAbsolutePath(),
+            ClassDataSharing.addJvmArg("-Xmx256m", archive));
+        assertTrue(archive.createNewFile());
+        assertEquals("-XX:SharedArchiveFile=" + archive.getAbsolutePath(),
+            ClassDataSharing.addJvmArg(null, archive));
+    }
+
+    public void testUserConfiguredSharingIsKept()
+    {
+        String jvmArgs = "-XX:SharedArchiveFile=/tmp/custom.jsa";
+
+        assertEquals(jvmArgs,
+            ClassDataSharing.addJvmArg(jvmArgs, new File(this.directory, "tomcat5x.jsa")));
+    }
+
+    public void testFeatureVersionsAreParsed()
+    {
+        assertEquals(8, ClassDataSharing.parseFeatureVersion("1.8.0_202"));
+        assertEquals(11, ClassDataSharing.parseFeatureVersion("11"));
+        assertEquals(17, ClassDataSharing.parseFeatureVersion("17.0.2"));
+        assertEquals(-1, ClassDataSharing.parseFeatureVersion("unknown"));
+        assertEquals(-1, ClassDataSharing.parseFeatureVersion(null));
+    }
+
+    public void testVersionOfAnotherJavaHomeIsReadFromItsReleaseFile() throws Exception
+    {
+        File javaHome = new File(this.directory, "jdk");
+        javaHome.mkdirs();
+        File release = new File(javaHome, "release");
+        writeRelease(release, "11.0.2");
+        assertEquals(11, ClassDataSharing.getFeatureVersion(javaHome.getPath()));
+        assertFalse(ClassDataSharing.isSupported(javaHome.getPath()));
+
+        writeRelease(release, "17.0.2");
+        assertTrue(ClassDataSharing.isSupported(javaHome.getPath()));
+
+        // the java.home of a JDK 8 is its jre directory
+        File jre = new File(javaHome, "jre");
+        jre.mkdirs();
+        writeRelease(release, "1.8.0_202");
+        assertEquals(8, ClassDataSharing.getFeatureVersion(jre.getPath()));
+
+        release.delete();
+        jre.delete();
+        javaHome.delete();
+    }
+
+    public void testJavaHomeWithoutReleaseFileIsNotSupported()
+    {
+        assertEquals(-1, ClassDataSharing.getFeatureVersion(this.directory.getPath()));
+        assertFalse(ClassDataSharing.isSupported(this.directory.getPath()));
+    }
+
+    public void testVersionOfTheRunningJvmIsItsSpecificationVersion()
+    {
+        assertEquals(
+            ClassDataSharing.parseFeatureVersion(System.getProperty("java.specification.version")),
+            ClassDataSharing.getFeatureVersion(System.getProperty("java.home")));
+    }
+
+    private static void write(File file, String content) throws Exception
+    {
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(content.getBytes());
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static void writeRelease(File release, String version) throws Exception
+    {
+        FileOutputStream out = new FileOutputStream(release);
+        try
+        {
+            out.write(("IMPLEMENTOR=\"Example\"\nJAVA_VERSION=\"" + version + "\"\n").getBytes());
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link Digests}.
+ *
+ * @version $Id$
+ */
+public class DigestsTest extends TestCase
+{
+    public void testSmallFileDigestIsThePlainDigest() throws Exception
+    {
+        File file = createFile(100, 0);
+
+        assertEquals(Digests.digest(file, Digests.SHA256),
+            Digests.digest(file, Digests.SHA256, 1024, 4));
+    }
+
+    public void testChunkedDigestDoesNotDependOnThreadCount() throws Exception
+    {
+        File file = createFile(10000, 0);
+
+        assertEquals(Digests.digest(file, Digests.SHA256, 1024, 1),
+            Digests.digest(file, Digests.SHA256, 1024, 4));
+    }
+
+    public void testChunkedDigestOnASharedPoolIsTheSame() throws Exception
+    {
+        File file = createFile(10000, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try
+        {
+            assertEquals(Digests.digest(file, Digests.SHA256, 1024, 4),
+                Digests.digest(file, Digests.SHA256, 1024, executor));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        assertEquals(Digests.digest(file, Digests.SHA256, 1024, 4),
+            Digests.digest(file, Digests.SHA256, 1024, (ExecutorService) null));
+    }
+
+    public void testChunkedDigestChangesWithContent() throws Exception
+    {
+        File file = createFile(10000, 0);
+        File other = createFile(10000, 1);
+
+        assertFalse(Digests.digest(file, Digests.SHA256, 1024, 4).equals(
+            Digests.digest(other, Digests.SHA256, 1024, 4)));
+    }
+
+    private static File createFile(int length, int seed) throws IOException
+    {
+        File file = File.createTempFile("digest", ".bin");
+        file.deleteOnExit();
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            content[i] = (byte) (i * 31 + seed);
+        }
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(content);
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link RecordFiles}.
+ *
+ * @version $Id$
+ */
+public class RecordFilesTest extends TestCase
+{
+    private static final String HEADER = "# Test records, version 1";
+
+    private static final RecordFiles.Parser FIRST_LINE = new RecordFiles.Parser()
+    {
+        public Object parse(BufferedReader reader) throws IOException
+        {
+            return reader.readLine();
+        }
+    };
+
+    private File directory;
+
+    private File file;
+
+    protected void setUp() throws Exception
+    {
+        this.directory = File.createTempFile("records", "");
+        this.directory.delete();
+        this.file = new File(this.directory, "nested/records.txt");
+    }
+
+    protected void tearDown()
+    {
+        File[] files = this.file.getParentFile().listFiles();
+        for (int i = 0; files != null && i < files.length; i++)
+        {
+            files[i].delete();
+        }
+        this.file.getParentFile().delete();
+        this.directory.delete();
+    }
+
+    public void testStoreAndLoad() throws Exception
+    {
+        store(HEADER, "first\trecord");
+
+        assertEquals("first\trecord", RecordFiles.load(this.file, HEADER, FIRST_LINE));
+    }
+
+    public void testStoreReplacesTheFileAndLeavesNoTemporaryFile() throws Exception
+    {
+        store(HEADER, "first");
+        store(HEADER, "second");
+
+        assertEquals("second", RecordFiles.load(this.file, HEADER, FIRST_LINE));
+        assertEquals(1, this.file.getParentFile().list().length);
+    }
+
+    public void testMissingFileIsNotLoaded()
+    {
+        assertNull(RecordFiles.load(this.file, HEADER, FIRST_LINE));
+    }
+
+    public void testFileOfAnotherVersionIsNotLoaded() throws Exception
+    {
+        store("# Test records, version 0", "first");
+
+        assertNull(RecordFiles.load(this.file, HEADER, FIRST_LINE));
+    }
+
+    public void testUnparsableFileIsNotLoaded() throws Exception
+    {
+        store(HEADER, "not a number");
+
+        assertNull(RecordFiles.load(this.file, HEADER, new RecordFiles.Parser()
+        {
+            public Object parse(BufferedReader reader) throws IOException
+            {
+                return new Long(Long.parseLong(reader.readLine()));
+            }
+        }));
+    }
+
+    private void store(String header, final String record) throws IOException
+    {
+        RecordFiles.store(this.file, header, new RecordFiles.Printer()
+        {
+            public void print(Writer writer) throws IOException
+            {
+                writer.write(record + "\n");
+            }
+        });
+    }
+}
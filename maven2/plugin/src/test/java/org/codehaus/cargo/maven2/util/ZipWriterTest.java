@@ -0,0 +1,280 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2007 Vincent Massol.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link ZipWriter} and {@link ZipIndex}.
+ *
+ * @version $Id$
+ */
+public class ZipWriterTest extends TestCase
+{
+    private File source;
+
+    private File target;
+
+    protected void setUp() throws Exception
+    {
+        this.source = File.createTempFile("source", ".zip");
+        this.source.deleteOnExit();
+        this.target = File.createTempFile("target", ".zip");
+        this.target.deleteOnExit();
+
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(this.source));
+        zip.putNextEntry(new ZipEntry("META-INF/"));
+        zip.closeEntry();
+        zip.putNextEntry(new ZipEntry("deflated.txt"));
+        zip.write("deflated deflated deflated deflated".getBytes("UTF-8"));
+        zip.closeEntry();
+
+        byte[] stored = "stored".getBytes("UTF-8");
+        CRC32 crc = new CRC32();
+        crc.update(stored);
+        ZipEntry entry = new ZipEntry("stored.txt");
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(stored.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(stored);
+        zip.closeEntry();
+
+        zip.putNextEntry(new ZipEntry("caf\u00e9.txt"));
+        zip.write("unicode".getBytes("UTF-8"));
+        zip.closeEntry();
+        zip.close();
+    }
+
+    public void testIndexListsEntriesInArchiveOrder() throws Exception
+    {
+        ZipIndex index = new ZipIndex(this.source);
+        try
+        {
+            assertEquals(4, index.getEntries().size());
+            assertEquals("META-INF/", ((ZipIndex.Entry) index.getEntries().get(0)).getName());
+            assertTrue(index.getEntry("META-INF/").isDirectory());
+            assertEquals(ZipEntry.STORED, index.getEntry("stored.txt").getMethod());
+            assertEquals(ZipEntry.DEFLATED, index.getEntry("deflated.txt").getMethod());
+            assertEquals("unicode", new String(index.read(index.getEntry("caf\u00e9.txt")),
+                "UTF-8"));
+            assertEquals("deflated deflated deflated deflated",
+                new String(index.read(index.getEntry("deflated.txt")), "UTF-8"));
+        }
+        finally
+        {
+            index.close();
+        }
+    }
+
+    public void testNamesAreDecodedAsTheUtf8FlagTells() throws Exception
+    {
+        byte[] utf8 = "caf\u00e9.txt".getBytes("UTF-8");
+        assertEquals("caf\u00e9.txt", ZipIndex.decode(utf8, true));
+        // the same bytes without the flag are CP437, as written by older tools
+        assertEquals("caf\u251c\u2310.txt", ZipIndex.decode(utf8, false));
+        assertEquals("caf\u00e9.txt", ZipIndex.decode(new byte[] {'c', 'a', 'f', (byte) 0x82, '.',
+            't', 'x', 't'}, false));
+        assertEquals("\u00c7\u00a0", ZipIndex.decode(new byte[] {(byte) 0x80, (byte) 0xff}, false));
+    }
+
+    public void testMappedAndUnmappedIndexesAgree() throws Exception
+    {
+        ZipIndex mapped = new ZipIndex(this.source);
+        ZipIndex unmapped = new ZipIndex(this.source, false);
+        try
+        {
+            assertEquals(mapped.getEntries().size(), unmapped.getEntries().size());
+            assertTrue(mapped.contains("stored.txt"));
+            assertTrue(unmapped.contains("stored.txt"));
+            assertFalse(mapped.contains("missing.txt"));
+            assertEquals(mapped.getEntry("deflated.txt").getCrc(),
+                unmapped.getEntry("deflated.txt").getCrc());
+        }
+        finally
+        {
+            mapped.close();
+            unmapped.close();
+        }
+    }
+
+    public void testCopiedEntriesAreReadableWithoutRecompression() throws Exception
+    {
+        ZipIndex index = new ZipIndex(this.source);
+        ZipWriter writer = new ZipWriter(this.target);
+        try
+        {
+            for (Iterator i = index.getEntries().iterator(); i.hasNext();)
+            {
+                writer.copy(index, (ZipIndex.Entry) i.next());
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        ZipIndex copy = new ZipIndex(this.target);
+        try
+        {
+            ZipIndex.Entry original = index.getEntry("deflated.txt");
+            ZipIndex.Entry copied = copy.getEntry("deflated.txt");
+            assertEquals(original.getCompressedSize(), copied.getCompressedSize());
+            assertEquals(original.getCrc(), copied.getCrc());
+            assertEquals(original.getTime(), copied.getTime());
+        }
+        finally
+        {
+            copy.close();
+            index.close();
+        }
+
+        assertEquals("deflated deflated deflated deflated", read(this.target, "deflated.txt"));
+        assertEquals("stored", read(this.target, "stored.txt"));
+        assertEquals("unicode", read(this.target, "caf\u00e9.txt"));
+        assertNotNull(read(this.target, "META-INF/"));
+    }
+
+    public void testPutEntries() throws Exception
+    {
+        File file = File.createTempFile("stored", ".jar");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("jar".getBytes("UTF-8"));
+        out.close();
+        CRC32 crc = new CRC32();
+        crc.update("jar".getBytes("UTF-8"));
+
+        long time = System.currentTimeMillis();
+        ZipWriter writer = new ZipWriter(this.target);
+        writer.putDirectory("WEB-INF/", time);
+        writer.putStored("WEB-INF/lib/file.jar", time, file, crc.getValue());
+        writer.putDeflated("WEB-INF/web.xml", time, "<web-app/>".getBytes("UTF-8"));
+        writer.close();
+
+        assertEquals("jar", read(this.target, "WEB-INF/lib/file.jar"));
+        assertEquals("<web-app/>", read(this.target, "WEB-INF/web.xml"));
+
+        ZipFile zip = new ZipFile(this.target);
+        try
+        {
+            assertTrue(zip.getEntry("WEB-INF/").isDirectory());
+            // MS-DOS times have a two seconds precision
+            assertTrue(Math.abs(zip.getEntry("WEB-INF/web.xml").getTime() - time) <= 2000);
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+    public void testNestedEntriesOfCompressedArchives() throws Exception
+    {
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(this.target));
+        zip.putNextEntry(new ZipEntry("WEB-INF/lib/small.jar"));
+        zip.write(createJar(3));
+        zip.closeEntry();
+        // a central directory larger than what is kept of the end of the JAR
+        zip.putNextEntry(new ZipEntry("WEB-INF/lib/large.jar"));
+        zip.write(createJar(20000));
+        zip.closeEntry();
+        zip.close();
+
+        ZipIndex index = new ZipIndex(this.target);
+        try
+        {
+            List small = index.readNestedEntries(index.getEntry("WEB-INF/lib/small.jar"));
+            assertEquals(3, small.size());
+            assertEquals(createName(2), ((ZipIndex.Entry) small.get(2)).getName());
+
+            ZipIndex.Entry large = index.getEntry("WEB-INF/lib/large.jar");
+            assertEquals(ZipEntry.DEFLATED, large.getMethod());
+            assertTrue(large.getSize() > ZipIndex.NESTED_TAIL_SIZE * 2);
+            List entries = index.readNestedEntries(large);
+            assertEquals(20000, entries.size());
+            assertEquals(createName(0), ((ZipIndex.Entry) entries.get(0)).getName());
+            assertEquals(createName(19999), ((ZipIndex.Entry) entries.get(19999)).getName());
+            assertEquals(7, ((ZipIndex.Entry) entries.get(19999)).getSize());
+        }
+        finally
+        {
+            index.close();
+        }
+    }
+
+    private static byte[] createJar(int classes) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream jar = new ZipOutputStream(bytes);
+        for (int i = 0; i < classes; i++)
+        {
+            jar.putNextEntry(new ZipEntry(createName(i)));
+            jar.write("content".getBytes("UTF-8"));
+            jar.closeEntry();
+        }
+        jar.close();
+        return bytes.toByteArray();
+    }
+
+    private static String createName(int i)
+    {
+        return "org/codehaus/cargo/maven2/util/generated/package" + (i % 10) + "/Class" + i
+            + ".class";
+    }
+
+    private static String read(File archive, String name) throws IOException
+    {
+        ZipFile zip = new ZipFile(archive);
+        try
+        {
+            ZipEntry entry = zip.getEntry(name);
+            if (entry == null)
+            {
+                return null;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            InputStream in = zip.getInputStream(entry);
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                bytes.write(buffer, 0, read);
+            }
+            in.close();
+            return bytes.toString("UTF-8");
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+}